@@ -0,0 +1,147 @@
+package events;
+
+import player.AbstractPlayer;
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * Something that happened during a game: the start of a turn, a shot and its result, or the end
+ * of the game. Events are immutable, so they can be shared between any number of subscribers.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public final class GameEvent
+{
+	/**
+	 * The kinds of event.
+	 */
+	public enum Type
+	{
+		/** A turn is starting. The player is the attacker. */
+		TURN_START,
+		/** A shot was fired. The player is the attacker. */
+		SHOT,
+		/** A shot missed. The player is the defender. */
+		MISS,
+		/** A shot hit a ship. The player is the defender. */
+		HIT,
+		/** A shot sunk a ship. The player is the defender. */
+		SINK,
+		/** The game is over. The player is the winner. */
+		GAME_END
+	}
+
+	private final Type type;
+	private final int turn;
+	private final String playerName;
+	private final int playerId;
+	private final int x;
+	private final int y;
+	private final long timestamp;
+
+	/**
+	 * Constructs an event.
+	 * @param type the kind of event.
+	 * @param turn the turn the event happened in, starting from 1.
+	 * @param playerName the name of the player the event is about.
+	 * @param playerId the id of the player the event is about, as given by {@link AbstractPlayer#getPlayerId()}.
+	 * @param x the x coordinate of the shot, or {@code -1} if the event is not about a shot.
+	 * @param y the y coordinate of the shot, or {@code -1} if the event is not about a shot.
+	 */
+	public GameEvent(Type type, int turn, String playerName, int playerId, int x, int y)
+	{
+		this.type = type;
+		this.turn = turn;
+		this.playerName = playerName;
+		this.playerId = playerId;
+		this.x = x;
+		this.y = y;
+		this.timestamp = System.nanoTime();
+	}
+
+	/**
+	 * Creates the event reporting the result of a shot.
+	 * @param turn the current turn.
+	 * @param defenderName the name of the player who was shot at.
+	 * @param defenderId the id of the player who was shot at.
+	 * @param c the coordinate of the shot.
+	 * @param result the result of the shot.
+	 * @return the event.
+	 */
+	public static GameEvent result(int turn, String defenderName, int defenderId, Coordinate c, ShotResults result)
+	{
+		Type type;
+		switch (result)
+		{
+		case HIT: type = Type.HIT; break;
+		case SINK: type = Type.SINK; break;
+		default: type = Type.MISS; break;
+		}
+		return new GameEvent(type, turn, defenderName, defenderId, c.getX(), c.getY());
+	}
+
+	/**
+	 * @return the type
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the turn
+	 */
+	public int getTurn()
+	{
+		return turn;
+	}
+
+	/**
+	 * @return the name of the player the event is about
+	 */
+	public String getPlayerName()
+	{
+		return playerName;
+	}
+
+	/**
+	 * @return the id of the player the event is about, which tells apart players with the same name
+	 */
+	public int getPlayerId()
+	{
+		return playerId;
+	}
+
+	/**
+	 * @return the x coordinate of the shot, or {@code -1}
+	 */
+	public int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * @return the y coordinate of the shot, or {@code -1}
+	 */
+	public int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * @return the value of {@link System#nanoTime()} when the event was created
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	@Override
+	public String toString()
+	{
+		String s = "Turn " + turn + " " + type + " " + playerName;
+		if (x >= 0)
+			s += " " + (char)('A' + x) + y;
+		return s;
+	}
+}
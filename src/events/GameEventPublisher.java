@@ -0,0 +1,273 @@
+package events;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the {@link GameEvent}s of a game to any number of subscribers.
+ * <p>
+ * Every subscriber gets its own bounded buffer, drained on an {@link Executor} according to the
+ * demand it signals. Publishing never waits for a subscriber: when a buffer is full, the
+ * subscription's {@link OverflowPolicy} decides what is given up. A slow logger or spectator can
+ * therefore lose events, but never slows down the game.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class GameEventPublisher
+implements Flow.Publisher<GameEvent>
+{
+	private Executor executor;
+	private int defaultCapacity;
+	private OverflowPolicy defaultPolicy;
+	private List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+	private volatile int turn;
+
+	/**
+	 * Constructs a publisher delivering events on the common fork-join pool, with buffers of
+	 * {@link Flow#defaultBufferSize()} events which drop the oldest event when full.
+	 */
+	public GameEventPublisher()
+	{
+		this(ForkJoinPool.commonPool(), Flow.defaultBufferSize(), OverflowPolicy.DROP_OLDEST);
+	}
+
+	/**
+	 * Constructs a publisher.
+	 * @param executor the executor delivering events to the subscribers.
+	 * @param defaultCapacity the buffer size of the subscribers which don't specify one.
+	 * @param defaultPolicy the overflow policy of the subscribers which don't specify one.
+	 * @throws IllegalArgumentException if the capacity is not positive.
+	 */
+	public GameEventPublisher(Executor executor, int defaultCapacity, OverflowPolicy defaultPolicy)
+	{
+		if (defaultCapacity <= 0)
+			throw new IllegalArgumentException("The buffer capacity must be positive.");
+		this.executor = executor;
+		this.defaultCapacity = defaultCapacity;
+		this.defaultPolicy = defaultPolicy;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super GameEvent> subscriber)
+	{
+		subscribe(subscriber, defaultCapacity, defaultPolicy);
+	}
+
+	/**
+	 * Adds a subscriber with its own buffer size and overflow policy.
+	 * @param subscriber the subscriber.
+	 * @param capacity the maximum number of events buffered for the subscriber.
+	 * @param policy what to do when the buffer is full.
+	 * @throws IllegalArgumentException if the capacity is not positive.
+	 */
+	public void subscribe(Flow.Subscriber<? super GameEvent> subscriber, int capacity, OverflowPolicy policy)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The buffer capacity must be positive.");
+		EventSubscription subscription = new EventSubscription(subscriber, capacity, policy);
+		subscriptions.add(subscription);
+		subscription.signal();
+	}
+
+	/**
+	 * Returns whether anybody is listening. Publishers of expensive events can check this first.
+	 * @return {@code true} if there is at least one subscriber.
+	 */
+	public boolean hasSubscribers()
+	{
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * Returns the number of the turn being played, as announced by the last
+	 * {@link GameEvent.Type#TURN_START} event.
+	 * @return the current turn.
+	 */
+	public int getTurn()
+	{
+		return turn;
+	}
+
+	/**
+	 * Publishes an event to every subscriber. Never blocks.
+	 * @param event the event.
+	 */
+	public void publish(GameEvent event)
+	{
+		if (event.getType() == GameEvent.Type.TURN_START)
+			turn = event.getTurn();
+		for (EventSubscription subscription : subscriptions)
+			subscription.offer(event);
+	}
+
+	/**
+	 * Completes every subscription once its buffered events have been delivered.
+	 */
+	public void close()
+	{
+		for (EventSubscription subscription : subscriptions)
+			subscription.complete();
+	}
+
+	/**
+	 * Returns the number of events dropped so far because of full buffers, over all the current subscriptions.
+	 * @return the dropped event count.
+	 */
+	public long getDroppedCount()
+	{
+		long dropped = 0;
+		for (EventSubscription subscription : subscriptions)
+			dropped += subscription.dropped.get();
+		return dropped;
+	}
+
+	/**
+	 * The link between the publisher and one subscriber. Events are delivered by a single drain
+	 * loop at a time, so the subscriber is never called concurrently.
+	 */
+	private class EventSubscription
+	implements Flow.Subscription
+	{
+		private Flow.Subscriber<? super GameEvent> subscriber;
+		private int capacity;
+		private OverflowPolicy policy;
+
+		private ArrayDeque<GameEvent> buffer;	// Guarded by this
+		private AtomicLong demand = new AtomicLong();
+		private AtomicInteger pendingDrains = new AtomicInteger();
+		private AtomicLong dropped = new AtomicLong();
+		private boolean started;		// Only accessed by the drain loop
+		private volatile boolean cancelled;
+		private volatile boolean completing;
+		private volatile Throwable error;
+
+		private EventSubscription(Flow.Subscriber<? super GameEvent> subscriber, int capacity, OverflowPolicy policy)
+		{
+			this.subscriber = subscriber;
+			this.capacity = capacity;
+			this.policy = policy;
+			this.buffer = new ArrayDeque<>(Math.min(capacity, 64));
+		}
+
+		private void offer(GameEvent event)
+		{
+			synchronized (this)
+			{
+				if (buffer.size() == capacity)
+				{
+					dropped.incrementAndGet();
+					switch (policy)
+					{
+					case DROP_OLDEST:
+						buffer.pollFirst();
+						break;
+					case DROP_NEWEST:
+						return;
+					case DISCONNECT:
+						error = new IllegalStateException("The subscriber can't keep up with the game.");
+						subscriptions.remove(this);
+						break;
+					}
+				}
+				if (error == null)
+					buffer.addLast(event);
+			}
+			signal();
+		}
+
+		private void complete()
+		{
+			completing = true;
+			signal();
+		}
+
+		@Override
+		public void request(long n)
+		{
+			if (n <= 0)
+				error = new IllegalArgumentException("The requested amount must be positive.");
+			else
+				demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			signal();
+		}
+
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		private void signal()
+		{
+			if (pendingDrains.getAndIncrement() == 0)
+				executor.execute(this::drain);
+		}
+
+		private void drain()
+		{
+			int missed = 1;
+			do
+			{
+				if (!started)
+				{
+					started = true;
+					subscriber.onSubscribe(this);
+				}
+
+				while (!cancelled && error == null && demand.get() > 0)
+				{
+					GameEvent event;
+					synchronized (this)
+					{
+						event = buffer.pollFirst();
+					}
+					if (event == null)
+						break;
+					if (demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					try
+					{
+						subscriber.onNext(event);
+					}
+					catch (RuntimeException e)
+					{
+						error = e;
+					}
+				}
+
+				if (!cancelled)
+				{
+					if (error != null)
+					{
+						cancel();
+						subscriber.onError(error);
+					}
+					else if (completing && isEmpty())
+					{
+						cancel();
+						subscriber.onComplete();
+					}
+				}
+				if (cancelled)
+					synchronized (this)
+					{
+						buffer.clear();
+					}
+
+				missed = pendingDrains.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private synchronized boolean isEmpty()
+		{
+			return buffer.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package events;
+
+/**
+ * What a {@link GameEventPublisher} does when a subscriber's buffer is full. The game never waits
+ * for a subscriber, so every policy gives something up.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public enum OverflowPolicy
+{
+	/** Discards the oldest buffered event to make room for the new one. */
+	DROP_OLDEST,
+	/** Discards the new event. */
+	DROP_NEWEST,
+	/** Cancels the subscription and signals an error to the subscriber. */
+	DISCONNECT
+}
@@ -0,0 +1,357 @@
+package events;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+
+import player.AbstractPlayer;
+import player.BoardView;
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * Broadcasts a running game to any number of spectators connected to a local socket.
+ * <p>
+ * The server subscribes to the game's {@link GameEventPublisher} and keeps its own copy of both
+ * boards, so spectators never touch the live ones. Each event is encoded once into an immutable
+ * text frame, shared by every spectator, and written with non-blocking I/O by a single selector
+ * thread. A spectator first sends one byte choosing its view, {@code F} to see both fleets or
+ * {@code A} to see only the shots, as the attackers do. It then receives a snapshot of the game
+ * followed by one line per event. Spectators who fall too far behind are disconnected.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class SpectatorServer
+implements Flow.Subscriber<GameEvent>
+{
+	private static final char SHIP = '#';
+	private static final char WATER = '.';
+
+	private String[] names = new String[2];
+	private int[] ids = new int[2];
+	private int gridSize;
+	private char[][][] grids;		// Only accessed by the selector thread after construction
+	private int maxPendingFrames;
+
+	private Queue<GameEvent> incoming = new ConcurrentLinkedQueue<>();
+	private volatile Selector selector;		// null until the server starts
+	private ServerSocketChannel server;
+	private volatile int viewerCount;
+
+	// Snapshots are encoded at most once per event, and only if somebody joins
+	private long version;
+	private ByteBuffer[] snapshots = new ByteBuffer[2];
+	private long[] snapshotVersions = {-1, -1};
+
+	/**
+	 * Constructs a server for a game between two players, copying their boards. Unless the boards are
+	 * in thread-safe mode, must be called before the game starts or on the game thread.
+	 * @param first the first player.
+	 * @param second the second player.
+	 * @param maxPendingFrames how many frames a spectator can fall behind before it's disconnected.
+	 */
+	public SpectatorServer(AbstractPlayer first, AbstractPlayer second, int maxPendingFrames)
+	{
+		this.maxPendingFrames = maxPendingFrames;
+		gridSize = first.getBoard().getGridSize();
+		grids = new char[2][][];
+		AbstractPlayer[] players = {first, second};
+		for (int p = 0; p < 2; p++)
+		{
+			names[p] = players[p].getPlayerName();
+			ids[p] = players[p].getPlayerId();
+			grids[p] = copyGrid(players[p].getBoard().snapshot());
+		}
+	}
+
+	private char[][] copyGrid(BoardView board)
+	{
+		char[][] grid = new char[gridSize][gridSize];
+		Coordinate pos = new Coordinate();
+		for (int y = 0; y < gridSize; y++)
+			for (int x = 0; x < gridSize; x++)
+			{
+				pos.set(x, y);
+				ShotResults received = board.getReceivedAt(pos);
+				if (received != null)
+					grid[y][x] = received.getSymbol();
+				else
+					grid[y][x] = board.isShipAt(pos) ? SHIP : WATER;
+			}
+		return grid;
+	}
+
+	/**
+	 * Starts accepting spectators on the loopback interface.
+	 * @param port the port to listen on, or {@code 0} for any free port.
+	 * @return the port spectators must connect to.
+	 * @throws IOException if the socket cannot be opened.
+	 */
+	public int start(int port) throws IOException
+	{
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		Thread thread = new Thread(this::run, "spectator-server");
+		thread.setDaemon(true);
+		thread.start();
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Disconnects every spectator and stops the server.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void close() throws IOException
+	{
+		server.close();
+		selector.close();
+	}
+
+	/**
+	 * @return the number of connected spectators
+	 */
+	public int getViewerCount()
+	{
+		return viewerCount;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription)
+	{
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void onNext(GameEvent event)
+	{
+		incoming.add(event);
+		Selector current = selector;
+		if (current != null)
+			current.wakeup();		// Otherwise broadcast as soon as the server starts
+	}
+
+	@Override
+	public void onError(Throwable throwable)
+	{
+		// Spectators simply stop receiving updates
+	}
+
+	@Override
+	public void onComplete()
+	{
+		// Spectators keep the final situation until they disconnect
+	}
+
+	/**
+	 * Body of the selector thread.
+	 */
+	private void run()
+	{
+		try
+		{
+			while (selector.isOpen())
+			{
+				GameEvent event;
+				while ((event = incoming.poll()) != null)
+					broadcast(event);
+
+				selector.select();
+
+				for (SelectionKey key : selector.selectedKeys())
+				{
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept();
+					else if (key.isReadable())
+						handshake(key);
+					else if (key.isWritable())
+						flush(key);
+				}
+				selector.selectedKeys().clear();
+			}
+		}
+		catch (IOException | ClosedSelectorException e)
+		{
+			// The server was closed
+		}
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel;
+		while ((channel = server.accept()) != null)
+		{
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Viewer());
+			viewerCount++;
+		}
+	}
+
+	/**
+	 * Reads the view chosen by a new spectator and sends it the current snapshot.
+	 */
+	private void handshake(SelectionKey key)
+	{
+		Viewer viewer = (Viewer) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer choice = ByteBuffer.allocate(1);
+		try
+		{
+			int read = channel.read(choice);
+			if (read < 0)
+			{
+				disconnect(key);
+				return;
+			}
+			if (read == 0)
+				return;
+		}
+		catch (IOException e)
+		{
+			disconnect(key);
+			return;
+		}
+
+		viewer.fullView = Character.toUpperCase((char) choice.get(0)) == 'F';
+		viewer.ready = true;
+		key.interestOps(0);
+		viewer.pending.add(snapshot(viewer.fullView ? 1 : 0).duplicate());
+		flush(key);
+	}
+
+	/**
+	 * Applies an event to the copy of the boards, then sends it to every spectator.
+	 */
+	private void broadcast(GameEvent event)
+	{
+		int target = event.getPlayerId() == ids[0] ? 0 : 1;
+		switch (event.getType())
+		{
+		case MISS: grids[target][event.getY()][event.getX()] = ShotResults.MISS.getSymbol(); break;
+		case HIT: grids[target][event.getY()][event.getX()] = ShotResults.HIT.getSymbol(); break;
+		case SINK: grids[target][event.getY()][event.getX()] = ShotResults.SINK.getSymbol(); break;
+		default: break;
+		}
+		version++;
+
+		ByteBuffer frame = encode(event.toString() + "\n");
+		for (SelectionKey key : selector.keys())
+		{
+			if (!(key.attachment() instanceof Viewer) || !key.isValid())
+				continue;
+			Viewer viewer = (Viewer) key.attachment();
+			if (!viewer.ready)
+				continue;		// Will get a snapshot including this event
+			if (viewer.pending.size() >= maxPendingFrames)
+				disconnect(key);
+			else
+			{
+				viewer.pending.add(frame.duplicate());
+				if (viewer.pending.size() == 1)
+					flush(key);
+			}
+		}
+	}
+
+	/**
+	 * Writes as much of a spectator's pending frames as the socket accepts without blocking.
+	 */
+	private void flush(SelectionKey key)
+	{
+		Viewer viewer = (Viewer) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try
+		{
+			while (!viewer.pending.isEmpty())
+			{
+				ByteBuffer frame = viewer.pending.peek();
+				channel.write(frame);
+				if (frame.hasRemaining())
+				{
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+				viewer.pending.poll();
+			}
+			key.interestOps(0);
+		}
+		catch (IOException e)
+		{
+			disconnect(key);
+		}
+	}
+
+	private void disconnect(SelectionKey key)
+	{
+		key.cancel();
+		try
+		{
+			key.channel().close();
+		}
+		catch (IOException e)
+		{
+			// Already gone
+		}
+		viewerCount--;
+	}
+
+	/**
+	 * Returns the snapshot of the game for a view, encoding it if the game changed since the last one.
+	 * @param view {@code 1} for the view showing both fleets, {@code 0} for the attackers' view.
+	 */
+	private ByteBuffer snapshot(int view)
+	{
+		if (snapshotVersions[view] != version)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int p = 0; p < 2; p++)
+			{
+				sb.append("BOARD ").append(names[p]).append('\n');
+				for (int y = 0; y < gridSize; y++)
+				{
+					for (int x = 0; x < gridSize; x++)
+					{
+						char c = grids[p][y][x];
+						sb.append(view == 0 && c == SHIP ? WATER : c);
+					}
+					sb.append('\n');
+				}
+			}
+			sb.append("END\n");
+			snapshots[view] = encode(sb.toString());
+			snapshotVersions[view] = version;
+		}
+		return snapshots[view];
+	}
+
+	private static ByteBuffer encode(String text)
+	{
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+	}
+
+	/**
+	 * The state of a connected spectator.
+	 */
+	private static class Viewer
+	{
+		private boolean ready;
+		private boolean fullView;
+		private ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+	}
+}
@@ -0,0 +1,144 @@
+package main;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Saves a game in the background every given number of turns or seconds.
+ * <p>
+ * When a save is due, the game thread only takes a copy of the {@link GameState} and hands it
+ * over to a writer thread. At most one save is written at a time and at most one waits behind it:
+ * a newer snapshot replaces a waiting one, which would be out of date anyway. Saves are written to
+ * a temporary file, then moved over the save file, so a crash never leaves a truncated save behind.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class AutoSaver
+{
+	private Path file;
+	private int everyTurns;
+	private long everyNanos;
+
+	private int lastSavedTurn;
+	private long lastSavedAt = System.nanoTime();
+
+	private AtomicReference<GameState> pending = new AtomicReference<>();
+	private AtomicLong written = new AtomicLong();
+	private AtomicLong coalesced = new AtomicLong();
+	private AtomicLong failed = new AtomicLong();
+	private volatile boolean closed;
+	private Thread writer;
+
+	/**
+	 * Constructs and starts an autosaver.
+	 * @param file the file to save to.
+	 * @param everyTurns the number of turns between saves, or {@code 0} not to save by turn.
+	 * @param everySeconds the number of seconds between saves, or {@code 0} not to save by time.
+	 */
+	public AutoSaver(Path file, int everyTurns, long everySeconds)
+	{
+		this.file = file;
+		this.everyTurns = everyTurns;
+		this.everyNanos = everySeconds * 1_000_000_000L;
+
+		writer = new Thread(this::write, "autosave");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Called by the game thread at the end of every turn. If a save is due, takes a snapshot of the
+	 * game and queues it for writing, without waiting for the disk.
+	 * @param turn the number of turns played so far.
+	 * @param snapshot supplies an independent copy of the game state. Only called if a save is due.
+	 */
+	public void turnPlayed(int turn, Supplier<GameState> snapshot)
+	{
+		long now = System.nanoTime();
+		boolean dueByTurn = everyTurns > 0 && turn - lastSavedTurn >= everyTurns;
+		boolean dueByTime = everyNanos > 0 && now - lastSavedAt >= everyNanos;
+		if (!dueByTurn && !dueByTime)
+			return;
+
+		lastSavedTurn = turn;
+		lastSavedAt = now;
+		if (pending.getAndSet(snapshot.get()) != null)
+			coalesced.incrementAndGet();
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void write()
+	{
+		while (true)
+		{
+			GameState state = pending.getAndSet(null);
+			if (state == null)
+			{
+				if (closed)
+					return;
+				LockSupport.park(this);
+				continue;
+			}
+
+			try
+			{
+				Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+				try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(temp)))
+				{
+					out.writeObject(state);
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				written.incrementAndGet();
+			}
+			catch (IOException e)
+			{
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Writes the snapshot still waiting, if any, then stops the writer thread.
+	 * @throws InterruptedException if interrupted while waiting for the last write.
+	 */
+	public void close() throws InterruptedException
+	{
+		closed = true;
+		LockSupport.unpark(writer);
+		writer.join();
+	}
+
+	/**
+	 * @return the number of saves written
+	 */
+	public long getWrittenCount()
+	{
+		return written.get();
+	}
+
+	/**
+	 * @return the number of snapshots replaced by a newer one before being written
+	 */
+	public long getCoalescedCount()
+	{
+		return coalesced.get();
+	}
+
+	/**
+	 * @return the number of saves that could not be written
+	 */
+	public long getFailedCount()
+	{
+		return failed.get();
+	}
+}
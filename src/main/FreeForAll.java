@@ -0,0 +1,570 @@
+package main;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import player.*;
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * Runs a free-for-all game of battleships between any number of players. On their turn, players choose one
+ * of the surviving opponents and fire a shot at it; players whose ships are all sunk drop out, and the last
+ * one afloat wins.
+ * <p>
+ * Every shot is public, so all there is to know about an opponent is the grid of the shots it received,
+ * which its board already keeps: nobody holds a grid per opponent. While the others move, CPU players work
+ * out their next shot on a thread pool, each on a copy of its target's grid. A shot worked out on a grid that
+ * has been shot at in the meantime is thrown away, and worked out again when the player's turn comes.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class FreeForAll
+{
+	public	static final int MIN_PLAYERS = 2;
+	public	static final int MAX_PLAYERS = 8;
+	private	static final String[] CPU_NAMES = {"EDI", "HAL 9000", "GLaDOS", "SHODAN", "Skynet", "WOPR", "Deep Thought", "Mother"};
+
+	private List<AbstractPlayer> players;
+	private int current;
+	private int turn;
+
+	private ExecutorService pool;
+	private int[] shotsReceived;	// By every player during this session, to tell whether a worked out shot is still good
+	private Aim[] aims;				// The shot each CPU player is working out, by player
+
+	/**
+	 * A shot being worked out against an opponent.
+	 */
+	private static class Aim
+	{
+		private final int target;
+		private final int version;
+		private final AbstractPlayer view;
+		private final Future<Coordinate> shot;
+
+		private Aim(int target, int version, AbstractPlayer view, Future<Coordinate> shot)
+		{
+			this.target = target;
+			this.version = version;
+			this.view = view;
+			this.shot = shot;
+		}
+	}
+
+
+	/**
+	 * Entry point of a free-for-all game.
+	 * @param args optional settings: {@code --threads=N} works out the shots of the CPU players on N threads
+	 * (by default one per processor), {@code --move-budget=MILLIS} lets CPU players refine each shot for up to
+	 * the specified time.
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		long moveMillis = 0;
+		for (String arg : args)
+		{
+			if (arg.startsWith("--threads="))
+				threads = Integer.parseInt(arg.substring("--threads=".length()));
+			else if (arg.startsWith("--move-budget="))
+				moveMillis = Long.parseLong(arg.substring("--move-budget=".length()));
+			else
+				System.out.println("Unknown argument \"" + arg + "\" ignored.");
+		}
+
+		System.out.println("BATTLESHIPS!!! Free-for-all");
+		FreeForAll game = null;
+		while (game == null)
+		{
+			System.out.print("\nDo you want to load a saved game (Y/N)? ");
+			String input = Game.scan.nextLine();
+
+			if (input.equalsIgnoreCase("Y"))
+			{
+				System.out.print("Input game name to load: ");
+				String fileName = Game.scan.nextLine() + ".sav";
+				game = loadGame(fileName, threads);
+				if (game != null)
+					System.out.println("\nGame \"" + fileName + "\" loaded.");
+				else
+					System.out.println("\nGame \"" + fileName + "\" cannot be loaded. Please try again.");
+			}
+			else if (input.equalsIgnoreCase("N"))
+				game = new FreeForAll(createPlayers(), threads);
+			else
+				System.out.println("Invalid input. Please try again.");
+		}
+
+		// The CPU players choose their shots at the same time, so each needs a budget of its own
+		List<MoveBudget> budgets = new ArrayList<>();
+		for (AbstractPlayer player : game.players)
+			if (moveMillis > 0 && player instanceof CPUPlayer)
+			{
+				MoveBudget budget = new MoveBudget(moveMillis);
+				((CPUPlayer) player).setMoveBudget(budget);
+				budgets.add(budget);
+			}
+
+		System.out.print("\nPreparations completed. Press enter to start the game. ");
+		Game.scan.nextLine();
+
+		boolean completed = game.play();
+		game.close();
+		if (!completed)
+			game.offerSave();
+		if (!budgets.isEmpty())
+		{
+			MoveBudget moves = MoveBudget.combine(budgets);
+			if (moves.getMoves() > 0)
+				System.out.println("CPU moves: " + moves);
+		}
+		System.out.println("\nBye!");
+		Game.scan.close();
+	}
+
+	/**
+	 * Constructs a game between the specified players, who have placed their ships already. The first player starts.
+	 * @param players the players, in the order they play.
+	 * @param threads the number of threads the CPU players work out their shots on.
+	 * @throws IllegalArgumentException if there are fewer than {@link #MIN_PLAYERS} or more than {@link #MAX_PLAYERS} players.
+	 */
+	public FreeForAll(List<AbstractPlayer> players, int threads)
+	{
+		this(new GameState(players, 0, 0), threads);
+	}
+
+	/**
+	 * Constructs a game that resumes from the specified state.
+	 * @param state the state of a free-for-all game, or of a two player game.
+	 * @param threads the number of threads the CPU players work out their shots on.
+	 * @throws IllegalArgumentException if there are fewer than {@link #MIN_PLAYERS} or more than {@link #MAX_PLAYERS} players.
+	 */
+	public FreeForAll(GameState state, int threads)
+	{
+		players = new ArrayList<>(state.getPlayers());
+		if (players.size() < MIN_PLAYERS || players.size() > MAX_PLAYERS)
+			throw new IllegalArgumentException("A free-for-all game needs from " + MIN_PLAYERS + " to " + MAX_PLAYERS + " players.");
+		current = state.getCurrent();
+		turn = state.getTurn();
+		shotsReceived = new int[players.size()];
+		aims = new Aim[players.size()];
+		pool = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+			Thread thread = new Thread(task, "free-for-all");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Plays the game until a single player is left or a human player wants to exit.
+	 * @return {@code true} if the game was completed, {@code false} if a player wants to exit.
+	 * @throws InterruptedException if the thread is interrupted while waiting for a shot.
+	 */
+	public boolean play() throws InterruptedException
+	{
+		while (countAlive() > 1)
+		{
+			aimAhead();
+
+			System.out.println("\nStarting turn " + (turn + 1) + ".");
+			if (!playTurn())
+				return false;
+
+			turn++;
+			do
+				current = (current + 1) % players.size();
+			while (players.get(current).isDefeated());
+		}
+
+		AbstractPlayer winner = players.get(current);
+		System.out.println("\n=======================================");
+		System.out.println("Game completed in " + turn + " turns.");
+		System.out.println("The winner is " + winner.getPlayerName() + "!");
+		System.out.println();
+		System.out.println("Final situation");
+		System.out.println();
+		winner.getBoard().displayShipGrid();
+		return true;
+	}
+
+	/**
+	 * Makes the current player choose a target and fire a shot at it.
+	 * @return {@code false} if the player wants to exit the game instead.
+	 */
+	private boolean playTurn() throws InterruptedException
+	{
+		AbstractPlayer attacker = players.get(current);
+		Aim aim = aims[current];
+		aims[current] = null;
+
+		int target;
+		AbstractPlayer view;
+		Coordinate shot = null;
+		if (aim != null)
+		{
+			// The shot is waited for even when it's no good anymore, since it shares the player's random numbers
+			Coordinate ready = await(aim);
+			if (ready != null && isCurrent(aim))
+				shot = ready;
+		}
+		if (shot != null)
+		{
+			target = aim.target;
+			view = aim.view;
+		}
+		else
+		{
+			// A target that is still afloat is kept, so that players don't change their mind on every shot
+			target = aim != null && !players.get(aim.target).isDefeated() ? aim.target : chooseTarget(current);
+			if (target < 0)
+				return false;
+			view = aimAt(current, target);
+			shot = view.getShot();
+			if (shot == null)
+				return false;
+		}
+
+		AbstractPlayer defender = players.get(target);
+		System.out.println(attacker.getPlayerName() + " fires at " + defender.getPlayerName() + " in " + (char)('A' + shot.getX()) + shot.getY() + ".");
+		ShotResults result = defender.checkFiredShot(shot);
+		shotsReceived[target]++;
+		view.recordShot(shot, result);
+
+		if (defender.isDefeated())
+			System.out.println(defender.getPlayerName() + " has no ships left and is out of the game.");
+		return true;
+	}
+
+	/**
+	 * Starts working out the next shot of every CPU player that isn't working one out already,
+	 * and works out again the shots that are no good anymore.
+	 */
+	private void aimAhead() throws InterruptedException
+	{
+		for (int i = 0; i < players.size(); i++)
+		{
+			AbstractPlayer player = players.get(i);
+			if (!(player instanceof CPUPlayer) || player.isDefeated())
+				continue;
+
+			int target;
+			if (aims[i] == null)
+				target = chooseTarget(i);
+			else if (aims[i].shot.isDone() && !isCurrent(aims[i]))
+			{
+				await(aims[i]);
+				target = players.get(aims[i].target).isDefeated() ? chooseTarget(i) : aims[i].target;
+			}
+			else
+				continue;
+
+			AbstractPlayer view = aimAt(i, target);
+			aims[i] = new Aim(target, shotsReceived[target], view, pool.submit(view::getShot));
+		}
+	}
+
+	/**
+	 * Returns whether a shot was worked out on the current grid of its target.
+	 */
+	private boolean isCurrent(Aim aim)
+	{
+		return !players.get(aim.target).isDefeated() && shotsReceived[aim.target] == aim.version;
+	}
+
+	/**
+	 * Waits for a shot being worked out.
+	 * @return the shot, or {@code null} if it couldn't be worked out.
+	 */
+	private static Coordinate await(Aim aim) throws InterruptedException
+	{
+		try
+		{
+			return aim.shot.get();
+		}
+		catch (ExecutionException e)
+		{
+			return null;	// It will be worked out again on the game thread, where any error shows
+		}
+	}
+
+	/**
+	 * Returns a player that chooses shots against a target on behalf of another. CPU players don't print
+	 * anything, since they may be choosing while somebody else plays.
+	 */
+	private AbstractPlayer aimAt(int shooter, int target)
+	{
+		AbstractPlayer view = players.get(shooter).aimAt(players.get(target).getBoard());
+		if (view instanceof CPUPlayer)
+			view.setVerbose(false);
+		return view;
+	}
+
+	/**
+	 * Chooses the opponent a player shoots at. Human players are asked; CPU players go for the opponent with
+	 * the most cells hit on ships that are still afloat, then for the one with the fewest ships left.
+	 * @param shooter the index of the player.
+	 * @return the index of the opponent, or {@code -1} if a human player wants to exit the game.
+	 */
+	private int chooseTarget(int shooter)
+	{
+		if (players.get(shooter) instanceof HumanPlayer)
+			return askTarget(shooter);
+
+		int best = -1;
+		int bestHits = -1;
+		int bestAfloat = Integer.MAX_VALUE;
+		for (int i = 0; i < players.size(); i++)
+		{
+			BoardView board = players.get(i).getBoard();
+			if (i == shooter || players.get(i).isDefeated())
+				continue;
+
+			int hits = countOpenHits(board);
+			if (hits > bestHits || (hits == bestHits && board.getShipsAfloat() < bestAfloat))
+			{
+				best = i;
+				bestHits = hits;
+				bestAfloat = board.getShipsAfloat();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Counts the cells of a board that were hit and belong to ships still afloat.
+	 */
+	private static int countOpenHits(BoardView board)
+	{
+		int size = board.getGridSize();
+		int hits = 0;
+		Coordinate pos = new Coordinate();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				pos.set(x, y);
+				if (board.getReceivedAt(pos) == ShotResults.HIT)
+					hits++;
+			}
+		return hits;
+	}
+
+	/**
+	 * Asks a human player which opponent to shoot at.
+	 * @return the index of the opponent, or {@code -1} if the player wants to exit the game.
+	 */
+	private int askTarget(int shooter)
+	{
+		List<Integer> targets = new ArrayList<>();
+		for (int i = 0; i < players.size(); i++)
+			if (i != shooter && !players.get(i).isDefeated())
+				targets.add(i);
+		if (targets.size() == 1)
+			return targets.get(0);
+
+		System.out.println("\nIt's " + players.get(shooter).getPlayerName() + "'s turn. The opponents still afloat are:");
+		for (int i = 0; i < targets.size(); i++)
+		{
+			AbstractPlayer opponent = players.get(targets.get(i));
+			System.out.println((i + 1) + ") " + opponent.getPlayerName() + ", " + opponent.getBoard().getShipsAfloat() + " ships left");
+		}
+		while (true)
+		{
+			System.out.print("\nInput the number of the opponent to shoot at, or \"exit\" to quit (and save the game if you wish): ");
+			String input = Game.scan.nextLine().trim();
+			if (input.equalsIgnoreCase("exit"))
+				return -1;
+			try
+			{
+				int choice = Integer.parseInt(input);
+				if (choice >= 1 && choice <= targets.size())
+					return targets.get(choice - 1);
+			}
+			catch (NumberFormatException e)
+			{
+				// Handled below, like any other invalid input
+			}
+			System.out.println("Invalid input. Please try again.");
+		}
+	}
+
+	/**
+	 * Returns the number of players still in the game.
+	 */
+	private int countAlive()
+	{
+		int alive = 0;
+		for (AbstractPlayer player : players)
+			if (!player.isDefeated())
+				alive++;
+		return alive;
+	}
+
+	/**
+	 * Stops the threads working out the shots of the CPU players.
+	 */
+	public void close()
+	{
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Takes a copy of the current game state, which the game can't change anymore.
+	 * @return the copy.
+	 */
+	public GameState snapshot()
+	{
+		List<AbstractPlayer> copies = new ArrayList<>();
+		for (AbstractPlayer player : players)
+			copies.add(player.copy());
+		return new GameState(copies, current, turn);
+	}
+
+	/**
+	 * Asks whether to save the game, and saves it if so.
+	 */
+	private void offerSave()
+	{
+		while (true)
+		{
+			System.out.print("\nDo you want to save the game before quitting (Y/N)? ");
+			String input = Game.scan.nextLine();
+
+			if (input.equalsIgnoreCase("Y"))
+			{
+				System.out.print("Input game name to save: ");
+				String fileName = Game.scan.nextLine() + ".sav";
+
+				try (ObjectOutputStream writer = new ObjectOutputStream(new FileOutputStream(fileName)))
+				{
+					writer.writeObject(new GameState(players, current, turn));
+					System.out.println("Game \"" + fileName + "\" saved.");
+					break;
+				}
+				catch (IOException e)
+				{
+					System.out.println("Game \"" + fileName + "\" cannot be saved. Please try again.");
+				}
+			}
+			else if (input.equalsIgnoreCase("N")) break;
+			else System.out.println("Invalid input. Please try again.");
+		}
+	}
+
+	/**
+	 * Attempts to load a saved game. Two player games can be loaded too, and go on as a free-for-all between two.
+	 * @return the game, or {@code null} if the file can't be loaded.
+	 */
+	private static FreeForAll loadGame(String fileName, int threads)
+	{
+		try (ObjectInputStream reader = new ObjectInputStream(new FileInputStream(fileName)))
+		{
+			return new FreeForAll((GameState) reader.readObject(), threads);
+		}
+		catch (ClassCastException e)
+		{
+			System.out.println("The specified file could not be read as a save file.");
+		}
+		catch (ClassNotFoundException e)
+		{
+			System.out.println("The specified save file is corrupted.");
+		}
+		catch (FileNotFoundException e)
+		{
+			System.out.println("File not found.");
+		}
+		catch (IOException e)
+		{
+			System.out.println("An I/O error has occurred.");
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the players of a new game, prompting the user for the size of the board, the ships and the players.
+	 * @return the players, with their ships placed.
+	 */
+	private static List<AbstractPlayer> createPlayers()
+	{
+		int gridSize = readInt("\nInput the board size (from " + Game.MIN_BOARD_SIZE + " to " + Game.MAX_BOARD_SIZE + "): ",
+				Game.MIN_BOARD_SIZE, Game.MAX_BOARD_SIZE);
+		int count = readInt("\nInput the number of players (from " + MIN_PLAYERS + " to " + MAX_PLAYERS + "): ", MIN_PLAYERS, MAX_PLAYERS);
+		int ships = readInt("\nInput the number of ships of every player (from " + Game.MIN_SHIPS_NUM + " to " + (6 * (gridSize / 6)) + "): ",
+				Game.MIN_SHIPS_NUM, 6 * (gridSize / 6));
+		int[] shipLengths = new int[ships];
+		while (true)
+		{
+			for (int i = 0; i < ships; i++)
+				shipLengths[i] = readInt("Input the length of ship n. " + (i + 1) + " (from 1 to " + Game.MAX_SHIP_LENGTH + "): ", 1, Game.MAX_SHIP_LENGTH);
+			if (Game.fleetFits(gridSize, shipLengths))
+				break;
+			System.out.println("These ships don't fit on the board. Please input shorter ones.\n");
+		}
+
+		List<AbstractPlayer> players = new ArrayList<>();
+		int cpus = 0;
+		for (int i = 0; i < count; i++)
+		{
+			while (true)
+			{
+				System.out.println("\nInput the type of player n. " + (i + 1) + ".");
+				System.out.print("\"H\" for a human player, \"C\" for a CPU player: ");
+				String input = Game.scan.nextLine();
+				if (input.equalsIgnoreCase("H"))
+				{
+					System.out.print("\nInput the player's name: ");
+					players.add(new HumanPlayer(Game.scan.nextLine(), gridSize));
+					break;
+				}
+				else if (input.equalsIgnoreCase("C"))
+				{
+					players.add(new CPUPlayer(CPU_NAMES[cpus++ % CPU_NAMES.length], gridSize));
+					break;
+				}
+				else
+					System.out.println("Invalid input. Please try again.");
+			}
+		}
+
+		for (AbstractPlayer player : players)
+			player.placeShips(shipLengths);
+		return players;
+	}
+
+	/**
+	 * Prompts the user for a number in the specified range until a valid one is given.
+	 */
+	private static int readInt(String prompt, int min, int max)
+	{
+		while (true)
+		{
+			try
+			{
+				System.out.print(prompt);
+				int value = Game.scan.nextInt();
+				if (value >= min && value <= max)
+					return value;
+				System.out.println("Invalid input. Please try again.");
+			}
+			catch (InputMismatchException e)
+			{
+				System.out.println("Invalid input. Please input a numeric value.");
+			}
+			finally
+			{
+				Game.scan.nextLine();
+			}
+		}
+	}
+}
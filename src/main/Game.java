@@ -6,9 +6,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.Paths;
 import java.util.InputMismatchException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
+import events.GameEvent;
+import events.GameEventPublisher;
+import events.SpectatorServer;
 import player.*;
 import types.Coordinate;
 import types.ShotResults;
@@ -21,10 +26,15 @@ import types.ShotResults;
  */
 public class Game
 {
-	private	static final int MIN_BOARD_SIZE = 10;
-	private	static final int MAX_BOARD_SIZE = 26;
-	private	static final int MIN_SHIPS_NUM = 4;
-	public	static final int MAX_SHIP_LENGTH = 4;
+	static final int MIN_BOARD_SIZE = 10;
+	static final int MAX_BOARD_SIZE = 26;
+	static final int MIN_SHIPS_NUM = 4;
+	public	static final int MAX_SHIP_LENGTH = 8;
+	
+	/** Salvo setting of a classic game, where every turn fires a single shot. */
+	public	static final int SALVO_OFF = 0;
+	/** Salvo setting where every turn fires one shot per surviving ship of the attacker. */
+	public	static final int SALVO_SURVIVING_SHIPS = -1;
 
 	private AbstractPlayer attacker;
 	private AbstractPlayer defender;
@@ -34,20 +44,166 @@ public class Game
 	private int	gridSize;
 	
 	private int	turn;
+	private int	salvo;
+	
+	private GameEventPublisher events = new GameEventPublisher();
+	private AutoSaver autoSaver;
+	private OddsEstimator oddsEstimator;
+	private long oddsMillis;
+	private CompletableFuture<String> odds;		// The last estimate started
+	private MoveInput moves;
 	
 	public static final Scanner scan = new Scanner(System.in);
 
 	
-	public static void main(String[] args)
+	/**
+	 * Entry point of the program.
+	 * @param args optional settings: {@code --autosave-turns=N} and {@code --autosave-seconds=T} save
+	 * the game in the background every N turns and/or T seconds, to the file given by
+	 * {@code --autosave-file=NAME} (by default {@code autosave}, plus the {@code .sav} extension).
+	 * {@code --win-odds=MILLIS} shows the chance of each player to win after the turns, estimated
+	 * in the background in the specified time: turns ending while an estimate runs get none.
+	 * {@code --move-budget=MILLIS} lets CPU players refine each shot for up to the
+	 * specified time. {@code --endgame=LAYOUTS} lets CPU players play the end of the game exactly, once
+	 * there are no more than the specified number of layouts of the enemy fleet left, taking up to the time
+	 * given by {@code --endgame-millis=MILLIS} (100 by default) for each shot.
+	 * {@code --moves=FILE} plays the moves of the human players from a script, as
+	 * described by {@link MoveInput}, instead of asking for them.
+	 * {@code --spectate=PORT} broadcasts the game to spectators connecting to the specified local port,
+	 * or to any free port if 0, as described by {@link SpectatorServer}, until the game ends.
+	 * @throws IOException if the script of moves can't be opened or closed.
+	 */
+	public static void main(String[] args) throws InterruptedException, IOException
 	{
+		int autosaveTurns = 0;
+		long autosaveSeconds = 0;
+		String autosaveFile = "autosave";
+		long oddsMillis = 0;
+		long moveMillis = 0;
+		int endgameLayouts = 0;
+		long endgameMillis = 100;
+		String movesFile = null;
+		int spectatePort = -1;
+		for (String arg : args)
+		{
+			if (arg.startsWith("--autosave-turns="))
+				autosaveTurns = Integer.parseInt(arg.substring("--autosave-turns=".length()));
+			else if (arg.startsWith("--autosave-seconds="))
+				autosaveSeconds = Long.parseLong(arg.substring("--autosave-seconds=".length()));
+			else if (arg.startsWith("--autosave-file="))
+				autosaveFile = arg.substring("--autosave-file=".length());
+			else if (arg.startsWith("--win-odds="))
+				oddsMillis = Long.parseLong(arg.substring("--win-odds=".length()));
+			else if (arg.startsWith("--move-budget="))
+				moveMillis = Long.parseLong(arg.substring("--move-budget=".length()));
+			else if (arg.startsWith("--endgame="))
+				endgameLayouts = Integer.parseInt(arg.substring("--endgame=".length()));
+			else if (arg.startsWith("--endgame-millis="))
+				endgameMillis = Long.parseLong(arg.substring("--endgame-millis=".length()));
+			else if (arg.startsWith("--moves="))
+				movesFile = arg.substring("--moves=".length());
+			else if (arg.startsWith("--spectate="))
+				spectatePort = Integer.parseInt(arg.substring("--spectate=".length()));
+			else
+				System.out.println("Unknown argument \"" + arg + "\" ignored.");
+		}
+		
 		Game game = new Game();
+		if (movesFile != null)
+			game.moves = new MoveInput(Paths.get(movesFile));
+		if (autosaveTurns > 0 || autosaveSeconds > 0)
+			game.autoSaver = new AutoSaver(Paths.get(autosaveFile + ".sav"), autosaveTurns, autosaveSeconds);
+		if (oddsMillis > 0)
+		{
+			game.oddsMillis = oddsMillis;
+			game.oddsEstimator = OddsEstimator.load(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+		}
+		
 		boolean created = game.newGame();
+		MoveBudget budget = moveMillis > 0 ? new MoveBudget(moveMillis) : null;
+		EndgameSolver endgame = endgameLayouts > 0 ? new EndgameSolver(endgameLayouts, endgameMillis) : null;
+		for (AbstractPlayer player : new AbstractPlayer[] {game.attacker, game.defender})
+			if (created && player instanceof CPUPlayer)
+			{
+				((CPUPlayer) player).setMoveBudget(budget);
+				((CPUPlayer) player).setEndgameSolver(endgame);
+				((CPUPlayer) player).setEnemyFleet((player == game.attacker ? game.defender : game.attacker)
+						.getBoard().getShipLengths());
+			}
+		SpectatorServer spectators = null;
+		if (created && spectatePort >= 0)
+		{
+			spectators = new SpectatorServer(game.attacker, game.defender, 1024);
+			game.events.subscribe(spectators);
+			System.out.println("Spectators can connect to port " + spectators.start(spectatePort) + ".");
+		}
 		if (created)
 			game.gameLoop();
+		if (spectators != null)
+			spectators.close();
+		if (budget != null && budget.getMoves() > 0)
+			System.out.println("CPU moves: " + budget);
+		if (endgame != null && endgame.getMoves() > 0)
+			System.out.println("CPU endgame: " + endgame);
+		if (game.autoSaver != null)
+			game.autoSaver.close();
+		if (game.oddsEstimator != null)
+			game.oddsEstimator.close();
+		if (game.moves != null)
+			game.moves.close();
 		scan.close();
 	}
 
 
+	/**
+	 * Returns whether ships of the specified lengths can be placed together on a board, by placing them
+	 * at random. Fleets of short ships always fit, long ones may not.
+	 * @param gridSize the size of the board.
+	 * @param lengths the lengths of the ships.
+	 * @return {@code true} if a layout was found.
+	 */
+	static boolean fleetFits(int gridSize, int[] lengths)
+	{
+		CPUPlayer player = new CPUPlayer("Fleet check", gridSize, 0);
+		player.setVerbose(false);
+		try
+		{
+			player.placeShips(lengths);
+			return true;
+		}
+		catch (InputMismatchException e)
+		{
+			return false;
+		}
+	}
+
+
+	/**
+	 * Returns the publisher of the events of this game. Loggers, spectators and any other observer
+	 * can subscribe to it without slowing the game down.
+	 * @return the event publisher.
+	 */
+	public GameEventPublisher getEventPublisher()
+	{
+		return events;
+	}
+
+
+	/**
+	 * Returns how many shots the attacker fires in a turn.
+	 * @param salvo the salvo setting of the game: {@link #SALVO_OFF}, {@link #SALVO_SURVIVING_SHIPS}
+	 * or a fixed, positive number of shots.
+	 * @param attacker the player about to shoot.
+	 * @return the number of shots of the turn, at least one.
+	 */
+	public static int shotsPerTurn(int salvo, AbstractPlayer attacker)
+	{
+		if (salvo == SALVO_SURVIVING_SHIPS)
+			return Math.max(1, attacker.getBoard().getShipsAfloat());
+		return Math.max(1, salvo);
+	}
+
+
 	/**
 	 * Starts a new game asking for all game parameters.
 	 * If requested load a previous game state from the disc.
@@ -83,6 +239,9 @@ public class Game
 	        }
 	        else System.out.println("Invalid input. Please try again.");
 	    }
+		attacker.setEventPublisher(events);
+		defender.setEventPublisher(events);
+		
 		System.out.print("\nPreparations completed. Press enter to start the game. ");
 		Game.scan.nextLine();
 
@@ -100,12 +259,16 @@ public class Game
 		do
 		{
 			System.out.println("\nStarting turn "+ (turn + 1) + ".");
+			publish(GameEvent.Type.TURN_START, turn + 1, attacker, null);
 			
-			Coordinate shot = attacker.getShot();
-			if (shot != null)	//a null shot represents the player wanting to exit the game
+			boolean shot;
+			if (salvo == SALVO_OFF)
+				shot = playShot();
+			else
+				shot = playVolley();
+			
+			if (shot)	//no shot represents the player wanting to exit the game
 			{
-				ShotResults result = defender.checkFiredShot(shot);
-				attacker.recordShot(shot,  result);
 				
 				if (!defender.isDefeated())
 				{
@@ -114,6 +277,11 @@ public class Game
 					defender = swap;
 				}
 				turn++;
+				
+				if (autoSaver != null && !defender.isDefeated())
+					autoSaver.turnPlayed(turn, this::snapshot);
+				if (oddsEstimator != null && !defender.isDefeated())
+					estimateOdds();
 			}
 			else exit = true;
 		} while (!defender.isDefeated() && !exit);
@@ -144,6 +312,7 @@ public class Game
 		}
 		else // exit == false
 		{
+			publish(GameEvent.Type.GAME_END, turn, attacker, null);
 			System.out.println("\n=======================================");
 			System.out.println("Game completed in " + turn + " turns.");
 			System.out.println("The winner is " + attacker.getPlayerName() + "!");
@@ -159,9 +328,70 @@ public class Game
 			defender.displayGrid();
 		}
 
+		events.close();
     	System.out.println("\nBye!");
 	}
 	
+	/**
+	 * Starts estimating the chance of each player to win on a copy of the game, unless the last estimate
+	 * is still running, and shows the estimate once it's over without holding the game up.
+	 */
+	private void estimateOdds()
+	{
+		if (odds != null && !odds.isDone())
+			return;		// Skips this turn rather than falling behind
+		int estimated = turn;
+		odds = oddsEstimator.estimateLater(snapshot(), oddsMillis);
+		odds.thenAccept(estimate -> System.out.println("Chance to win after turn " + estimated + ": " + estimate));
+	}
+	
+	/**
+	 * Makes the attacker fire a single shot at the defender.
+	 * @return {@code false} if the attacker wants to exit the game instead.
+	 */
+	private boolean playShot()
+	{
+		Coordinate shot = attacker.getShot();
+		if (shot == null)
+			return false;
+		
+		publish(GameEvent.Type.SHOT, turn + 1, attacker, shot);
+		ShotResults result = defender.checkFiredShot(shot);
+		attacker.recordShot(shot,  result);
+		return true;
+	}
+	
+	/**
+	 * Makes the attacker fire a whole volley at the defender, as in salvo mode.
+	 * @return {@code false} if the attacker wants to exit the game instead.
+	 */
+	private boolean playVolley()
+	{
+		Coordinate[] shots = attacker.getVolley(shotsPerTurn(salvo, attacker));
+		if (shots == null)
+			return false;
+		
+		for (Coordinate shot : shots)
+			publish(GameEvent.Type.SHOT, turn + 1, attacker, shot);
+		ShotResults[] results = defender.checkFiredVolley(shots);
+		attacker.recordVolley(shots, results);
+		return true;
+	}
+	
+	/**
+	 * Publishes an event, if anybody is listening.
+	 * @param type the type of event.
+	 * @param turn the turn the event belongs to.
+	 * @param player the player the event is about.
+	 * @param shot the coordinate of the shot, or {@code null} if the event is not about a shot.
+	 */
+	private void publish(GameEvent.Type type, int turn, AbstractPlayer player, Coordinate shot)
+	{
+		if (events.hasSubscribers())
+			events.publish(new GameEvent(type, turn, player.getPlayerName(), player.getPlayerId(),
+					shot == null ? -1 : shot.getX(), shot == null ? -1 : shot.getY()));
+	}
+	
 	/**
 	 * Creates a new game, prompting the user to input all of the required parameters
 	 */
@@ -204,28 +434,70 @@ public class Game
 	    
 	    // Lengths of the ships
 	    shipLengths = new int[shipsNumber];
-	    for (int i = 0; i < shipsNumber; i++)
+	    while (true)
 	    {
-	        while (true)
-	        {
-	        	try
-	        	{
-		        	System.out.print("Input the length of ship n. " + (i + 1) + " (from 1 to " + MAX_SHIP_LENGTH + "): ");
-			        shipLengths[i] = scan.nextInt();
-		            if (shipLengths[i] >= 1 && shipLengths[i] <= MAX_SHIP_LENGTH) break;
-		            else System.out.println("Invalid input. Please try again.\n");
-	        	}
-	        	catch (InputMismatchException e)
-		    	{
-		    		System.out.println("Invalid input. Please input a numeric value.\n");
-		    	}
-	        	finally
-	        	{
-	        		scan.nextLine();
-	        	}
-	        }
+		    for (int i = 0; i < shipsNumber; i++)
+		    {
+		        while (true)
+		        {
+		        	try
+		        	{
+			        	System.out.print("Input the length of ship n. " + (i + 1) + " (from 1 to " + MAX_SHIP_LENGTH + "): ");
+				        shipLengths[i] = scan.nextInt();
+			            if (shipLengths[i] >= 1 && shipLengths[i] <= MAX_SHIP_LENGTH) break;
+			            else System.out.println("Invalid input. Please try again.\n");
+		        	}
+		        	catch (InputMismatchException e)
+			    	{
+			    		System.out.println("Invalid input. Please input a numeric value.\n");
+			    	}
+		        	finally
+		        	{
+		        		scan.nextLine();
+		        	}
+		        }
+		    }
+	    	if (fleetFits(gridSize, shipLengths)) break;
+	    	else System.out.println("These ships don't fit on the board. Please input shorter ones.\n");
 	    }
 		
+		// Salvo mode
+		while (true)
+		{
+			System.out.print("\nDo you want to play in salvo mode, firing several shots per turn (Y/N)? ");
+			String input = scan.nextLine();
+			if (input.equalsIgnoreCase("N"))
+			{
+				salvo = SALVO_OFF;
+				break;
+			}
+			else if (input.equalsIgnoreCase("Y"))
+			{
+				try
+				{
+					System.out.print("Input the number of shots per turn, or 0 for one shot per surviving ship: ");
+					salvo = scan.nextInt();
+					if (salvo >= 0)
+					{
+						if (salvo == 0)
+							salvo = SALVO_SURVIVING_SHIPS;
+						break;
+					}
+					else System.out.println("Invalid input. Please try again.");
+				}
+				catch (InputMismatchException e)
+				{
+					System.out.println("Invalid input. Please input a numeric value.");
+				}
+				finally
+				{
+					scan.nextLine();
+				}
+			}
+			else
+				System.out.println("Invalid input. Please try again.");
+		}
+		
 		// Type of player1, who starts as attacker
 		while (true)
 		{
@@ -236,7 +508,9 @@ public class Game
 			{
 				System.out.print("\nInput the player's name: ");
 				String name = scan.nextLine();
-				attacker = new HumanPlayer(name, gridSize);
+				HumanPlayer human = new HumanPlayer(name, gridSize);
+				human.setInput(moves);
+				attacker = human;
 				break;
 			}
 			else if (input.equalsIgnoreCase("C"))
@@ -258,7 +532,9 @@ public class Game
 			{
 				System.out.print("\nInput the player's name: ");
 				String name = scan.nextLine();
-				defender = new HumanPlayer(name, gridSize);
+				HumanPlayer human = new HumanPlayer(name, gridSize);
+				human.setInput(moves);
+				defender = human;
 				break;
 			}
 			else if (input.equalsIgnoreCase("C"))
@@ -276,6 +552,15 @@ public class Game
 		turn = 0;
 	}
 	
+	/**
+	 * Takes a copy of the current game state, which the game can't change anymore.
+	 * @return the copy.
+	 */
+	private GameState snapshot()
+	{
+		return new GameState(attacker.copy(), defender.copy(), turn, salvo);
+	}
+	
 	/**
 	 * Attempts to save the current game state.
 	 * 
@@ -284,7 +569,7 @@ public class Game
 	 */
 	private boolean saveGame(String fileName)
 	{
-		GameState gameState = new GameState(attacker, defender, turn);
+		GameState gameState = new GameState(attacker, defender, turn, salvo);
 		
 		try (ObjectOutputStream writer = new ObjectOutputStream(new FileOutputStream(fileName)))
 		{
@@ -312,9 +597,18 @@ public class Game
 		try (ObjectInputStream reader = new ObjectInputStream(new FileInputStream(fileName)))
 		{
 			GameState gameState = (GameState) reader.readObject();
+			if (gameState.isFreeForAll())
+			{
+				System.out.println("The specified save file holds a free-for-all game.");
+				return false;
+			}
 			attacker = gameState.getAttacker();
 			defender = gameState.getDefender();
+			for (AbstractPlayer player : new AbstractPlayer[] {attacker, defender})
+				if (player instanceof HumanPlayer)
+					((HumanPlayer) player).setInput(moves);
 			turn = gameState.getTurn();
+			salvo = gameState.getSalvo();
 			return true;
 		} 
 		catch (ClassCastException e)
@@ -1,10 +1,13 @@
 package main;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
 import player.*;
 
 /**
- * A class that holds two players and the current turn number. Used for serialization/deserialization
+ * A class that holds the players and the current turn number. Used for serialization/deserialization
  * @author Alessandro
  * @version 1.0
  */
@@ -16,6 +19,9 @@ implements Serializable
 	private AbstractPlayer attacker;
 	private AbstractPlayer defender;
 	private Integer turn;
+	private int salvo;
+	private List<AbstractPlayer> players;	// Every player of a free-for-all game, null for a two player game
+	private int current;
 	
 	/**
 	 * Initializes the fields in this object, making it ready to be serialized
@@ -29,6 +35,33 @@ implements Serializable
 		this.defender = defender;
 		this.turn = turn;
 	}
+	
+	/**
+	 * Initializes the fields in this object for a game played in salvo mode
+	 * @param attacker the player currently attacking
+	 * @param defender the player currently being attacked
+	 * @param turn the current turn
+	 * @param salvo the salvo setting of the game, as described by {@link Game#shotsPerTurn(int, AbstractPlayer)}
+	 */
+	public GameState(AbstractPlayer attacker, AbstractPlayer defender, Integer turn, int salvo)
+	{
+		this(attacker, defender, turn);
+		this.salvo = salvo;
+	}
+
+	/**
+	 * Initializes the fields in this object for a free-for-all game. The attacker is the player whose turn it is,
+	 * and there is no defender until that player chooses a target.
+	 * @param players every player of the game, eliminated ones included.
+	 * @param current the index of the player whose turn it is.
+	 * @param turn the current turn
+	 */
+	public GameState(List<AbstractPlayer> players, int current, Integer turn)
+	{
+		this(players.get(current), null, turn);
+		this.players = new ArrayList<>(players);
+		this.current = current;
+	}
 
 	/**
 	 * @return the attacker
@@ -53,5 +86,37 @@ implements Serializable
 	{
 		return turn;
 	}
+
+	/**
+	 * @return the salvo setting, {@link Game#SALVO_OFF} for a classic game
+	 */
+	public int getSalvo()
+	{
+		return salvo;
+	}
+
+	/**
+	 * @return {@code true} if this is the state of a free-for-all game
+	 */
+	public boolean isFreeForAll()
+	{
+		return players != null;
+	}
+
+	/**
+	 * @return every player of the game, the attacker first for a two player game
+	 */
+	public List<AbstractPlayer> getPlayers()
+	{
+		return players != null ? players : List.of(attacker, defender);
+	}
+
+	/**
+	 * @return the index of the player whose turn it is among {@link #getPlayers()}
+	 */
+	public int getCurrent()
+	{
+		return current;
+	}
 	
 }
@@ -0,0 +1,50 @@
+package main;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Estimates the chance of the players of a game in progress to win it, off the thread playing the game, so
+ * that the estimates don't slow the turns down. {@link Game} shows them with {@code --win-odds}.
+ * <p>
+ * The estimator is loaded by name, so that this package doesn't depend on the simulations it's built on.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public interface OddsEstimator
+{
+	/** The class of the estimator loaded by {@link #load(int, long)}. */
+	String IMPLEMENTATION = "sim.WinProbabilityEstimator";
+
+	/**
+	 * Starts estimating the chance of the attacker to win, and returns at once.
+	 * @param state the game, with the attacker about to shoot. It must not be changed until the estimate is over.
+	 * @param budgetMillis how long to estimate for, in milliseconds.
+	 * @return the estimate, described for the players, once it's over.
+	 */
+	CompletableFuture<String> estimateLater(GameState state, long budgetMillis);
+
+	/**
+	 * Stops the estimates in progress and the threads of this estimator.
+	 */
+	void close();
+
+	/**
+	 * Loads the estimator of the simulations.
+	 * @param threads the number of threads playing out games.
+	 * @param seed the seed all the random choices of the estimates derive from.
+	 * @return the estimator.
+	 * @throws IllegalStateException if the estimator isn't available.
+	 */
+	static OddsEstimator load(int threads, long seed)
+	{
+		try
+		{
+			return (OddsEstimator) Class.forName(IMPLEMENTATION).getConstructor(int.class, long.class)
+					.newInstance(threads, seed);
+		}
+		catch (ReflectiveOperationException | ClassCastException e)
+		{
+			throw new IllegalStateException("The estimator " + IMPLEMENTATION + " is not available.", e);
+		}
+	}
+}
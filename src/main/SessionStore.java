@@ -0,0 +1,530 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the games of a server, by session id, with only the most recently used ones in memory. When more games
+ * than the capacity are resident, the least recently used ones are passivated to compressed snapshots in a
+ * directory, and reactivated from them the next time they are used, so players who walk away in the middle
+ * of a game don't pin it in memory.
+ * <p>
+ * Every session has its own lock, held while a request works on it, so requests on different sessions never
+ * wait for each other. Passivation is done by a background thread, which only takes sessions nobody is using,
+ * and reactivation by the request that needs the session, holding no lock but the session's. The order of use
+ * is kept by a map locked only to move a session to its end.
+ * <p>
+ * The store keeps statistics, which can be read from any thread: the hit rate of the requests, and how long
+ * passivations and reactivations take. Transient settings of the players, such as move budgets, don't survive
+ * a passivation.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class SessionStore
+implements Closeable
+{
+	private static final long MIN_RETRY_NANOS = 1_000_000;			// Wait after a first failed passivation
+	private static final long MAX_RETRY_NANOS = 1_000_000_000;		// Longest wait between failed passivations
+	private static final long BUSY_NANOS = 1_000_000;				// Wait when every game in memory is in use
+
+	private Path directory;
+	private volatile int capacity;
+	private AtomicLong nextFile = new AtomicLong();
+	private Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private LinkedHashMap<String, Session> resident = new LinkedHashMap<>(16, 0.75f, true);	// Locked on itself
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong passivations = new AtomicLong();
+	private AtomicLong passivationNanos = new AtomicLong();
+	private AtomicLong maxPassivationNanos = new AtomicLong();
+	private AtomicLong snapshotBytes = new AtomicLong();
+	private AtomicLong activationNanos = new AtomicLong();
+	private AtomicLong failed = new AtomicLong();
+	private volatile boolean closed;
+	private Thread passivator;
+
+	/**
+	 * A game and where it goes when it's passivated.
+	 */
+	private static class Session
+	{
+		private final String id;
+		private final Path file;
+		private final ReentrantLock lock = new ReentrantLock();
+		private GameState state;		// null while passivated
+		private boolean removed;
+
+		private Session(String id, Path file)
+		{
+			this.id = id;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Constructs a store and starts its passivation thread.
+	 * @param directory the directory of the snapshots, created if needed.
+	 * @param capacity the most games kept in memory.
+	 * @throws IOException if the directory can't be created.
+	 */
+	public SessionStore(Path directory, int capacity) throws IOException
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		this.directory = Files.createDirectories(directory);
+		this.capacity = capacity;
+		passivator = new Thread(this::passivate, "session-passivator");
+		passivator.setDaemon(true);
+		passivator.start();
+	}
+
+	/**
+	 * Adds a session, or replaces its game.
+	 * @param id the id of the session.
+	 * @param state the game.
+	 */
+	public void put(String id, GameState state)
+	{
+		while (true)
+		{
+			Session session = sessions.computeIfAbsent(id,
+					key -> new Session(key, directory.resolve("session-" + nextFile.incrementAndGet() + ".sav")));
+			session.lock.lock();
+			try
+			{
+				if (session.removed)
+					continue;		// Removed in the meantime: a new session is needed
+				session.state = state;
+				touch(session);
+				return;
+			}
+			finally
+			{
+				session.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Runs a request on the game of a session, reactivating it first if it was passivated. The request has the
+	 * game to itself, and can play it or replace it. The game must not be used once the request is over.
+	 * @param id the id of the session.
+	 * @param request the request, which returns the game to keep, or {@code null} to remove the session.
+	 * @return the game kept, or {@code null} if there is no such session or the request removed it.
+	 * @throws UncheckedIOException if the session can't be reactivated.
+	 */
+	public GameState update(String id, UnaryOperator<GameState> request)
+	{
+		Session session = sessions.get(id);
+		if (session == null)
+			return null;
+		session.lock.lock();
+		try
+		{
+			if (session.removed)
+				return null;
+			if (session.state != null)
+				hits.incrementAndGet();
+			else
+			{
+				misses.incrementAndGet();
+				activate(session);
+			}
+			touch(session);
+
+			GameState updated = request.apply(session.state);
+			if (updated == null)
+				discard(session);
+			else
+				session.state = updated;
+			return updated;
+		}
+		finally
+		{
+			session.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a session, with its snapshot if it has one.
+	 * @param id the id of the session.
+	 * @return {@code false} if there was no such session.
+	 */
+	public boolean remove(String id)
+	{
+		Session session = sessions.get(id);
+		if (session == null)
+			return false;
+		session.lock.lock();
+		try
+		{
+			if (session.removed)
+				return false;
+			discard(session);
+			return true;
+		}
+		finally
+		{
+			session.lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes how many games are kept in memory, for instance to shed some when memory runs low. The games over
+	 * the new capacity are passivated in the background.
+	 * @param capacity the most games kept in memory.
+	 */
+	public void setCapacity(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		this.capacity = capacity;
+		LockSupport.unpark(passivator);
+	}
+
+	/**
+	 * Marks a session, locked by the caller, as the most recently used, and wakes the passivation thread up if
+	 * too many games are in memory.
+	 */
+	private void touch(Session session)
+	{
+		if (requeue(session))
+			LockSupport.unpark(passivator);
+	}
+
+	/**
+	 * Marks a session as the most recently used, without waking the passivation thread up.
+	 * @return {@code true} if too many games are in memory.
+	 */
+	private boolean requeue(Session session)
+	{
+		synchronized (resident)
+		{
+			resident.put(session.id, session);
+			return resident.size() > capacity;
+		}
+	}
+
+	/**
+	 * Removes a session locked by the caller.
+	 */
+	private void discard(Session session)
+	{
+		session.removed = true;
+		session.state = null;
+		sessions.remove(session.id, session);
+		synchronized (resident)
+		{
+			resident.remove(session.id, session);
+		}
+		try
+		{
+			Files.deleteIfExists(session.file);
+		}
+		catch (IOException e)
+		{
+			// Left behind, to be overwritten by no one: only wastes some disk space
+		}
+	}
+
+	/**
+	 * Reads the game of a passivated session, locked by the caller.
+	 */
+	private void activate(Session session)
+	{
+		long start = System.nanoTime();
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+				new GZIPInputStream(Files.newInputStream(session.file)))))
+		{
+			session.state = (GameState) in.readObject();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not reactivate session " + session.id + ".", e);
+		}
+		catch (ClassNotFoundException | ClassCastException e)
+		{
+			throw new UncheckedIOException("Could not reactivate session " + session.id + ".",
+					new IOException("The snapshot is not a game.", e));
+		}
+		try
+		{
+			Files.delete(session.file);		// Stale from now on
+		}
+		catch (IOException e)
+		{
+			// Overwritten by the next passivation
+		}
+		activationNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Body of the passivation thread: passivates the least recently used games while there are too many. Games in
+	 * use are skipped, and once every game in memory has been found in use it waits {@link #BUSY_NANOS} for the
+	 * requests to finish. After a failure it waits longer and longer before trying again, up to
+	 * {@link #MAX_RETRY_NANOS}.
+	 */
+	private void passivate()
+	{
+		long retryNanos = MIN_RETRY_NANOS;
+		int busy = 0;		// Games found in use in a row
+		while (!closed)
+		{
+			Session victim = null;
+			int residentCount;
+			synchronized (resident)
+			{
+				residentCount = resident.size();
+				if (residentCount > capacity)
+				{
+					Iterator<Session> eldest = resident.values().iterator();
+					victim = eldest.next();
+					eldest.remove();
+				}
+			}
+			if (victim == null)
+			{
+				busy = 0;
+				LockSupport.park(this);
+			}
+			else if (!victim.lock.tryLock())
+			{
+				requeue(victim);		// In use, so not idle after all
+				if (++busy >= residentCount)
+				{
+					busy = 0;
+					pause(BUSY_NANOS);
+				}
+			}
+			else
+			{
+				busy = 0;
+				boolean written;
+				try
+				{
+					written = passivate(victim);
+				}
+				finally
+				{
+					victim.lock.unlock();
+				}
+				if (written)
+					retryNanos = MIN_RETRY_NANOS;
+				else
+				{
+					pause(retryNanos);
+					retryNanos = Math.min(2 * retryNanos, MAX_RETRY_NANOS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the specified time, or until the store is closed. Requests wake the thread up, so it parks
+	 * again until the deadline.
+	 */
+	private void pause(long nanos)
+	{
+		long deadline = System.nanoTime() + nanos;
+		for (long left = nanos; left > 0 && !closed; left = deadline - System.nanoTime())
+			LockSupport.parkNanos(this, left);
+	}
+
+	/**
+	 * Writes a game, locked by the caller, to its snapshot and lets it go, unless it has been used since it
+	 * was chosen.
+	 * @return {@code false} if the snapshot couldn't be written.
+	 */
+	private boolean passivate(Session victim)
+	{
+		Path temp = victim.file.resolveSibling(victim.file.getFileName() + ".tmp");
+		try
+		{
+			synchronized (resident)
+			{
+				if (resident.containsKey(victim.id))
+					return true;		// Used again in the meantime
+			}
+			if (victim.removed || victim.state == null)
+				return true;
+
+			long start = System.nanoTime();
+			try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(Files.newOutputStream(temp)))))
+			{
+				out.writeObject(victim.state);
+			}
+			Files.move(temp, victim.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			snapshotBytes.addAndGet(Files.size(victim.file));
+			victim.state = null;
+
+			long nanos = System.nanoTime() - start;
+			passivations.incrementAndGet();
+			passivationNanos.addAndGet(nanos);
+			maxPassivationNanos.accumulateAndGet(nanos, Math::max);
+			return true;
+		}
+		catch (IOException e)
+		{
+			failed.incrementAndGet();
+			requeue(victim);		// Stays in memory until the next attempt
+			try
+			{
+				Files.deleteIfExists(temp);
+			}
+			catch (IOException ignored)
+			{
+				// The disk is failing anyway: overwritten by the next attempt, if it ever succeeds
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the passivation thread and deletes the snapshots. The store can't be used afterwards.
+	 * @throws IOException if interrupted while waiting for the thread to stop.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		LockSupport.unpark(passivator);
+		try
+		{
+			passivator.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while stopping the passivation thread.");
+		}
+		for (Session session : sessions.values())
+			Files.deleteIfExists(session.file);
+	}
+
+	/**
+	 * @return the number of sessions, resident or passivated
+	 */
+	public int getSessionCount()
+	{
+		return sessions.size();
+	}
+
+	/**
+	 * @return the number of games in memory, which can briefly go past the capacity
+	 */
+	public int getResidentCount()
+	{
+		synchronized (resident)
+		{
+			return resident.size();
+		}
+	}
+
+	/**
+	 * @return the number of requests that found their game in memory
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of requests that had to reactivate their game
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return the fraction of the requests that found their game in memory, or {@code 1} if there were none
+	 */
+	public double getHitRate()
+	{
+		long found = hits.get();
+		long total = found + misses.get();
+		return total == 0 ? 1 : (double) found / total;
+	}
+
+	/**
+	 * @return the number of games passivated
+	 */
+	public long getPassivations()
+	{
+		return passivations.get();
+	}
+
+	/**
+	 * @return the average time taken to passivate a game, in nanoseconds, or {@code 0} if none was
+	 */
+	public long getMeanPassivationNanos()
+	{
+		long count = passivations.get();
+		return count == 0 ? 0 : passivationNanos.get() / count;
+	}
+
+	/**
+	 * @return the longest time taken to passivate a game, in nanoseconds
+	 */
+	public long getMaxPassivationNanos()
+	{
+		return maxPassivationNanos.get();
+	}
+
+	/**
+	 * @return the average size of the snapshots written, in bytes, or {@code 0} if none was
+	 */
+	public long getMeanSnapshotBytes()
+	{
+		long count = passivations.get();
+		return count == 0 ? 0 : snapshotBytes.get() / count;
+	}
+
+	/**
+	 * @return the average time taken to reactivate a game, in nanoseconds, or {@code 0} if none was
+	 */
+	public long getMeanActivationNanos()
+	{
+		long count = misses.get();
+		return count == 0 ? 0 : activationNanos.get() / count;
+	}
+
+	/**
+	 * @return the number of games that couldn't be passivated
+	 */
+	public long getFailedPassivations()
+	{
+		return failed.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d sessions, %d resident, hit rate %.1f%%, %d passivated (%.2f ms on average, "
+				+ "%.2f ms at most, %d bytes on average), reactivations %.2f ms on average, %d failed", getSessionCount(),
+				getResidentCount(), 100 * getHitRate(), getPassivations(), getMeanPassivationNanos() / 1e6,
+				getMaxPassivationNanos() / 1e6, getMeanSnapshotBytes(), getMeanActivationNanos() / 1e6,
+				getFailedPassivations());
+	}
+}
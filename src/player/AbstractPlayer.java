@@ -1,8 +1,13 @@
 package player;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.InputMismatchException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import events.GameEvent;
+import events.GameEventPublisher;
 import types.Coordinate;
 import types.ShotResults;
 
@@ -15,8 +20,12 @@ public abstract class AbstractPlayer
 implements Serializable
 {
 	private static final long serialVersionUID = 1L;
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
 	private Board board;
 	private String playerName;
+	private boolean verbose = true;
+	private transient GameEventPublisher events;
+	private transient int playerId = NEXT_ID.incrementAndGet();
 
 	
 	/**
@@ -32,6 +41,49 @@ implements Serializable
 	}
 
 	
+	/**
+	 * Constructs a deep copy of the specified player, which can be changed independently.
+	 * @param other the player to copy.
+	 */
+	protected AbstractPlayer(AbstractPlayer other)
+	{
+		this.board = new Board(other.board);
+		this.playerName = other.playerName;
+		this.verbose = other.verbose;
+	}
+
+	
+	/**
+	 * Constructs a player that chooses shots on behalf of another one, on the specified board.
+	 * @param shooter the player to act for.
+	 * @param board the board to choose the shots on.
+	 */
+	protected AbstractPlayer(AbstractPlayer shooter, Board board)
+	{
+		this.board = board;
+		this.playerName = shooter.playerName;
+		this.verbose = shooter.verbose;
+	}
+
+	
+	/**
+	 * Returns a deep copy of this player, in the same state. Used to take snapshots of a game
+	 * which can be saved while the game goes on.
+	 * @return the copy.
+	 */
+	public abstract AbstractPlayer copy();
+
+	
+	/**
+	 * Returns a player that chooses shots against the specified opponent on behalf of this one, as in a free-for-all
+	 * game where every shot is public: its shot grid holds the shots the opponent has received from anybody,
+	 * as they were when this method was called. Shots it records don't change this player.
+	 * @param target the board of the opponent.
+	 * @return the player to ask for shots at the opponent.
+	 */
+	public abstract AbstractPlayer aimAt(Board target);
+
+	
 	/**
 	 * @return the board
 	 */
@@ -50,6 +102,48 @@ implements Serializable
 	}
 
 	
+	/**
+	 * Returns the id of this player, unique among the players of this run: copies and deserialized players
+	 * get ids of their own. Tells apart the players of the events, whose names can be the same.
+	 * @return the id.
+	 */
+	public int getPlayerId()
+	{
+		return playerId;
+	}
+
+	
+	/**
+	 * Returns whether this player prints its messages and grids to the console.
+	 * @return {@code true} if the player is verbose, {@code false} if it plays silently.
+	 */
+	public boolean isVerbose()
+	{
+		return verbose;
+	}
+
+
+	/**
+	 * Sets whether this player prints its messages and grids to the console. Headless games
+	 * (simulations, tournaments) turn this off.
+	 * @param verbose {@code false} to play silently.
+	 */
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+
+
+	/**
+	 * Sets the publisher this player reports the results of incoming shots to.
+	 * @param events the publisher, or {@code null} not to publish anything.
+	 */
+	public void setEventPublisher(GameEventPublisher events)
+	{
+		this.events = events;
+	}
+
+
 	/**
 	 * Places the ships specified by the input array on the grid.
 	 * @param lengths an array of integers. For every value in the array, a ship with that length
@@ -58,6 +152,16 @@ implements Serializable
 	 * if it's impossible to do so).
 	 */
 	public abstract void placeShips(int[] lengths);
+	
+	/**
+	 * Places the ships of a ready-made layout on the grid, for example one taken from a {@link PlacementPool}.
+	 * @param placement the layout.
+	 * @throws IllegalArgumentException if the layout doesn't fit the board.
+	 */
+	public void placeShips(Placement placement)
+	{
+		placement.placeOn(board);
+	}
 
 	
 	/**
@@ -66,6 +170,15 @@ implements Serializable
 	public abstract Coordinate getShot();
 
 	
+	/**
+	 * Return the coordinates of a volley of shots to be fired at once, as in salvo mode, or {@code null}
+	 * if this player wants to exit the game. The coordinates are all different and haven't been shot at yet.
+	 * @param shots the number of shots of the volley. If fewer cells are left to shoot at,
+	 * the volley contains one shot per cell left.
+	 */
+	public abstract Coordinate[] getVolley(int shots);
+
+	
 	/**
 	 * Returns the result of an incoming shot and keeps track of the result of that shot.
 	 * Displays the result message.
@@ -79,13 +192,43 @@ implements Serializable
 		if (result == null)					//It's a new hit
 			result = board.fireShotAt(c);
 		
-		if (result != null)
+		if (result != null && verbose)
 			System.out.println(result.getMsg());
 		
+		if (result != null && events != null && events.hasSubscribers())
+			events.publish(GameEvent.result(events.getTurn(), playerName, playerId, c, result));
+		
 		return result;
 	}
 	
 
+	/**
+	 * Returns the results of an incoming volley and keeps track of them.
+	 * Displays all the result messages on a single line.
+	 * 
+	 * @param shots the coordinates fired to.
+	 * @return the results, in the order of the shots.
+	 */
+	public ShotResults[] checkFiredVolley(Coordinate[] shots)
+	{
+		ShotResults[] results = board.fireVolley(shots);
+		
+		if (verbose)
+		{
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < shots.length; i++)
+				line.append((char)('A' + shots[i].getX())).append(shots[i].getY()).append(": ").append(results[i].getMsg()).append(' ');
+			System.out.println(line.toString().trim());
+		}
+		
+		if (events != null && events.hasSubscribers())
+			for (int i = 0; i < shots.length; i++)
+				events.publish(GameEvent.result(events.getTurn(), playerName, playerId, shots[i], results[i]));
+		
+		return results;
+	}
+	
+
 	/**
 	 * Records the result of a shot at the specified coordinate.
 	 * @param c coordinate that was shot at.
@@ -95,11 +238,61 @@ implements Serializable
 	public void recordShot(Coordinate c, ShotResults result)
 	{
 		board.setResultsAt(c, result);
-		System.out.println();
-		board.displayShotGrid();
+		if (verbose)
+		{
+			System.out.println();
+			board.displayShotGrid();
+		}
+	}
+
+	
+	
+	/**
+	 * Records the results of a volley, then displays the shot grid once.
+	 * @param shots the coordinates that were shot at.
+	 * @param results the results, in the order of the shots.
+	 */
+	public void recordVolley(Coordinate[] shots, ShotResults[] results)
+	{
+		board.setResultsAt(shots, results);
+		if (verbose)
+		{
+			System.out.println();
+			board.displayShotGrid();
+		}
+	}
+
+	
+	/**
+	 * Returns the number of cells of the shot grid that haven't been shot at yet.
+	 * @return the number of cells left.
+	 */
+	protected int countUnknownCells()
+	{
+		int size = board.getGridSize();
+		int count = 0;
+		Coordinate pos = new Coordinate();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				pos.set(x, y);
+				if (board.getResultAt(pos) == null)
+					count++;
+			}
+		return count;
 	}
 
 	
+	/**
+	 * Returns the number of shots this player has fired so far.
+	 * @return the number of cells of the shot grid that have been shot at.
+	 */
+	public int getShotsFired()
+	{
+		int size = board.getGridSize();
+		return size * size - countUnknownCells();
+	}
+
 	
 	/**
 	 * Returns whether this player was defeated.
@@ -119,4 +312,16 @@ implements Serializable
 		board.displayShotGrid();
 	}
 
-}
\ No newline at end of file
+	
+	/**
+	 * Gives a deserialized player an id of its own. Players saved before they could play silently are verbose.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		board = (Board) fields.get("board", null);
+		playerName = (String) fields.get("playerName", null);
+		verbose = fields.get("verbose", true);
+		playerId = NEXT_ID.incrementAndGet();
+	}
+}
@@ -1,27 +1,54 @@
 package player;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
+import main.Game;
 import types.Coordinate;
 import types.Directions;
 import types.Ship;
 import types.ShotResults;
 
 /**
- * A single player's board to play the game on
+ * A single player's board to play the game on.
+ * <p>
+ * A board is normally only used by the game thread. In thread-safe mode, every change takes a
+ * {@link StampedLock}, so that other threads (autosave, metrics, spectators...) can take consistent
+ * {@link #snapshot() snapshots} of the board with optimistic, lock-free reads while the game goes on.
  * @author Alessandro
  * @version 1.0
  */
 public class Board
-implements Serializable
+implements BoardView, Serializable
 {
 	private static final long serialVersionUID = 1L;
+	private static final int OPTIMISTIC_ATTEMPTS = 4;
 	
 	private int gridSize;
 	private Ship[][] shipGrid;
 	private ShotResults[][]	shotGrid;
 	private ShotResults[][]	receivedShotGrid;
 	private int	shipCount;
+	private int	shipsAfloat;
+	private List<Ship> ships = new ArrayList<>();	// Every ship placed, in the order they were placed
+	private int[] fleetByLength = new int[1];		// Ships placed, by length
+	private int[] afloatByLength = new int[1];		// Ships not sunk yet, by length
+	private Ship lastSunk;
+	private boolean threadSafe;
+	private transient StampedLock lock;
+	private transient GridTables tables;
+	private transient long[] packedByX;		// The shot grid two bits per cell, built on first use
+	private transient long[] packedByY;
+	private transient int[] sunkByLength;	// Enemy ships sunk in the shot grid, by length, counted on first use
 	
 	/**
 	 * Constructs a board with grids of the specified size.
@@ -35,6 +62,77 @@ implements Serializable
 		receivedShotGrid = new ShotResults[gridSize][gridSize];
 	}
 	
+	/**
+	 * Constructs a deep copy of the specified board. Cells belonging to the same ship on the
+	 * original board belong to the same ship on the copy.
+	 * @param other the board to copy.
+	 */
+	public Board(Board other)
+	{
+		gridSize = other.gridSize;
+		shipGrid = new Ship[gridSize][];
+		shotGrid = new ShotResults[gridSize][];
+		receivedShotGrid = new ShotResults[gridSize][];
+		setThreadSafe(other.threadSafe);
+		
+		Map<Ship, Ship> copies = new IdentityHashMap<>();
+		for (int x = 0; x < gridSize; x++)
+		{
+			shipGrid[x] = other.shipGrid[x].clone();
+			for (int y = 0; y < gridSize; y++)
+				if (shipGrid[x][y] != null)
+					shipGrid[x][y] = copies.computeIfAbsent(shipGrid[x][y], Ship::new);
+			shotGrid[x] = other.shotGrid[x].clone();
+			receivedShotGrid[x] = other.receivedShotGrid[x].clone();
+		}
+		shipCount = other.shipCount;
+		shipsAfloat = other.shipsAfloat;
+		for (Ship ship : other.ships)
+			ships.add(copies.get(ship));
+		fleetByLength = other.fleetByLength.clone();
+		afloatByLength = other.afloatByLength.clone();
+		lastSunk = copies.get(other.lastSunk);
+		if (other.sunkByLength != null)
+			sunkByLength = other.sunkByLength.clone();
+		tables = other.tables;
+		if (other.packedByX != null)
+		{
+			packedByX = other.packedByX.clone();
+			packedByY = other.packedByY.clone();
+		}
+	}
+	
+	/**
+	 * Constructs a board with grids of the specified size, optionally in thread-safe mode.
+	 * @param gridSize the size of the grids.
+	 * @param threadSafe {@code true} if other threads will take snapshots of this board.
+	 */
+	public Board(int gridSize, boolean threadSafe)
+	{
+		this(gridSize);
+		setThreadSafe(threadSafe);
+	}
+	
+	/**
+	 * Sets whether this board can be read from other threads with {@link #snapshot()} while it's being
+	 * changed. Must be set before the board is shared with those threads.
+	 * @param threadSafe {@code true} to make changes take a lock.
+	 */
+	public void setThreadSafe(boolean threadSafe)
+	{
+		this.threadSafe = threadSafe;
+		lock = threadSafe ? new StampedLock() : null;
+	}
+	
+	/**
+	 * Returns whether this board is in thread-safe mode.
+	 * @return {@code true} if other threads can take snapshots of this board.
+	 */
+	public boolean isThreadSafe()
+	{
+		return threadSafe;
+	}
+	
 	/**
 	 * Returns whether there is a ship at the specified coordinate.
 	 * @param c the coordinate to check.
@@ -62,21 +160,70 @@ implements Serializable
 	 * if it didn't and {@code ShotResults.SINK} if it sinked the ship it hit.
 	 */
 	public ShotResults fireShotAt(Coordinate c)
+	{
+		long stamp = beginWrite();
+		try
+		{
+			return shoot(c);
+		}
+		finally
+		{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Fires a shot without taking the lock.
+	 */
+	private ShotResults shoot(Coordinate c)
 	{
 		ShotResults result;
 		if (isShipAt(c)) 
 		{
 			shipCount--;
-			result = shipGrid[c.getX()][c.getY()].shoot() ? ShotResults.SINK : ShotResults.HIT;
+			Ship ship = shipGrid[c.getX()][c.getY()];
+			result = ship.shoot() ? ShotResults.SINK : ShotResults.HIT;
+			if (result == ShotResults.SINK)
+			{
+				shipsAfloat--;
+				afloatByLength[ship.getLength()]--;
+				lastSunk = ship;
+			}
 		}
 		else
 			result = ShotResults.MISS;
 		
-		setReceivedAt(c, result);
+		receivedShotGrid[c.getX()][c.getY()] = result;
 
 		return result;
 	}
 	
+	/**
+	 * Fires a volley of shots at once, as in salvo mode. Cells already shot at, including by earlier shots
+	 * of the same volley, are not fired at again and report the result they had.
+	 * @param shots the coordinates to fire at.
+	 * @return the results, in the order of the shots.
+	 */
+	public ShotResults[] fireVolley(Coordinate[] shots)
+	{
+		ShotResults[] results = new ShotResults[shots.length];
+		long stamp = beginWrite();
+		try
+		{
+			for (int i = 0; i < shots.length; i++)
+			{
+				results[i] = getReceivedAt(shots[i]);
+				if (results[i] == null)
+					results[i] = shoot(shots[i]);
+			}
+		}
+		finally
+		{
+			endWrite(stamp);
+		}
+		return results;
+	}
+	
 	/**
 	 * Returns the result of the shot at the specified coordinate, or {@code null} if no such
 	 * shot has been taken.
@@ -95,7 +242,96 @@ implements Serializable
 	 */
 	public void setResultsAt(Coordinate c, ShotResults result)
 	{
-		shotGrid[c.getX()][c.getY()] = result;
+		long stamp = beginWrite();
+		try
+		{
+			boolean sunk = shotGrid[c.getX()][c.getY()] != ShotResults.SINK && result == ShotResults.SINK;
+			shotGrid[c.getX()][c.getY()] = result;
+			pack(c.getX(), c.getY(), result);
+			if (sunk && sunkByLength != null)
+				countSunk(c.getX(), c.getY());
+		}
+		finally
+		{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Records the results of a volley in the result grid.
+	 * @param shots the coordinates that were shot at.
+	 * @param results the results, in the order of the shots.
+	 */
+	public void setResultsAt(Coordinate[] shots, ShotResults[] results)
+	{
+		long stamp = beginWrite();
+		try
+		{
+			boolean[] sunk = new boolean[shots.length];		// Sinks not recorded before, counted once even if repeated
+			for (int i = 0; i < shots.length; i++)
+			{
+				sunk[i] = shotGrid[shots[i].getX()][shots[i].getY()] != ShotResults.SINK && results[i] == ShotResults.SINK;
+				shotGrid[shots[i].getX()][shots[i].getY()] = results[i];
+				pack(shots[i].getX(), shots[i].getY(), results[i]);
+			}
+			// Counted once the whole volley is recorded, since later shots can hit the rest of a ship sunk by an earlier one
+			for (int i = 0; i < shots.length; i++)
+				if (sunk[i] && sunkByLength != null)
+					countSunk(shots[i].getX(), shots[i].getY());
+		}
+		finally
+		{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Updates a cell of the packed shot grid, if it has been built.
+	 */
+	private void pack(int x, int y, ShotResults result)
+	{
+		if (packedByX == null)
+			return;
+		long code = result == null ? 0 : result.ordinal() + 1;
+		packedByX[x] = (packedByX[x] & ~(3L << (2 * y))) | (code << (2 * y));
+		packedByY[y] = (packedByY[y] & ~(3L << (2 * x))) | (code << (2 * x));
+	}
+	
+	/**
+	 * Returns the shot grid in canonical orientation, so that grids which are rotations or reflections
+	 * of each other can share entries in caches. The packed grid this is computed from is kept up to date
+	 * by every shot after the first call, making further calls cheap.
+	 * @return the canonical shot grid.
+	 * @throws IllegalStateException if the grid is larger than {@link CanonicalGrid#MAX_SIZE}.
+	 */
+	public CanonicalGrid canonicalShotGrid()
+	{
+		if (gridSize > CanonicalGrid.MAX_SIZE)
+			throw new IllegalStateException("The grid is too large to be canonicalised.");
+		if (packedByX == null)
+		{
+			packedByX = new long[gridSize];
+			packedByY = new long[gridSize];
+			for (int x = 0; x < gridSize; x++)
+				for (int y = 0; y < gridSize; y++)
+					pack(x, y, shotGrid[x][y]);
+		}
+		return new CanonicalGrid(gridSize, packedByX, packedByY);
+	}
+	
+	/**
+	 * Returns a new board whose shot grid holds the shots received by this one, which is what anybody
+	 * shooting at this board knows about it. The view has no ships and doesn't follow later shots:
+	 * it only copies a single grid, and none of the ships a copy of the whole board would.
+	 * @return the view.
+	 */
+	public Board receivedView()
+	{
+		Board view = new Board(gridSize);
+		for (int x = 0; x < gridSize; x++)
+			System.arraycopy(receivedShotGrid[x], 0, view.shotGrid[x], 0, gridSize);
+		view.tables = tables;
+		return view;
 	}
 	
 	/**
@@ -116,7 +352,9 @@ implements Serializable
 	 */
 	public void setReceivedAt(Coordinate c, ShotResults result)
 	{
+		long stamp = beginWrite();
 		receivedShotGrid[c.getX()][c.getY()] = result;
+		endWrite(stamp);
 	}
 	
 	/**
@@ -128,6 +366,172 @@ implements Serializable
 		return shipCount;
 	}
 	
+	/**
+	 * Returns the number of ships on this board that haven't been sunk yet.
+	 * @return the number of surviving ships.
+	 */
+	public int getShipsAfloat()
+	{
+		return shipsAfloat;
+	}
+	
+	/**
+	 * Returns the lengths of all the ships placed on this board, sunk or not, from the longest to the shortest.
+	 * @return the lengths of the fleet.
+	 */
+	public int[] getShipLengths()
+	{
+		return lengthsOf(fleetByLength);
+	}
+	
+	/**
+	 * Returns the lengths of the ships on this board that haven't been sunk yet, from the longest to the shortest.
+	 * @return the lengths of the surviving ships.
+	 */
+	public int[] getRemainingLengths()
+	{
+		return lengthsOf(afloatByLength);
+	}
+	
+	/**
+	 * Lists the lengths counted by a table of ships by length, from the longest.
+	 */
+	private int[] lengthsOf(int[] countByLength)
+	{
+		int count = 0;
+		for (int ships : countByLength)
+			count += ships;
+		int[] lengths = new int[count];
+		int i = 0;
+		for (int length = countByLength.length - 1; length > 0; length--)
+			for (int k = 0; k < countByLength[length]; k++)
+				lengths[i++] = length;
+		return lengths;
+	}
+	
+	/**
+	 * Returns the ships placed on this board, in the order they were placed. The list can't be changed,
+	 * while the ships show their damage as the game goes on.
+	 * @return the ships.
+	 */
+	public List<Ship> getShips()
+	{
+		return Collections.unmodifiableList(ships);
+	}
+	
+	/**
+	 * Returns the number of ships of the specified length placed on this board.
+	 * @param length the length of the ships.
+	 * @return the number of ships, sunk or not.
+	 */
+	public int getFleetCount(int length)
+	{
+		return length > 0 && length < fleetByLength.length ? fleetByLength[length] : 0;
+	}
+	
+	/**
+	 * Returns the number of ships of the specified length on this board that haven't been sunk yet.
+	 * @param length the length of the ships.
+	 * @return the number of surviving ships.
+	 */
+	public int getAfloatCount(int length)
+	{
+		return length > 0 && length < afloatByLength.length ? afloatByLength[length] : 0;
+	}
+	
+	/**
+	 * Returns the ship on this board that was sunk last, whose cells are the ones around which no
+	 * other ship can be.
+	 * @return the ship, or {@code null} if no ship has been sunk yet.
+	 */
+	public Ship getLastSunk()
+	{
+		return lastSunk;
+	}
+	
+	/**
+	 * Returns the number of enemy ships of the specified length the owner of this board has sunk, as told by
+	 * the shot grid: since ships can't touch each other, the hits next to a sink belong to the same ship.
+	 * The ships are counted the first time this is called, and kept up to date by every shot after that.
+	 * @param length the length of the ships.
+	 * @return the number of ships sunk.
+	 */
+	public int getSunkCount(int length)
+	{
+		if (sunkByLength == null)
+		{
+			sunkByLength = new int[1];
+			for (int x = 0; x < gridSize; x++)
+				for (int y = 0; y < gridSize; y++)
+					if (shotGrid[x][y] == ShotResults.SINK)
+						countSunk(x, y);
+		}
+		return length > 0 && length < sunkByLength.length ? sunkByLength[length] : 0;
+	}
+	
+	/**
+	 * Counts the enemy ship sunk at the specified cell of the shot grid, measuring it from the hits around the sink.
+	 */
+	private void countSunk(int x, int y)
+	{
+		int length = 1;
+		boolean horizontal = (x > 0 && isHit(shotGrid[x - 1][y])) || (x + 1 < gridSize && isHit(shotGrid[x + 1][y]));
+		int dx = horizontal ? 1 : 0;
+		int dy = 1 - dx;
+		for (int i = 1; !isOutside(x - i * dx, y - i * dy) && isHit(shotGrid[x - i * dx][y - i * dy]); i++)
+			length++;
+		for (int i = 1; !isOutside(x + i * dx, y + i * dy) && isHit(shotGrid[x + i * dx][y + i * dy]); i++)
+			length++;
+		
+		if (length >= sunkByLength.length)
+			sunkByLength = Arrays.copyOf(sunkByLength, length + 1);
+		sunkByLength[length]++;
+	}
+	
+	private static boolean isHit(ShotResults result)
+	{
+		return result == ShotResults.HIT || result == ShotResults.SINK;
+	}
+	
+	/**
+	 * Removes every ship and every shot from this board, so that it can be reused for a new game.
+	 */
+	public void clear()
+	{
+		long stamp = beginWrite();
+		for (int x = 0; x < gridSize; x++)
+		{
+			Arrays.fill(shipGrid[x], null);
+			Arrays.fill(shotGrid[x], null);
+			Arrays.fill(receivedShotGrid[x], null);
+		}
+		if (packedByX != null)
+		{
+			Arrays.fill(packedByX, 0);
+			Arrays.fill(packedByY, 0);
+		}
+		if (sunkByLength != null)
+			Arrays.fill(sunkByLength, 0);
+		shipCount = 0;
+		shipsAfloat = 0;
+		ships.clear();
+		Arrays.fill(fleetByLength, 0);
+		Arrays.fill(afloatByLength, 0);
+		lastSunk = null;
+		endWrite(stamp);
+	}
+	
+	/**
+	 * Returns the grid tables covering ships of the specified length, moving on to bigger tables
+	 * the first time a longer ship is placed.
+	 */
+	private GridTables tables(int length)
+	{
+		if (tables == null || tables.getMaxShipLength() < length)
+			tables = GridTables.of(gridSize, Math.max(length, Game.MAX_SHIP_LENGTH));
+		return tables;
+	}
+	
 	public boolean isOutside(int x, int y)
 	{
 		return (x < 0 || y < 0 || x >= gridSize || y >= gridSize);
@@ -144,6 +548,9 @@ implements Serializable
 	 */
 	public boolean placeShip(Coordinate c, Directions dir, int length)
 	{
+		if (length < 1)
+			return false;
+		
 		// First end of the ship
 		int x1 = c.getX();
 		int y1 = c.getY();
@@ -160,36 +567,149 @@ implements Serializable
 		int tlX = Math.min(x1, x2);
 		int tlY = Math.min(y1, y2);
 		
-		// Bottom right cell of the ship
-		int brX = Math.max(x1, x2);
-		int brY = Math.max(y1, y2);
+		// The cells of the ship and the ones around it, considering OOB as empty cells.
+		// If there is a ship in any of them, return false
+		GridTables tables = tables(length);
+		int window = tables.window(tlX, tlY, dir.getY() == 0, length);
+		for (int cell : tables.windowCells(window))
+			if (shipGrid[tables.cellX(cell)][tables.cellY(cell)] != null) return false;
+		for (int cell : tables.windowHalo(window))
+			if (shipGrid[tables.cellX(cell)][tables.cellY(cell)] != null) return false;
 		
-		// Top left cell of the bounding box of the ship
-		int boundTLX = tlX - 1;
-		int boundTLY = tlY - 1;
+		Ship ship = new Ship(length, tlX, tlY, dir.getY() == 0);
 		
-		// Bottom right cell of the bounding box of the ship
-		int boundBRX = brX + 1;
-		int boundBRY = brY + 1;
+		long stamp = beginWrite();
+		for (int cell : tables.windowCells(window))
+			shipGrid[tables.cellX(cell)][tables.cellY(cell)] = ship;		// Set those cells to all be the same ship
+
+		shipCount += length;
+		shipsAfloat++;
+		register(ship);
+		endWrite(stamp);
 		
-		for (int i = boundTLX; i <= boundBRX; i++)		// From the left edge to the right one
+		return true;	
+	}
+	
+	/**
+	 * Adds a ship to the registry of the ships on this board.
+	 */
+	private void register(Ship ship)
+	{
+		int length = ship.getLength();
+		if (length >= fleetByLength.length)
 		{
-			for (int j = boundTLY; j <= boundBRY; j++) 	// From the top edge to the bottom one
+			fleetByLength = Arrays.copyOf(fleetByLength, length + 1);
+			afloatByLength = Arrays.copyOf(afloatByLength, length + 1);
+		}
+		ships.add(ship);
+		fleetByLength[length]++;
+		if (!ship.isSunk())
+			afloatByLength[length]++;
+	}
+	
+	/**
+	 * Takes an immutable copy of this board. In thread-safe mode this can be called from any thread:
+	 * the copy is first attempted without locking, and only takes the read lock if the board keeps
+	 * changing while it's being copied.
+	 * @return the snapshot.
+	 */
+	public BoardSnapshot snapshot()
+	{
+		StampedLock l = lock;
+		if (l == null)
+			return copy();
+		
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++)
+		{
+			long stamp = l.tryOptimisticRead();
+			if (stamp != 0)
 			{
-				// Considering OOB as empty cells. If there is a ship in the current cell, return false
-				if (!isOutside(i, j) && shipGrid[i][j] != null) return false;
+				BoardSnapshot snapshot = copy();
+				if (l.validate(stamp))
+					return snapshot;
 			}
+			Thread.onSpinWait();
 		}
 		
-		Ship ship = new Ship(length);
-		
-		for (int i = tlX; i <= brX; i++)		// From one end of the ship to the other, horizontally
-			for (int j = tlY; j <= brY; j++)	// From one end of the ship to the other, vertically
-				shipGrid[i][j] = ship;		// Set those cells to all be the same ship
-
-		shipCount += length;
-		
-		return true;	
+		long stamp = l.readLock();
+		try
+		{
+			return copy();
+		}
+		finally
+		{
+			l.unlockRead(stamp);
+		}
+	}
+	
+	private BoardSnapshot copy()
+	{
+		boolean[][] ships = new boolean[gridSize][gridSize];
+		ShotResults[][] shots = new ShotResults[gridSize][];
+		ShotResults[][] received = new ShotResults[gridSize][];
+		for (int x = 0; x < gridSize; x++)
+		{
+			for (int y = 0; y < gridSize; y++)
+				ships[x][y] = shipGrid[x][y] != null;
+			shots[x] = shotGrid[x].clone();
+			received[x] = receivedShotGrid[x].clone();
+		}
+		return new BoardSnapshot(gridSize, ships, shots, received, shipCount, shipsAfloat);
+	}
+	
+	private long beginWrite()
+	{
+		StampedLock l = lock;
+		return l == null ? 0 : l.writeLock();
+	}
+	
+	private void endWrite(long stamp)
+	{
+		StampedLock l = lock;
+		if (l != null)
+			l.unlockWrite(stamp);
+	}
+	
+	/**
+	 * Recreates the lock of thread-safe boards, and restores the count of surviving ships and the registry
+	 * of the ships of boards saved before they were tracked.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		setThreadSafe(threadSafe);
+		if (shipsAfloat == 0 && shipCount > 0)
+		{
+			Set<Ship> afloat = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (Ship[] column : shipGrid)
+				for (Ship ship : column)
+					if (ship != null && !ship.isSunk())
+						afloat.add(ship);
+			shipsAfloat = afloat.size();
+		}
+		if (ships == null)
+		{
+			// The first cell met of every ship is its top left one. The ships didn't know their position, so
+			// they are replaced by copies which do
+			ships = new ArrayList<>();
+			fleetByLength = new int[1];
+			afloatByLength = new int[1];
+			Map<Ship, Ship> located = new IdentityHashMap<>();
+			for (int x = 0; x < gridSize; x++)
+				for (int y = 0; y < gridSize; y++)
+				{
+					Ship ship = shipGrid[x][y];
+					if (ship == null)
+						continue;
+					if (!located.containsKey(ship))
+					{
+						boolean horizontal = x + 1 < gridSize && shipGrid[x + 1][y] == ship;
+						located.put(ship, new Ship(ship, x, y, horizontal));
+						register(located.get(ship));
+					}
+					shipGrid[x][y] = located.get(ship);
+				}
+		}
 	}
 	
 	/**
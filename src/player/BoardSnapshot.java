@@ -0,0 +1,86 @@
+package player;
+
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * An immutable copy of a {@link Board}, taken with {@link Board#snapshot()}. It can be read from
+ * any thread, and never changes as the game goes on.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public final class BoardSnapshot
+implements BoardView
+{
+	private final int gridSize;
+	private final boolean[][] ships;
+	private final ShotResults[][] shotGrid;
+	private final ShotResults[][] receivedShotGrid;
+	private final int shipCount;
+	private final int shipsAfloat;
+
+	BoardSnapshot(int gridSize, boolean[][] ships, ShotResults[][] shotGrid, ShotResults[][] receivedShotGrid,
+			int shipCount, int shipsAfloat)
+	{
+		this.gridSize = gridSize;
+		this.ships = ships;
+		this.shotGrid = shotGrid;
+		this.receivedShotGrid = receivedShotGrid;
+		this.shipCount = shipCount;
+		this.shipsAfloat = shipsAfloat;
+	}
+
+	/**
+	 * @return the size of the grids
+	 */
+	public int getGridSize()
+	{
+		return gridSize;
+	}
+
+	/**
+	 * Returns whether there was a ship at the specified coordinate.
+	 * @param c the coordinate to check.
+	 * @return {@code true} if there was a ship, {@code false} otherwise.
+	 */
+	public boolean isShipAt(Coordinate c)
+	{
+		return ships[c.getX()][c.getY()];
+	}
+
+	/**
+	 * Returns the result of the shot fired by the board's owner at the specified coordinate.
+	 * @param c the coordinate.
+	 * @return the result of the shot, or {@code null} if no such shot had been taken.
+	 */
+	public ShotResults getResultAt(Coordinate c)
+	{
+		return shotGrid[c.getX()][c.getY()];
+	}
+
+	/**
+	 * Returns the result of the shot received at the specified coordinate.
+	 * @param c the coordinate.
+	 * @return the result of the shot, or {@code null} if no such shot had been taken.
+	 */
+	public ShotResults getReceivedAt(Coordinate c)
+	{
+		return receivedShotGrid[c.getX()][c.getY()];
+	}
+
+	/**
+	 * @return the amount of tiles occupied by ships that weren't hit yet
+	 */
+	public int getShipCount()
+	{
+		return shipCount;
+	}
+
+	/**
+	 * @return the number of ships that weren't sunk yet
+	 */
+	public int getShipsAfloat()
+	{
+		return shipsAfloat;
+	}
+}
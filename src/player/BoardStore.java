@@ -0,0 +1,513 @@
+package player;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import types.Coordinate;
+import types.Directions;
+import types.Ship;
+import types.ShotResults;
+
+/**
+ * Off-heap storage for large numbers of boards of the same size, for servers keeping millions of mostly idle
+ * games resident. A {@link Board} costs three grids of references, an object per ship and a few more for its
+ * registry; a board in the store costs a fixed number of bytes outside the heap, which the garbage collector
+ * never scans, and nothing at all inside it.
+ * <p>
+ * Boards are stored in segments of {@value #SEGMENT_BOARDS} boards, each a single direct buffer laid out as a
+ * structure of arrays: the ship at every cell of every board, then the two shot grids of every board at two bits
+ * per cell, then every field of the ships, one array per field, then the fields of the boards. Boards are known by
+ * an {@code int} handle. They are read in place through {@link View}s, which hold nothing but the handle and can be
+ * given to any code reading a {@link BoardView}, or turned back into a {@code Board} with {@link #load(int)} when a game becomes active again.
+ * <p>
+ * Handles are allocated and freed under a lock, so any thread can store boards; a stored board, like a
+ * {@code Board}, must be written by one thread at a time.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class BoardStore
+{
+	/** The number of boards in every segment. */
+	public static final int SEGMENT_BOARDS = 4096;
+
+	private static final int SHIFT = 12;						// log2(SEGMENT_BOARDS)
+	private static final byte IN_USE = 1;
+	private static final byte THREAD_SAFE = 2;
+	private static final ShotResults[] RESULTS = {null, ShotResults.MISS, ShotResults.HIT, ShotResults.SINK};
+
+	private final int gridSize;
+	private final int cells;
+	private final int packed;			// Bytes of a shot grid at two bits per cell
+	private final int maxShips;
+
+	// Offsets of the arrays in a segment
+	private final int shipAtOffset;
+	private final int shotsOffset;
+	private final int receivedOffset;
+	private final int shipXOffset;
+	private final int shipYOffset;
+	private final int shipLengthOffset;
+	private final int shipHitsOffset;
+	private final int shipHorizontalOffset;
+	private final int shipNumberOffset;
+	private final int lastSunkOffset;
+	private final int flagsOffset;
+	private final int segmentBytes;
+
+	private volatile ByteBuffer[] segments = new ByteBuffer[0];
+	private int[] freeHandles = new int[16];	// Guarded by this
+	private int freeCount;
+	private int nextHandle;
+	private int size;
+
+	/**
+	 * Constructs an empty store.
+	 * @param gridSize the size of the boards stored, up to 255.
+	 * @param maxShips the largest number of ships on a board, up to 254.
+	 * @throws IllegalArgumentException if the grid size or the number of ships is too large.
+	 */
+	public BoardStore(int gridSize, int maxShips)
+	{
+		if (gridSize < 1 || gridSize > 255)
+			throw new IllegalArgumentException("Boards of size " + gridSize + " can't be stored.");
+		if (maxShips < 1 || maxShips > 254)
+			throw new IllegalArgumentException("Boards with " + maxShips + " ships can't be stored.");
+		this.gridSize = gridSize;
+		this.maxShips = maxShips;
+		cells = gridSize * gridSize;
+		packed = (cells + 3) / 4;
+
+		int offset = 0;
+		shipAtOffset = offset;
+		offset += SEGMENT_BOARDS * cells;
+		shotsOffset = offset;
+		offset += SEGMENT_BOARDS * packed;
+		receivedOffset = offset;
+		offset += SEGMENT_BOARDS * packed;
+		shipXOffset = offset;
+		offset += SEGMENT_BOARDS * maxShips;
+		shipYOffset = offset;
+		offset += SEGMENT_BOARDS * maxShips;
+		shipLengthOffset = offset;
+		offset += SEGMENT_BOARDS * maxShips;
+		shipHitsOffset = offset;
+		offset += SEGMENT_BOARDS * maxShips;
+		shipHorizontalOffset = offset;
+		offset += SEGMENT_BOARDS * maxShips;
+		shipNumberOffset = offset;
+		offset += SEGMENT_BOARDS;
+		lastSunkOffset = offset;
+		offset += SEGMENT_BOARDS;
+		flagsOffset = offset;
+		offset += SEGMENT_BOARDS;
+		segmentBytes = offset;
+	}
+
+	/**
+	 * @return the size of the boards stored
+	 */
+	public int getGridSize()
+	{
+		return gridSize;
+	}
+
+	/**
+	 * @return the number of bytes every board takes, outside the heap
+	 */
+	public int getBytesPerBoard()
+	{
+		return segmentBytes / SEGMENT_BOARDS;
+	}
+
+	/**
+	 * @return the number of bytes allocated outside the heap
+	 */
+	public long getOffHeapBytes()
+	{
+		return (long) segments.length * segmentBytes;
+	}
+
+	/**
+	 * @return the number of boards stored
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Stores a copy of the specified board.
+	 * @param board the board.
+	 * @return the handle of the stored board.
+	 * @throws IllegalArgumentException if the board doesn't fit in this store.
+	 */
+	public int store(Board board)
+	{
+		check(board);
+		int handle = allocate();
+		write(handle, board);
+		return handle;
+	}
+
+	/**
+	 * Replaces a stored board with a copy of the specified one, as when a game that was loaded is put away again.
+	 * @param handle the handle of the stored board.
+	 * @param board the board.
+	 * @throws IllegalArgumentException if the board doesn't fit in this store.
+	 */
+	public void write(int handle, Board board)
+	{
+		check(board);
+		ByteBuffer segment = segment(handle);
+		int index = handle & (SEGMENT_BOARDS - 1);
+		Coordinate pos = new Coordinate();
+
+		int cellBase = shipAtOffset + index * cells;
+		for (int i = 0; i < cells; i++)
+			segment.put(cellBase + i, (byte) 0);
+		int shotsBase = shotsOffset + index * packed;
+		int receivedBase = receivedOffset + index * packed;
+		for (int i = 0; i < packed; i++)
+		{
+			int shots = 0;
+			int received = 0;
+			for (int k = 0; k < 4 && 4 * i + k < cells; k++)
+			{
+				pos.set((4 * i + k) / gridSize, (4 * i + k) % gridSize);
+				shots |= code(board.getResultAt(pos)) << (2 * k);
+				received |= code(board.getReceivedAt(pos)) << (2 * k);
+			}
+			segment.put(shotsBase + i, (byte) shots);
+			segment.put(receivedBase + i, (byte) received);
+		}
+
+		List<Ship> ships = board.getShips();
+		int shipBase = index * maxShips;
+		int lastSunk = 0;
+		for (int s = 0; s < ships.size(); s++)
+		{
+			Ship ship = ships.get(s);
+			int hits = 0;
+			for (int k = 0; k < ship.getLength(); k++)
+			{
+				int x = ship.getX() + (ship.isHorizontal() ? k : 0);
+				int y = ship.getY() + (ship.isHorizontal() ? 0 : k);
+				segment.put(cellBase + x * gridSize + y, (byte) (s + 1));
+				pos.set(x, y);
+				if (board.getReceivedAt(pos) != null)
+					hits++;
+			}
+			segment.put(shipXOffset + shipBase + s, (byte) ship.getX());
+			segment.put(shipYOffset + shipBase + s, (byte) ship.getY());
+			segment.put(shipLengthOffset + shipBase + s, (byte) ship.getLength());
+			segment.put(shipHitsOffset + shipBase + s, (byte) hits);
+			segment.put(shipHorizontalOffset + shipBase + s, (byte) (ship.isHorizontal() ? 1 : 0));
+			if (ship == board.getLastSunk())
+				lastSunk = s + 1;
+		}
+		segment.put(shipNumberOffset + index, (byte) ships.size());
+		segment.put(lastSunkOffset + index, (byte) lastSunk);
+		segment.put(flagsOffset + index, (byte) (IN_USE | (board.isThreadSafe() ? THREAD_SAFE : 0)));
+	}
+
+	/**
+	 * Rebuilds a stored board on the heap, in the same state it was stored in. The stored board is left
+	 * as it is: {@link #write(int, Board)} puts the board back once it has changed.
+	 * @param handle the handle of the stored board.
+	 * @return the board.
+	 */
+	public Board load(int handle)
+	{
+		ByteBuffer segment = segment(handle);
+		int index = handle & (SEGMENT_BOARDS - 1);
+		Board board = new Board(gridSize);
+
+		int shipBase = index * maxShips;
+		int shipNumber = segment.get(shipNumberOffset + index) & 0xFF;
+		Coordinate pos = new Coordinate();
+		for (int s = 0; s < shipNumber; s++)
+		{
+			pos.set(segment.get(shipXOffset + shipBase + s) & 0xFF, segment.get(shipYOffset + shipBase + s) & 0xFF);
+			boolean horizontal = segment.get(shipHorizontalOffset + shipBase + s) != 0;
+			board.placeShip(pos, horizontal ? Directions.RIGHT : Directions.DOWN, segment.get(shipLengthOffset + shipBase + s) & 0xFF);
+		}
+
+		// The shots received are fired again to sink the ships, the last one sunk last, then their results are put back
+		int lastSunk = segment.get(lastSunkOffset + index);
+		int cellBase = shipAtOffset + index * cells;
+		for (int pass = 0; pass < 2; pass++)
+			for (int cell = 0; cell < cells; cell++)
+			{
+				ShotResults received = result(segment, receivedOffset + index * packed, cell);
+				if (received == null || (segment.get(cellBase + cell) == lastSunk && lastSunk != 0) != (pass == 1))
+					continue;
+				pos.set(cell / gridSize, cell % gridSize);
+				if (board.fireShotAt(pos) != received)
+					board.setReceivedAt(pos, received);
+			}
+
+		for (int cell = 0; cell < cells; cell++)
+		{
+			ShotResults result = result(segment, shotsOffset + index * packed, cell);
+			if (result != null)
+			{
+				pos.set(cell / gridSize, cell % gridSize);
+				board.setResultsAt(pos, result);
+			}
+		}
+		board.setThreadSafe((segment.get(flagsOffset + index) & THREAD_SAFE) != 0);
+		return board;
+	}
+
+	/**
+	 * Returns a view reading the specified board in place.
+	 * @param handle the handle of the stored board.
+	 * @return the view.
+	 */
+	public View view(int handle)
+	{
+		segment(handle);
+		return new View(handle);
+	}
+
+	/**
+	 * Removes a board from the store. Its handle may be given to another board.
+	 * @param handle the handle of the stored board.
+	 */
+	public synchronized void free(int handle)
+	{
+		segment(handle).put(flagsOffset + (handle & (SEGMENT_BOARDS - 1)), (byte) 0);
+		if (freeCount == freeHandles.length)
+			freeHandles = Arrays.copyOf(freeHandles, 2 * freeCount);
+		freeHandles[freeCount++] = handle;
+		size--;
+	}
+
+	/**
+	 * Takes a free handle, adding a segment when every one is in use.
+	 */
+	private synchronized int allocate()
+	{
+		int handle;
+		if (freeCount > 0)
+			handle = freeHandles[--freeCount];
+		else
+		{
+			if (nextHandle >> SHIFT == segments.length)
+			{
+				ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+				grown[segments.length] = ByteBuffer.allocateDirect(segmentBytes);
+				segments = grown;
+			}
+			handle = nextHandle++;
+		}
+		segments[handle >> SHIFT].put(flagsOffset + (handle & (SEGMENT_BOARDS - 1)), IN_USE);
+		size++;
+		return handle;
+	}
+
+	/**
+	 * Returns the segment of a stored board.
+	 * @throws IllegalArgumentException if no board has the handle.
+	 */
+	private ByteBuffer segment(int handle)
+	{
+		ByteBuffer[] all = segments;
+		if (handle < 0 || handle >> SHIFT >= all.length
+				|| (all[handle >> SHIFT].get(flagsOffset + (handle & (SEGMENT_BOARDS - 1))) & IN_USE) == 0)
+			throw new IllegalArgumentException("No board has handle " + handle + ".");
+		return all[handle >> SHIFT];
+	}
+
+	private void check(Board board)
+	{
+		if (board.getGridSize() != gridSize || board.getShips().size() > maxShips)
+			throw new IllegalArgumentException("The board doesn't fit in a store of boards of size " + gridSize
+					+ " with up to " + maxShips + " ships.");
+	}
+
+	private static int code(ShotResults result)
+	{
+		return result == null ? 0 : result.ordinal() + 1;
+	}
+
+	private ShotResults result(ByteBuffer segment, int base, int cell)
+	{
+		return RESULTS[(segment.get(base + (cell >> 2)) >> (2 * (cell & 3))) & 3];
+	}
+
+	/**
+	 * Keeps a number of half-played boards resident, first as {@code Board}s and then in a store, and compares
+	 * the heap they take and the time a full garbage collection takes.
+	 * @param args the number of boards (1000000) and the grid size (10).
+	 */
+	public static void main(String[] args)
+	{
+		int boards = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int[] fleet = {4, 3, 3, 2, 2, 1};
+
+		// A few distinct boards, halfway through a game, copied over and over
+		Board[] samples = new Board[64];
+		for (int i = 0; i < samples.length; i++)
+		{
+			CPUPlayer player = new CPUPlayer("A", gridSize, i);
+			CPUPlayer enemy = new CPUPlayer("B", gridSize, -i - 1);
+			player.setVerbose(false);
+			enemy.setVerbose(false);
+			player.placeShips(fleet);
+			enemy.placeShips(fleet);
+			for (int turn = 0; turn < gridSize * gridSize / 3; turn++)
+			{
+				Coordinate shot = enemy.getShot();
+				enemy.recordShot(shot, player.getBoard().fireShotAt(shot));
+			}
+			samples[i] = player.getBoard();
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		long before = usedHeap(runtime);
+		Board[] resident = new Board[boards];
+		for (int i = 0; i < boards; i++)
+			resident[i] = new Board(samples[i % samples.length]);
+		long onHeap = usedHeap(runtime) - before;
+		long start = System.nanoTime();
+		System.gc();
+		long gcOnHeap = System.nanoTime() - start;
+		resident = null;
+
+		before = usedHeap(runtime);
+		BoardStore store = new BoardStore(gridSize, fleet.length);
+		for (int i = 0; i < boards; i++)
+			store.store(samples[i % samples.length]);
+		long inStore = usedHeap(runtime) - before;
+		start = System.nanoTime();
+		System.gc();
+		long gcInStore = System.nanoTime() - start;
+
+		System.out.printf("%d boards as Board objects: %d bytes of heap each, full GC in %d ms%n", boards,
+				onHeap / boards, gcOnHeap / 1_000_000);
+		System.out.printf("%d boards in the store: %d bytes off the heap and %d bytes of heap each, full GC in %d ms%n",
+				store.size(), store.getBytesPerBoard(), Math.max(0, inStore) / boards, gcInStore / 1_000_000);
+
+		start = System.nanoTime();
+		int loads = Math.min(boards, 100000);
+		long ships = 0;
+		for (int i = 0; i < loads; i++)
+			ships += store.load(i).getShipCount();
+		System.out.printf("%d boards loaded in %d ms (%d ship tiles left)%n", loads, (System.nanoTime() - start) / 1_000_000, ships);
+	}
+
+	private static long usedHeap(Runtime runtime)
+	{
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * A board of the store, read in place. A view holds nothing but the handle of the board, so any number of
+	 * them can be created, and reads what the board holds when it's called.
+	 */
+	public final class View
+	implements BoardView
+	{
+		private final int handle;
+
+		private View(int handle)
+		{
+			this.handle = handle;
+		}
+
+		/**
+		 * @return the handle of the board
+		 */
+		public int getHandle()
+		{
+			return handle;
+		}
+
+		/**
+		 * @return the size of the grids
+		 */
+		public int getGridSize()
+		{
+			return gridSize;
+		}
+
+		/**
+		 * Returns whether there is a ship at the specified coordinate.
+		 * @param c the coordinate to check.
+		 * @return {@code true} if there is a ship, {@code false} otherwise.
+		 */
+		public boolean isShipAt(Coordinate c)
+		{
+			return segment(handle).get(shipAtOffset + (handle & (SEGMENT_BOARDS - 1)) * cells + c.getX() * gridSize + c.getY()) != 0;
+		}
+
+		/**
+		 * Returns the result of the shot fired by the board's owner at the specified coordinate.
+		 * @param c the coordinate.
+		 * @return the result of the shot, or {@code null} if no such shot has been taken.
+		 */
+		public ShotResults getResultAt(Coordinate c)
+		{
+			return result(segment(handle), shotsOffset + (handle & (SEGMENT_BOARDS - 1)) * packed, c.getX() * gridSize + c.getY());
+		}
+
+		/**
+		 * Returns the result of the shot received at the specified coordinate.
+		 * @param c the coordinate.
+		 * @return the result of the shot, or {@code null} if no such shot has been taken.
+		 */
+		public ShotResults getReceivedAt(Coordinate c)
+		{
+			return result(segment(handle), receivedOffset + (handle & (SEGMENT_BOARDS - 1)) * packed, c.getX() * gridSize + c.getY());
+		}
+
+		/**
+		 * @return the amount of tiles occupied by ships that weren't hit yet
+		 */
+		public int getShipCount()
+		{
+			ByteBuffer segment = segment(handle);
+			int base = (handle & (SEGMENT_BOARDS - 1)) * maxShips;
+			int count = 0;
+			for (int s = 0; s < shipNumber(segment); s++)
+				count += (segment.get(shipLengthOffset + base + s) & 0xFF) - (segment.get(shipHitsOffset + base + s) & 0xFF);
+			return count;
+		}
+
+		/**
+		 * @return the number of ships that weren't sunk yet
+		 */
+		public int getShipsAfloat()
+		{
+			ByteBuffer segment = segment(handle);
+			int base = (handle & (SEGMENT_BOARDS - 1)) * maxShips;
+			int afloat = 0;
+			for (int s = 0; s < shipNumber(segment); s++)
+				if (segment.get(shipHitsOffset + base + s) != segment.get(shipLengthOffset + base + s))
+					afloat++;
+			return afloat;
+		}
+
+		/**
+		 * @return the lengths of the ships on the board, in the order they were placed
+		 */
+		public int[] getShipLengths()
+		{
+			ByteBuffer segment = segment(handle);
+			int base = (handle & (SEGMENT_BOARDS - 1)) * maxShips;
+			int[] lengths = new int[shipNumber(segment)];
+			for (int s = 0; s < lengths.length; s++)
+				lengths[s] = segment.get(shipLengthOffset + base + s) & 0xFF;
+			return lengths;
+		}
+
+		private int shipNumber(ByteBuffer segment)
+		{
+			return segment.get(shipNumberOffset + (handle & (SEGMENT_BOARDS - 1))) & 0xFF;
+		}
+	}
+}
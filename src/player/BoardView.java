@@ -0,0 +1,50 @@
+package player;
+
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * The parts of a board that can be read without playing on it. Code that only looks at a board takes a view,
+ * so that it works the same on a {@link Board}, on a {@link BoardSnapshot} and on a board kept in a
+ * {@link BoardStore}.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public interface BoardView
+{
+	/**
+	 * @return the size of the grids
+	 */
+	int getGridSize();
+
+	/**
+	 * Returns whether there is a ship at the specified coordinate.
+	 * @param c the coordinate to check.
+	 * @return {@code true} if there is a ship, {@code false} otherwise.
+	 */
+	boolean isShipAt(Coordinate c);
+
+	/**
+	 * Returns the result of the shot fired by the board's owner at the specified coordinate.
+	 * @param c the coordinate.
+	 * @return the result of the shot, or {@code null} if no such shot has been taken.
+	 */
+	ShotResults getResultAt(Coordinate c);
+
+	/**
+	 * Returns the result of the shot received at the specified coordinate.
+	 * @param c the coordinate.
+	 * @return the result of the shot, or {@code null} if no such shot has been taken.
+	 */
+	ShotResults getReceivedAt(Coordinate c);
+
+	/**
+	 * @return the amount of tiles occupied by ships that weren't hit yet
+	 */
+	int getShipCount();
+
+	/**
+	 * @return the number of ships that weren't sunk yet
+	 */
+	int getShipsAfloat();
+}
@@ -0,0 +1,97 @@
+package player;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import main.Game;
+
+/**
+ * The settings of the AI of a {@link CPUPlayer}. The default settings reproduce the original AI exactly,
+ * while other settings can be found by tuning the AI on simulated games.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class CPUParameters
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The settings of the original AI: every ship length from 2 to {@link Game#MAX_SHIP_LENGTH} has the
+	 * same weight, ties are broken randomly and a ship is targeted as soon as it's hit.
+	 */
+	public static final CPUParameters DEFAULT = new CPUParameters(defaultWeights(), true, true);
+
+	private int[] lengthWeights;
+	private boolean randomTieBreak;
+	private boolean targetMode;
+
+	/**
+	 * Constructs a new set of settings.
+	 * @param lengthWeights how much a cell's density grows for each way a ship of every length can cover it,
+	 * indexed by length. The longest length considered is the last index. Length 1 is never considered,
+	 * since it adds the same to every cell.
+	 * @param randomTieBreak whether to choose randomly among the densest cells, rather than taking the first.
+	 * @param targetMode whether to switch to target mode as soon as a ship is hit, rather than only when
+	 * no cell is left that can hold an unseen ship.
+	 * @throws IllegalArgumentException if a weight is negative.
+	 */
+	public CPUParameters(int[] lengthWeights, boolean randomTieBreak, boolean targetMode)
+	{
+		for (int weight : lengthWeights)
+			if (weight < 0)
+				throw new IllegalArgumentException("Length weights can't be negative.");
+		this.lengthWeights = lengthWeights.clone();
+		this.randomTieBreak = randomTieBreak;
+		this.targetMode = targetMode;
+	}
+
+	private static int[] defaultWeights()
+	{
+		int[] weights = new int[Game.MAX_SHIP_LENGTH + 1];
+		for (int length = 2; length <= Game.MAX_SHIP_LENGTH; length++)
+			weights[length] = 1;
+		return weights;
+	}
+
+	/**
+	 * Returns the weight of the ships of the specified length.
+	 * @param length the length.
+	 * @return the weight, or {@code 0} if the length is longer than the longest one considered.
+	 */
+	public int getLengthWeight(int length)
+	{
+		return length < lengthWeights.length ? lengthWeights[length] : 0;
+	}
+
+	/**
+	 * @return the longest ship length whose weight is considered
+	 */
+	public int getMaxShipLength()
+	{
+		return lengthWeights.length - 1;
+	}
+
+	/**
+	 * @return whether the densest cells are chosen randomly
+	 */
+	public boolean isRandomTieBreak()
+	{
+		return randomTieBreak;
+	}
+
+	/**
+	 * @return whether a ship is targeted as soon as it's hit
+	 */
+	public boolean isTargetMode()
+	{
+		return targetMode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "weights " + Arrays.toString(lengthWeights) + (randomTieBreak ? ", random ties" : ", first tie")
+				+ (targetMode ? ", target mode" : ", hunt only");
+	}
+}
@@ -1,9 +1,20 @@
 package player;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-import main.*;
 import types.Coordinate;
 import types.Directions;
 import types.ShotResults;
@@ -16,11 +27,30 @@ import types.ShotResults;
 public class CPUPlayer extends AbstractPlayer
 {
 	private static final long serialVersionUID = 1L;
+	private static final int OPENING_SHOTS = 12;			// Shots after which the densest cells aren't cached
+	private static final int MAX_OPENINGS = 1 << 16;		// Cached grids per settings and lengths
+	private static final int MIN_SAMPLES = 50;				// Layouts needed to trust a refined shot
+	private static final int MAX_SAMPLES = 5000;			// Layouts after which a shot is fully refined
+	private static final int SAMPLE_ATTEMPTS = 16;			// Attempts at a layout between checks of the deadline
+	private static final int MAX_FAILURES = 4096;			// Failed attempts after which no layout is expected
+	private static final int MAX_LAYOUTS = 100;				// Layouts started over before a fleet is deemed impossible
 	
-	private Coordinate lastHitPos;
-	private Directions lastHitDir;
+	// Densest cells of the opening grids, by AI settings, then lengths of the AI map and then canonical grid
+	private static final Map<CPUParameters, Map<Long, Map<CanonicalGrid, int[]>>> OPENINGS =
+			Collections.synchronizedMap(new WeakHashMap<>());
 	
-	private Random random = new Random();
+	private TargetQueue targets = new TargetQueue();
+	
+	private Random random = new CopyableRandom();
+	private CPUParameters parameters = CPUParameters.DEFAULT;
+	private transient MoveBudget budget;
+	private transient EndgameSolver endgame;
+	private transient int[] fleet;			// The enemy fleet, when known
+	private transient int[] densityScratch;	// Reused by every density computation
+	private transient GridTables tables;
+	private transient int[][] runTable;		// The densities added by the lengths in runTableLengths
+	private transient long runTableLengths;	// The lengths counted by runTable, as a bit mask
+	private transient CPUParameters runTableSettings;
 	
 	/**
 	 * Constructs a new player object with the specified player name and the specified board size.
@@ -31,19 +61,197 @@ public class CPUPlayer extends AbstractPlayer
 	public CPUPlayer(String playerName, int boardSize)
 	{
 		super(playerName, boardSize);
-		lastHitPos = null;
-		lastHitDir = null;
+	}
+	
+	/**
+	 * Constructs a new player object whose random choices are driven by the specified seed, so
+	 * that its placements and shots can be reproduced.
+	 * @param playerName the name of the player.
+	 * @param boardSize the size of the board.
+	 * @param seed the seed of the player's random number generator.
+	 */
+	public CPUPlayer(String playerName, int boardSize, long seed)
+	{
+		this(playerName, boardSize);
+		random = new CopyableRandom(seed);
+	}
+	
+	/**
+	 * Constructs a new seeded player whose AI uses the specified settings.
+	 * @param playerName the name of the player.
+	 * @param boardSize the size of the board.
+	 * @param seed the seed of the player's random number generator.
+	 * @param parameters the settings of the AI.
+	 */
+	public CPUPlayer(String playerName, int boardSize, long seed, CPUParameters parameters)
+	{
+		this(playerName, boardSize, seed);
+		this.parameters = parameters;
 	}
 
+	/**
+	 * Constructs a deep copy of the specified player. The copy's random number generator continues
+	 * from the same state as the original's, so both make the same choices.
+	 * @param other the player to copy.
+	 */
+	public CPUPlayer(CPUPlayer other)
+	{
+		super(other);
+		targets = new TargetQueue(other.targets());
+		random = copyOf(other.random);
+		parameters = other.parameters;
+		fleet = other.fleet;
+	}
+	
+	/**
+	 * Constructs a player that chooses shots on behalf of another one, on the specified board. It shares
+	 * the settings, random number generator and move budget of the shooter, so only one of them can be
+	 * choosing a shot at any time.
+	 * @param shooter the player to act for.
+	 * @param board the board to choose the shots on.
+	 * @param fleet the lengths of the ships to look for.
+	 */
+	private CPUPlayer(CPUPlayer shooter, Board board, int[] fleet)
+	{
+		super(shooter, board);
+		random = shooter.random;
+		parameters = shooter.parameters;
+		budget = shooter.budget;
+		endgame = shooter.endgame;
+		this.fleet = fleet;
+		resumeTargeting();
+	}
+	
+	@Override
+	public CPUPlayer copy()
+	{
+		return new CPUPlayer(this);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The returned player picks up any ship the opponent has been hit on but not sunk, whoever hit it.
+	 */
+	@Override
+	public CPUPlayer aimAt(Board target)
+	{
+		return new CPUPlayer(this, target.receivedView(), target.getShipLengths());
+	}
+	
+	/**
+	 * Tells this player the lengths of the ships of the enemy fleet, which it otherwise assumes to be the
+	 * same as its own.
+	 * @param lengths the lengths of all the enemy ships, sunk or not, or {@code null} to assume its own.
+	 */
+	public void setEnemyFleet(int[] lengths)
+	{
+		fleet = lengths == null ? null : lengths.clone();
+	}
+	
+	/**
+	 * Sets the time this player can spend choosing each shot. Without a budget, shots are chosen right
+	 * away with the density map, and seeded players always make the same choices.
+	 * @param budget the budget, or {@code null} for none.
+	 */
+	public void setMoveBudget(MoveBudget budget)
+	{
+		this.budget = budget;
+	}
+	
+	/**
+	 * @return the time budget of each shot, or {@code null} if there is none
+	 */
+	public MoveBudget getMoveBudget()
+	{
+		return budget;
+	}
+	
+	/**
+	 * Sets the solver that plays the end of the game exactly, once few enough layouts of the enemy fleet are
+	 * left. Its choice isn't refined with the move budget. Salvoes are always chosen with the usual AI.
+	 * @param endgame the solver, or {@code null} for none.
+	 */
+	public void setEndgameSolver(EndgameSolver endgame)
+	{
+		this.endgame = endgame;
+	}
+	
+	/**
+	 * @return the solver that plays the end of the game, or {@code null} if there is none
+	 */
+	public EndgameSolver getEndgameSolver()
+	{
+		return endgame;
+	}
+	
+	/**
+	 * Returns the settings of this player's AI.
+	 * @return the settings.
+	 */
+	public CPUParameters getParameters()
+	{
+		return parameters == null ? CPUParameters.DEFAULT : parameters;	// Players saved before the settings existed
+	}
+	
+	/**
+	 * Copies a random number generator, state included. Players saved before {@link CopyableRandom}
+	 * was introduced use a plain {@code Random}, which only exposes its state through serialization.
+	 */
+	private static Random copyOf(Random random)
+	{
+		if (random instanceof CopyableRandom)
+			return ((CopyableRandom) random).copy();
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			try (ObjectOutputStream writer = new ObjectOutputStream(bytes))
+			{
+				writer.writeObject(random);
+			}
+			try (ObjectInputStream reader = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+			{
+				return (Random) reader.readObject();
+			}
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new IllegalStateException("Cannot copy the random number generator.", e);
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
-	 * Every ship will be placed in a random location.
+	 * Every ship will be placed in a random location, from the longest to the shortest as the
+	 * {@link EndgameSolver} expects. When the ships placed leave no room for the next one, the layout is started over.
 	 */
 	@Override
 	public void placeShips(int[] lengths)
 	{
-		System.out.println("\n" + getPlayerName() + " is positioning its ships.");
+		if (isVerbose())
+			System.out.println("\n" + getPlayerName() + " is positioning its ships.");
 		
+		lengths = lengths.clone();
+		Arrays.sort(lengths);
+		for (int i = 0; i < lengths.length / 2; i++)
+		{
+			int swap = lengths[i];
+			lengths[i] = lengths[lengths.length - 1 - i];
+			lengths[lengths.length - 1 - i] = swap;
+		}
+		for (int layout = 1; !placeLayout(lengths); layout++)
+		{
+			getBoard().clear();
+			if (layout == MAX_LAYOUTS)
+				throw new InputMismatchException("Couldn't place all ships.");
+		}
+	}
+	
+	/**
+	 * Attempts to place every ship at random.
+	 * @return {@code false} if a ship couldn't be placed in a reasonable number of attempts.
+	 */
+	private boolean placeLayout(int[] lengths)
+	{
 		int size = getBoard().getGridSize();
 		Directions[] directionsValues = Directions.values();
 		
@@ -56,7 +264,7 @@ public class CPUPlayer extends AbstractPlayer
 			while (!validShip)
 			{
 				if (attemptsCounter >= (size * size)) 
-					throw new InputMismatchException("Couldn't place all ships.");
+					return false;
 				attemptsCounter++;
 				
 				// Select randomly a position and direction and checks if the ship can be placed there
@@ -66,36 +274,107 @@ public class CPUPlayer extends AbstractPlayer
 				validShip = getBoard().placeShip(position, direction, length);
 			}	
 		}
-		
+		return true;
 	}
 	
 	/**
-	 * {@inheritDoc}
-	 * This method return any position used by a ship in the box (3x3) outer a given position.
+	 * Computes the AI map of the shot grid: every cell that can still contain a ship gets a density,
+	 * which grows with the number of ways a ship can cover it.
+	 * @return the map, indexed by cell as {@code x * size + y}. The same array is reused by every call.
 	 */
-	private Coordinate findNearShip(Coordinate c) 
+	private int[] densityMap()
 	{
 		int size = getBoard().getGridSize();
-
-		//Top left cell of the bounding box of the pos
-		int boundTLX = Math.max(0, c.getX() - 1);
-		int boundTLY = Math.max(0, c.getY() - 1);
+		CPUParameters settings = getParameters();
+		if (densityScratch == null || densityScratch.length != size * size)
+		{
+			densityScratch = new int[size * size];
+			tables = GridTables.of(size, 1);
+			runTable = null;
+		}
+		int[] aiMap = densityScratch;	// Map to be used for AI calculations, fully rewritten below
 		
-		//Bottom right cell of the bounding box of the ship
-		int boundBRX = Math.min(size - 1, c.getX() + 1);
-		int boundBRY = Math.min(size - 1, c.getY() + 1);
+		// Initialise the AI map using available Shot results
+		// Set each cell of the map to:
+		// 0 - if the cell contains a ship
+		// 1 - if the cell is a either a miss or is next to a cell with a ship (which can't contain a ship either)
+		// 2 - otherwise (it's a cell which can contain a ship)
 		
-		// Search for any ship in the 3x3 box outer the given position, excluding the given position itself.
 		Coordinate pos = new Coordinate();
-		for (int x = boundTLX; x <= boundBRX; x++)
-			for (int y = boundTLY; y <= boundBRY; y++)
-				if (!(c.getX() == x && c.getY() == y))
-				{
-					pos.set(x, y);
-					if (getBoard().getResultAt(pos) == ShotResults.HIT || getBoard().getResultAt(pos) == ShotResults.SINK)
-						return pos;
-				}
-		return null;
+		for (int cell = 0; cell < aiMap.length; cell++)
+		{
+			pos.set(tables.cellX(cell), tables.cellY(cell));
+			ShotResults result = getBoard().getResultAt(pos);
+			
+			if (result == ShotResults.HIT || result == ShotResults.SINK)
+				aiMap[cell] = 0;
+			else if (result == ShotResults.MISS)
+				aiMap[cell] = 1;
+			else
+				aiMap[cell] = 2;
+		}
+		for (int cell = 0; cell < aiMap.length; cell++)
+			if (aiMap[cell] == 0)
+				for (int near : tables.neighbours(cell))
+					if (aiMap[near] == 2)
+						aiMap[near] = 1;
+
+		// For each cell calculates the probability (density) to have a ship in it
+		// considering all possible lengths except length = 1 (which is not important
+		// since all free cell can contain a 1-length ship), and the ones whose ships have all been sunk.
+		// Every time a cell can contain a ship its probability is increased by the weight of the ship's length:
+		// the ways to cover a cell only depend on the run of free cells it's in, so all the lengths are added at once
+		int maxLength = Math.min(settings.getMaxShipLength(), size);
+		long lengths = densityLengths();
+		if (runTable == null || lengths != runTableLengths || settings != runTableSettings)
+		{
+			int[] weights = new int[maxLength + 1];
+			for (int length = 2; length <= maxLength; length++)
+				if ((lengths & (1L << length)) != 0)
+					weights[length] = settings.getLengthWeight(length);
+			runTable = DensityKernel.runTable(size, weights);
+			runTableLengths = lengths;
+			runTableSettings = settings;
+		}
+		DensityKernel.addRuns(aiMap, size, runTable);
+		
+		return aiMap;
+	}
+	
+	/**
+	 * Returns the ship lengths the AI map is made of, as a bit set: the ones longer than 1 with a weight that may
+	 * still be afloat.
+	 */
+	private long densityLengths()
+	{
+		CPUParameters settings = getParameters();
+		int maxLength = Math.min(settings.getMaxShipLength(), getBoard().getGridSize());
+		long lengths = 0;
+		for (int length = maxLength; length > 1; length--)
+			if (settings.getLengthWeight(length) != 0 && isAfloat(length))
+				lengths |= 1L << length;
+		return lengths;
+	}
+	
+	/**
+	 * Returns whether the enemy may still have ships of the specified length afloat. Unless it has been told
+	 * otherwise, the enemy fleet is assumed to be the same as this player's; if this player has no ships, any
+	 * length may be afloat.
+	 */
+	private boolean isAfloat(int length)
+	{
+		int ships = 0;
+		if (fleet != null)
+		{
+			for (int shipLength : fleet)
+				if (shipLength == length)
+					ships++;
+		}
+		else if (getBoard().getShips().isEmpty())
+			return true;
+		else
+			ships = getBoard().getFleetCount(length);
+		return ships > getBoard().getSunkCount(length);
 	}
 	
 	/**
@@ -104,203 +383,360 @@ public class CPUPlayer extends AbstractPlayer
 	 */
 	public Coordinate getShot()
 	{
-		System.out.println("\nIt's " + getPlayerName() +"'s turn.");
-
-		System.out.println("Thinking...");
-
-		int size = getBoard().getGridSize();
+		if (isVerbose())
+		{
+			System.out.println("\nIt's " + getPlayerName() +"'s turn.");
+			System.out.println("Thinking...");
+		}
 
+		// The end of the game is played exactly, when there is a solver for it
 		Coordinate newShot = null;
+		if (endgame != null)
+			newShot = endgame.chooseShot(getBoard(), fleet != null ? fleet : getBoard().getShipLengths());
+		if (newShot == null)
+		{
+			if (budget == null)
+				newShot = chooseShot();
+			else
+			{
+				// With a time budget the usual choice is only the first answer, which is refined until the deadline
+				long deadline = budget.startMove();
+				newShot = refineShot(chooseShot(), deadline);
+			}
+		}
 
-		if (lastHitPos == null)
+		if (isVerbose())
+			System.out.println("Shooting in " + (char)('A' + newShot.getX()) + newShot.getY());
+		
+		return newShot;
+	}
+	
+	/**
+	 * Chooses the next shot using the density map in hunt mode, and finishing off the ships already hit in target mode.
+	 */
+	private Coordinate chooseShot()
+	{
+		int size = getBoard().getGridSize();
+		boolean randomTies = getParameters().isRandomTieBreak();
+		
+		if (getParameters().isTargetMode())
 		{
-			int[][]	aiMap = new int[size][size];	// Map to be used for AI calculations
-			
-			// Initialise the AI map using available Shot results
-			// Set each cell of the map to:
-			// 0 - if the cell contains a ship
-			// 1 - if the cell is a either a miss or is next to a cell with a ship (which can't contain a ship either)
-			// 2 - otherwise (it's a cell which can contain a ship)
-			
-			Coordinate pos = new Coordinate();		
-		    for (int x = 0; x < size; x++)			
-		    	for (int y = 0; y < size; y++)
-		    	{
-		    		pos.set(x, y);
-		    		ShotResults result = getBoard().getResultAt(pos);
-		    		
-		    		if (result == ShotResults.HIT || result == ShotResults.SINK)
-						aiMap[x][y] = 0;
-		    		else if (result == ShotResults.MISS)
-						aiMap[x][y] = 1;
-					else
-					{
-						if (findNearShip(pos) != null)
-							aiMap[x][y] = 1;
-						else
-							aiMap[x][y] = 2;
-					}
-		    	}
-	
-			// For each cell calculates the probability (density) to have a ship in it
-			// considering all possible lengths except length = 1 (which is not important
-			// since all free cell can contain a 1-length ship).
-			// Every time a cell can contain a ship its probability is increased by 1
-			int maxDensity = 2;
-			for (int length = Game.MAX_SHIP_LENGTH; length > 1; length--) {
-	
-				// Calculate probability for possible horizontal ships...
-				for (int x = 0; x <= size - length; x++) 
-					for (int y = 0; y < size; y++) {
-						int i = 0;
-						while (i < length && aiMap[x + i][y] > 1)
-							i++;
-						if (i == length)  
-							for (int x1 = x; x1 < x + length; x1++) 
-							{
-								aiMap[x1][y]++;
-								maxDensity = Math.max(maxDensity, aiMap[x1][y]);
-							}
-					}
+			Coordinate newShot = targets().nextShot(getBoard(), afloatLengths(), randomTies ? random : null);
+			if (newShot != null)
+				return newShot;
+		}
+		
+		int[] densest = densestCells();
+		if (densest.length > 0)
+		{
+			// Selects one of the densest cells randomly, as the new candidate shot
+			int cell = densest[randomTies ? random.nextInt(densest.length) : 0];
+			return new Coordinate(cell / size, cell % size);
+		}
+		
+		// Only cells next to hit ships are left, even though target mode is off
+		Coordinate newShot = targets().nextShot(getBoard(), afloatLengths(), randomTies ? random : null);
+		return newShot != null ? newShot : firstUnknownCell();
+	}
 	
-				// and calculate probability for possible vertical ships
-				for (int x = 0; x < size; x++) 
-					for (int y = 0; y <= size - length; y++) {
-						int i = 0;
-						while (i < length && aiMap[x][y + i] > 1)
-							i++;
-						if (i == length) 
-							for (int y1 = y; y1 < y + length; y1++) {
-								aiMap[x][y1]++;
-								maxDensity = Math.max(maxDensity, aiMap[x][y1]);
-							}
-					}
-			}
+	/**
+	 * Returns the target mode, rebuilding it from the shot grid for players saved before it was kept.
+	 */
+	private TargetQueue targets()
+	{
+		if (targets == null)
+		{
+			targets = new TargetQueue();
+			targets.rebuild(getBoard());
+		}
+		return targets;
+	}
 	
-			// maxDensity is the highest probability calculated until now.
-            // Counts the cells with a value equal to maxDensity, and selects one randomly
-			int maxDensityCount = 0;
-			for (int x = 0; x < size; x++) 
-				for (int y = 0; y < size; y++) 
-					maxDensityCount += (aiMap[x][y] == maxDensity ? 1 : 0);
-			
-			int randomCell = random.nextInt(maxDensityCount) + 1;
-			
-			int x = 0;
-			int y = 0;
-			while (x < size && randomCell > 0) {
-				y = 0;
-				while (y < size && randomCell > 0) {
-					randomCell -= (aiMap[x][y] == maxDensity ? 1 : 0); 
-					y++;
+	/**
+	 * Returns which ship lengths may still be afloat, as {@code afloat[length]}, for the target mode.
+	 */
+	private boolean[] afloatLengths()
+	{
+		int size = getBoard().getGridSize();
+		boolean[] afloat = new boolean[size + 1];
+		for (int length = 1; length <= size; length++)
+			afloat[length] = isAfloat(length);
+		return afloat;
+	}
+	
+	/**
+	 * Refines a shot until the deadline, estimating the chance of every cell to hold a ship from random
+	 * layouts of the enemy fleet consistent with the shot grid. Unless it has been told otherwise, the enemy
+	 * fleet is assumed to be the same as this player's.
+	 * @param shot the shot chosen so far.
+	 * @param deadline the deadline of the move.
+	 * @return the cell most often covered by a ship, or the original shot if there wasn't time to sample enough layouts.
+	 */
+	private Coordinate refineShot(Coordinate shot, long deadline)
+	{
+		Board board = getBoard();
+		int size = board.getGridSize();
+		int[] counts = new int[size * size];
+		int[][] taken = new int[size][size];
+		List<int[]> layout = new ArrayList<>();
+		LayoutSampler sampler = new LayoutSampler(board, fleet != null ? fleet : board.getShipLengths());
+		
+		int samples = 0;
+		int failures = 0;
+		boolean complete = false;
+		while (!budget.isOver(deadline))
+		{
+			if (samples >= MAX_SAMPLES || failures >= MAX_FAILURES)
+			{
+				complete = true;		// Fully refined, or no layout can be found
+				break;
+			}
+			if (!sampler.sample(random, taken, layout, SAMPLE_ATTEMPTS))
+			{
+				failures += SAMPLE_ATTEMPTS;
+				continue;
+			}
+			for (int[] ship : layout)
+				for (int k = 0; k < ship[3]; k++)
+					counts[(ship[0] + ship[2] * k) * size + ship[1] + (1 - ship[2]) * k]++;
+			samples++;
+		}
+		budget.endMove(deadline, complete);
+		if (samples < MIN_SAMPLES)
+			return shot;
+		
+		// Picks the unknown cell covered most often, breaking ties randomly
+		Coordinate pos = new Coordinate();
+		int best = -1;
+		int ties = 0;
+		for (int cell = 0; cell < counts.length; cell++)
+		{
+			pos.set(cell / size, cell % size);
+			if (board.getResultAt(pos) != null || counts[cell] < (best < 0 ? 0 : counts[best]))
+				continue;
+			if (best >= 0 && counts[cell] == counts[best])
+			{
+				if (random.nextInt(++ties + 1) == 0)
+					best = cell;
+			}
+			else
+			{
+				best = cell;
+				ties = 0;
+			}
+		}
+		return best < 0 ? shot : new Coordinate(best / size, best % size);
+	}
+
+
+	/**
+	 * Returns the cells with the highest density of the AI map, in order of x and then y. Early in the game
+	 * the same shot grids come up over and over, so the densest cells of the first shots are cached, once
+	 * for all the rotations and reflections of a grid, and shared by all the players with the same settings
+	 * and the same ship lengths left to find.
+	 * @return the densest cells, as {@code x * size + y}, or none if no cell can hold a ship.
+	 */
+	private int[] densestCells()
+	{
+		int size = getBoard().getGridSize();
+		CanonicalGrid grid = null;
+		Map<CanonicalGrid, int[]> openings = null;
+		if (size <= CanonicalGrid.MAX_SIZE)
+		{
+			grid = getBoard().canonicalShotGrid();
+			if (grid.getShotCount() <= OPENING_SHOTS)
+			{
+				openings = OPENINGS.computeIfAbsent(getParameters(), key -> new ConcurrentHashMap<>())
+						.computeIfAbsent(densityLengths(), key -> new ConcurrentHashMap<>());
+				int[] cached = openings.get(grid);
+				if (cached != null)
+				{
+					int[] densest = new int[cached.length];
+					for (int i = 0; i < cached.length; i++)
+						densest[i] = grid.fromCanonical(cached[i]);
+					Arrays.sort(densest);
+					return densest;
 				}
-				x++;
 			}
-			
-			// The random cell is selected as new candidate shot
-			newShot = new Coordinate(x - 1, y - 1);
 		}
-		else if (lastHitDir == null) {
-			// If an enemy ship has just been hit for the first time its direction has not been found yet (lastHitDir == null), so it gets next new shot...
-			Directions[] directionsValues = Directions.values();
-	
-			int i = random.nextInt(directionsValues.length);	// ...cycling through the available directions (selecting first randomly). 
-																// Such a shot has to exist otherwise the ship would have been already sunk (and no hit directions would have been set).
-			Coordinate searchShot = new Coordinate();
-			while (newShot == null) {
-				// So it starts searching from the selected direction until the first new candidate shot is found (it has to be inside the board and on a cell that has not been hit yet)
-				Directions searchDir = directionsValues[i];																			
-				searchShot.set(lastHitPos.getX() + searchDir.getX(), lastHitPos.getY() + searchDir.getY());							
-				if (!getBoard().isOutside(searchShot.getX(), searchShot.getY()) && (getBoard().getResultAt(searchShot) == null)) 	
-					newShot = searchShot;																							
-				else i = (i + 1) % directionsValues.length;																						
+		
+		int[] aiMap = densityMap();
+		
+		// maxDensity is the highest probability calculated until now.
+		// Counts the cells with a value equal to maxDensity
+		int maxDensity = 2;
+		for (int density : aiMap)
+			maxDensity = Math.max(maxDensity, density);
+		int maxDensityCount = 0;
+		for (int density : aiMap)
+			maxDensityCount += (density == maxDensity ? 1 : 0);
+		
+		int[] densest = new int[maxDensityCount];
+		int found = 0;
+		for (int cell = 0; cell < aiMap.length; cell++)
+			if (aiMap[cell] == maxDensity)
+				densest[found++] = cell;
+		
+		if (openings != null && openings.size() < MAX_OPENINGS)
+		{
+			int[] canonical = new int[densest.length];
+			for (int i = 0; i < densest.length; i++)
+				canonical[i] = grid.toCanonical(densest[i] / size, densest[i] % size);
+			openings.put(grid, canonical);
+		}
+		return densest;
+	}
+	
+	/**
+	 * Returns the first cell of the shot grid that hasn't been shot at yet, or {@code null} if there are none.
+	 */
+	private Coordinate firstUnknownCell()
+	{
+		int size = getBoard().getGridSize();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				Coordinate pos = new Coordinate(x, y);
+				if (getBoard().getResultAt(pos) == null)
+					return pos;
 			}
+		return null;
+	}
+	
+	/**
+	 * Derives the target mode from the shot grid: if ships have been hit but not sunk yet, the next shots
+	 * will try to finish them off. Used when this player is set up from an existing shot grid, for example
+	 * to play out a game from the middle.
+	 */
+	public void resumeTargeting()
+	{
+		targets().rebuild(getBoard());
+	}
+	
+	/**
+	 * Resets this player for a new game on the same board size: removes every ship and shot, forgets any
+	 * target and reseeds the random number generator. Lets simulations reuse their players instead of
+	 * allocating new ones for every game.
+	 * @param seed the new seed.
+	 */
+	public void reset(long seed)
+	{
+		getBoard().clear();
+		targets().clear();
+		random.setSeed(seed);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The whole volley is chosen from a single AI map: first the cells that can finish off the ships
+	 * already hit, then the densest cells, ties being broken randomly.
+	 */
+	@Override
+	public Coordinate[] getVolley(int shots)
+	{
+		if (isVerbose())
+		{
+			System.out.println("\nIt's " + getPlayerName() +"'s turn.");
+			System.out.println("Thinking...");
 		}
-		else
+
+		int size = getBoard().getGridSize();
+		shots = Math.min(shots, countUnknownCells());
+		
+		boolean[][] chosen = new boolean[size][size];
+		List<Coordinate> volley = new ArrayList<>(shots);
+		
+		// Target mode: the cells next to the ships already hit
+		if (getParameters().isTargetMode())
+			for (Coordinate c : targets().volleyCandidates(getBoard(), afloatLengths()))
+				if (volley.size() < shots && !chosen[c.getX()][c.getY()])
+				{
+					chosen[c.getX()][c.getY()] = true;
+					volley.add(c);
+				}
+		
+		// Hunt mode: the densest cells left. Counts how many cells have each density...
+		int needed = shots - volley.size();
+		if (needed > 0)
 		{
-			// If the enemy ship has been hit in at least two positions then its direction has already been found (lastHitDir != null)
-			// A next shot position has to exists (otherwise the ship would have been sunk already), so it selects the first next cell in the specified direction after lastHitPos...
-			Coordinate searchShot = new Coordinate(lastHitPos.getX() + lastHitDir.getX(), lastHitPos.getY() + lastHitDir.getY());
+			int[] aiMap = densityMap();
+			int maxDensity = 0;
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+					maxDensity = Math.max(maxDensity, aiMap[x * size + y]);
 			
-			// ...and checks if the direction has to be reversed in case of...
-			boolean reverseSearch = false;																		
-			if (getBoard().isOutside(searchShot.getX(), searchShot.getY())) reverseSearch = true;		// ...the candidate shot is outside the board
-			else if (getBoard().getResultAt(searchShot) != null) reverseSearch = true;				// ...the candidate shot has already been taken.
+			int[] densityCount = new int[maxDensity + 1];
+			Coordinate pos = new Coordinate();
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+				{
+					pos.set(x, y);
+					if (chosen[x][y] || getBoard().getResultAt(pos) != null)
+						aiMap[x * size + y] = -1;		// Not a candidate
+					else
+						densityCount[aiMap[x * size + y]]++;
+				}
 			
+			// ...finds the lowest density that is needed to fill the volley...
+			int threshold = maxDensity;
+			int above = 0;
+			while (above + densityCount[threshold] < needed)
+				above += densityCount[threshold--];
 			
-			if (!reverseSearch)
-	    		newShot = searchShot;
-	    	else
-	    	{	
-	    		// In that case it has to search in the opposite direction... 
-	    		lastHitDir = Directions.opposite(lastHitDir);													
-	    		
-	    		// ...going back to the opposite side of the ship and selecting the first next free cell as new shot.
-	    		searchShot.set(lastHitPos.getX() + lastHitDir.getX(), lastHitPos.getY() + lastHitDir.getY());
-	    		while (getBoard().getResultAt(searchShot) != null)												
-	    		{
-	    			lastHitPos = searchShot;
-	    			searchShot.set(lastHitPos.getX() + lastHitDir.getX(), lastHitPos.getY() + lastHitDir.getY());
-	    		}
-	    		newShot = searchShot;
-	    	}
-	    }
+			// ...and takes all the denser cells, plus a selection of the cells at the threshold
+			boolean randomTies = getParameters().isRandomTieBreak();
+			int tiedLeft = densityCount[threshold];
+			int tiedNeeded = needed - above;
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+				{
+					if (aiMap[x * size + y] > threshold)
+						volley.add(new Coordinate(x, y));
+					else if (aiMap[x * size + y] == threshold)
+					{
+						if (randomTies ? random.nextInt(tiedLeft) < tiedNeeded : tiedNeeded > 0)
+						{
+							volley.add(new Coordinate(x, y));
+							tiedNeeded--;
+						}
+						tiedLeft--;
+					}
+				}
+		}
 
-	System.out.println("Shooting in " + (char)('A' + newShot.getX()) + newShot.getY());
+		if (isVerbose())
+		{
+			StringBuilder line = new StringBuilder("Shooting in");
+			for (Coordinate c : volley)
+				line.append(' ').append((char)('A' + c.getX())).append(c.getY());
+			System.out.println(line);
+		}
 		
-	return newShot;
+		return volley.toArray(new Coordinate[0]);
 	}
-
+	
 	/**
 	 * {@inheritDoc}
-	 * It records the last hit position and last hit direction in order to make the AI select the proper shot on next turn.
+	 * Hits are queued in the target mode, to finish off the ships they belong to in the next turns.
 	 */
 	@Override
 	public void recordShot(Coordinate c, ShotResults result)
 	{
 		super.recordShot(c, result);
-		
-		// If the result is a hit it's recorded, and in case it's not the first hit of the ship (so lastHitPos was already set), the sinking direction is calculated
 		if (result == ShotResults.HIT)
-		{
-			if (lastHitPos != null)
-				lastHitDir = Directions.set(c.getX() - lastHitPos.getX(), c.getY() - lastHitPos.getY());
-			lastHitPos = c;
-		}
-		// If the result is a sunk, it resets lastHitPos and lastHitDir to start searching a new ship in the next turn
-		if (result == ShotResults.SINK)
-		{
-			lastHitPos = null;
-			lastHitDir = null;
-		}
+			targets().hit(getBoard(), c);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * Hits are queued in the target mode, like those of single shots.
+	 */
+	@Override
+	public void recordVolley(Coordinate[] shots, ShotResults[] results)
+	{
+		super.recordVolley(shots, results);
+		for (int i = 0; i < shots.length; i++)
+			if (results[i] == ShotResults.HIT)
+				targets().hit(getBoard(), shots[i]);
 	}
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
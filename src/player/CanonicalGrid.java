@@ -0,0 +1,152 @@
+package player;
+
+import java.util.Arrays;
+
+/**
+ * A shot grid in canonical orientation. A square grid looks the same under 8 symmetries (rotations
+ * and reflections), and all of them give the same canonical grid, so caches of AI decisions keyed by
+ * canonical grids need a single entry per symmetry class.
+ * <p>
+ * The grid is packed two bits per cell, one {@code long} per line, so the symmetries are computed with
+ * bit operations: reversing the order of the lines, reversing the cells within a line and swapping
+ * lines with columns. The canonical orientation is the one with the lowest lines, and the transform
+ * to it is kept to map cells between the original and the canonical grid.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public final class CanonicalGrid
+{
+	/** The largest grid that can be packed, two bits per cell in a {@code long}. */
+	public static final int MAX_SIZE = Long.SIZE / 2;
+
+	private static final long LOW_BITS = 0x5555555555555555L;
+
+	private final int size;
+	private final long[] lines;
+	private final boolean transposed;		// Lines are the columns of the original grid, rather than its rows
+	private final boolean reversedLines;	// The order of the lines is reversed
+	private final boolean reversedCells;	// The order of the cells within the lines is reversed
+	private final int hash;
+
+	/**
+	 * Canonicalises a packed grid.
+	 * @param size the size of the grid.
+	 * @param byX the grid packed by x: {@code byX[x]} holds cell {@code (x, y)} at bits {@code 2y} and {@code 2y + 1}.
+	 * @param byY the same grid packed by y.
+	 */
+	CanonicalGrid(int size, long[] byX, long[] byY)
+	{
+		this.size = size;
+
+		// Finds the transform giving the lowest lines, comparing them one at a time
+		int best = 0;
+		for (int transform = 1; transform < 8; transform++)
+			for (int i = 0; i < size; i++)
+			{
+				long line = line(transform, i, byX, byY);
+				long bestLine = line(best, i, byX, byY);
+				if (line != bestLine)
+				{
+					if (line < bestLine)
+						best = transform;
+					break;
+				}
+			}
+
+		transposed = (best & 4) != 0;
+		reversedLines = (best & 2) != 0;
+		reversedCells = (best & 1) != 0;
+		lines = new long[size];
+		for (int i = 0; i < size; i++)
+			lines[i] = line(best, i, byX, byY);
+		hash = 31 * Arrays.hashCode(lines) + size;
+	}
+
+	/**
+	 * Returns a line of a transform of the grid. Bit 2 of the transform swaps lines with columns, bit 1
+	 * reverses the order of the lines and bit 0 reverses the cells within them.
+	 */
+	private long line(int transform, int i, long[] byX, long[] byY)
+	{
+		long[] source = (transform & 4) != 0 ? byY : byX;
+		long line = source[(transform & 2) != 0 ? size - 1 - i : i];
+		return (transform & 1) != 0 ? reverse(line) : line;
+	}
+
+	/**
+	 * Reverses the order of the cells in a line.
+	 */
+	private long reverse(long line)
+	{
+		long bits = Long.reverse(line);
+		bits = ((bits >>> 1) & LOW_BITS) | ((bits & LOW_BITS) << 1);	// Restores the order of the two bits of each cell
+		return bits >>> (Long.SIZE - 2 * size);
+	}
+
+	/**
+	 * Returns the cell of the canonical grid corresponding to a cell of the original grid.
+	 * @param x the column of the original cell.
+	 * @param y the row of the original cell.
+	 * @return the canonical cell, as {@code line * size + cell}.
+	 */
+	public int toCanonical(int x, int y)
+	{
+		int line = transposed ? y : x;
+		int cell = transposed ? x : y;
+		if (reversedLines)
+			line = size - 1 - line;
+		if (reversedCells)
+			cell = size - 1 - cell;
+		return line * size + cell;
+	}
+
+	/**
+	 * Returns the cell of the original grid corresponding to a cell of the canonical grid.
+	 * @param canonical the canonical cell, as {@code line * size + cell}.
+	 * @return the original cell, as {@code x * size + y}.
+	 */
+	public int fromCanonical(int canonical)
+	{
+		int line = canonical / size;
+		int cell = canonical % size;
+		if (reversedLines)
+			line = size - 1 - line;
+		if (reversedCells)
+			cell = size - 1 - cell;
+		return transposed ? cell * size + line : line * size + cell;
+	}
+
+	/**
+	 * @return the number of cells that have been shot at
+	 */
+	public int getShotCount()
+	{
+		int shots = 0;
+		for (long line : lines)
+			shots += Long.bitCount((line | (line >>> 1)) & LOW_BITS);
+		return shots;
+	}
+
+	/**
+	 * @return the size of the grid
+	 */
+	public int getGridSize()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof CanonicalGrid))
+			return false;
+		CanonicalGrid grid = (CanonicalGrid) other;
+		return size == grid.size && hash == grid.hash && Arrays.equals(lines, grid.lines);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+}
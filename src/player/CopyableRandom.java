@@ -0,0 +1,62 @@
+package player;
+
+import java.util.Random;
+
+/**
+ * A {@link Random} whose state can be copied cheaply. It uses the same generator as {@code Random},
+ * so a given seed produces exactly the same numbers, but keeps the state in a plain field instead
+ * of hiding it: copying it doesn't need serialization. Not thread-safe.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+class CopyableRandom
+extends Random
+{
+	private static final long serialVersionUID = 1L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	private long state;		// Set by setSeed(), which Random's constructors call
+
+	/**
+	 * Constructs a generator with a seed that is very likely to differ from any other.
+	 */
+	CopyableRandom()
+	{
+		super();
+	}
+
+	/**
+	 * Constructs a generator with the specified seed.
+	 * @param seed the seed.
+	 */
+	CopyableRandom(long seed)
+	{
+		super(seed);
+	}
+
+	/**
+	 * Returns a generator in the same state as this one.
+	 * @return the copy.
+	 */
+	CopyableRandom copy()
+	{
+		CopyableRandom copy = new CopyableRandom(0);
+		copy.state = state;
+		return copy;
+	}
+
+	@Override
+	public synchronized void setSeed(long seed)
+	{
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+}
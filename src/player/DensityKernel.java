@@ -0,0 +1,151 @@
+package player;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The inner loop of the AI map of {@link CPUPlayer}: adds the weight of every ship length to every free cell once
+ * for every free window of that length covering it.
+ * <p>
+ * The map is a flat array indexed by {@code x * size + y}. Cells are free when their value is greater than 1.
+ * The number of windows of a length covering a cell only depends on the run of free cells the cell is in, along
+ * its line, and on its position in the run, so the run-length kernel adds the densities of all the lengths at once
+ * from a table of every run and position, in a single pass over the grid whatever the lengths. The scalar kernel,
+ * which walks the windows of {@link GridTables} length by length, is the reference it's checked against.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+final class DensityKernel
+{
+	private DensityKernel()
+	{
+	}
+
+	/**
+	 * Builds the table of the run-length kernel: the density every ship length adds to a free cell, summed,
+	 * by length of the run of free cells the cell is in and position in the run. A ship of length {@code L}
+	 * can start anywhere from {@code max(0, p - L + 1)} to {@code min(p, R - L)} to cover position {@code p}
+	 * of a run of length {@code R}.
+	 * @param size the size of the grid.
+	 * @param weights the weight of every ship length, indexed by length; lengths past the end have no weight.
+	 * Length 1 is ignored.
+	 * @return the table, indexed by run length and then position.
+	 */
+	static int[][] runTable(int size, int[] weights)
+	{
+		int[][] table = new int[size + 1][];
+		for (int run = 0; run <= size; run++)
+		{
+			table[run] = new int[run];
+			for (int length = 2; length < weights.length && length <= run; length++)
+				if (weights[length] != 0)
+					for (int p = 0; p < run; p++)
+						table[run][p] += weights[length] * (Math.min(p, run - length) - Math.max(0, p - length + 1) + 1);
+		}
+		return table;
+	}
+
+	/**
+	 * Adds the density of every ship length to the map at once, with the run-length kernel: every line is
+	 * split into runs of free cells, and every cell gets the entry of the table for its run and position.
+	 * @param aiMap the map.
+	 * @param size the size of the grid.
+	 * @param table the table of the weights, from {@link #runTable(int, int[])}.
+	 */
+	static void addRuns(int[] aiMap, int size, int[][] table)
+	{
+		for (int line = 0; line < 2 * size; line++)
+		{
+			int base = line < size ? line * size : line - size;
+			int step = line < size ? 1 : size;
+			int i = 0;
+			while (i < size)
+			{
+				if (aiMap[base + i * step] <= 1)
+				{
+					i++;
+					continue;
+				}
+				int start = i;
+				while (i < size && aiMap[base + i * step] > 1)
+					i++;
+				int[] densities = table[i - start];
+				for (int p = 0, cell = base + start * step; p < densities.length; p++, cell += step)
+					aiMap[cell] += densities[p];
+			}
+		}
+	}
+
+	/**
+	 * Adds the weight of a ship length to the map, window by window, with the scalar kernel.
+	 * @param aiMap the map.
+	 * @param tables the tables of the grid, covering the length.
+	 * @param length the length of the ship, at least 2.
+	 * @param weight the weight of the length.
+	 */
+	static void addWindows(int[] aiMap, GridTables tables, int length, int weight)
+	{
+		for (int window = tables.firstWindow(length); window < tables.firstWindow(length + 1); window++)
+		{
+			int[] cells = tables.windowCells(window);
+			int i = 0;
+			while (i < length && aiMap[cells[i]] > 1)
+				i++;
+			if (i == length)
+				for (int cell : cells)
+					aiMap[cell] += weight;
+		}
+	}
+
+	/**
+	 * Compares the kernels on random maps of several grid sizes and fleets, checking that they agree.
+	 * The time of the run-length kernel doesn't include building its table, which only changes when
+	 * a length is sunk for good.
+	 * @param args the number of maps per grid size (20000).
+	 */
+	public static void main(String[] args)
+	{
+		int maps = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		SplittableRandom random = new SplittableRandom(1);
+		System.out.printf("%5s %8s %14s %14s %8s%n", "grid", "lengths", "scalar ns/map", "runs ns/map", "speedup");
+		for (int maxLength : new int[] {4, 8})
+			for (int size = 10; size <= 26; size += 4)
+			{
+				int[] weights = new int[maxLength + 1];
+				Arrays.fill(weights, 2, weights.length, 1);
+				GridTables tables = GridTables.of(size, maxLength);
+				int[][] table = runTable(size, weights);
+				int[][] blank = new int[64][size * size];
+				for (int[] map : blank)
+					for (int cell = 0; cell < map.length; cell++)
+						map[cell] = random.nextInt(10) < 7 ? 2 : random.nextInt(2);		// Mostly unknown cells
+				int[] scalar = new int[size * size];
+				int[] runs = new int[size * size];
+
+				long[] times = new long[2];
+				for (int round = 0; round < 2; round++)		// The first round warms up
+				{
+					Arrays.fill(times, 0);
+					for (int m = 0; m < maps; m++)
+					{
+						int[] source = blank[m % blank.length];
+						System.arraycopy(source, 0, scalar, 0, scalar.length);
+						long start = System.nanoTime();
+						for (int length = maxLength; length > 1; length--)
+							addWindows(scalar, tables, length, weights[length]);
+						times[0] += System.nanoTime() - start;
+
+						System.arraycopy(source, 0, runs, 0, runs.length);
+						start = System.nanoTime();
+						addRuns(runs, size, table);
+						times[1] += System.nanoTime() - start;
+
+						if (!Arrays.equals(scalar, runs))
+							throw new IllegalStateException("The kernels disagree on a grid of size " + size + ".");
+					}
+				}
+				System.out.printf("%5d %8s %14.0f %14.0f %7.2fx%n", size, "2-" + maxLength, (double) times[0] / maps,
+						(double) times[1] / maps, (double) times[0] / times[1]);
+			}
+	}
+}
@@ -0,0 +1,495 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * Plays the end of a game exactly. Once few enough layouts of the enemy fleet are consistent with the shot
+ * grid, all of them are listed and the shot chosen is the one that sinks the fleet in the fewest shots on
+ * average. Each layout counts as much as the chance the random placement of {@link CPUPlayer} has of drawing it.
+ * <p>
+ * A shot splits the layouts by the answer each would give, a miss, a hit or a sink, and the search goes on
+ * in each part until the ships of every layout are all hit. A state is the set of layouts still possible plus
+ * the cells shot among theirs, so the same state is reached by shooting the same cells in any order: states
+ * already solved are kept in a transposition table of fixed size, where a new state replaces any older one in
+ * its slot. The search is cut off by branch and bound, since a layout needs at least one shot per cell of its
+ * ships left, and a cell all the layouts cover is shot before any other. The time cap of the move stops the
+ * search too, in which case the best shot fully searched is played, or the cell covered by the most layouts.
+ * <p>
+ * Until the end comes, listing the layouts would cost every move more than choosing it. When there are too many,
+ * the ones found are kept as witnesses: the layouts left can only get fewer, so as long as more witnesses than
+ * the limit still fit the shot grid, there are still too many layouts, and checking them is much cheaper than
+ * listing them again.
+ * <p>
+ * Layouts are sets of bits of a {@code long}, so at most {@value #MAX_LAYOUTS} can be solved at once, over
+ * at most as many cells. A solver isn't thread-safe: players sharing it must not choose their shots at the
+ * same time.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class EndgameSolver
+{
+	/**
+	 * The most layouts a solver can play out.
+	 */
+	public static final int MAX_LAYOUTS = 64;
+	private static final int TABLE_BITS = 18;
+	private static final int CLOCK_INTERVAL = 256;		// Nodes of the search between two looks at the clock
+	private static final int WITNESSES = 4;				// Layouts kept as witnesses, per layout of the limit
+
+	private int maxLayouts;
+	private long capNanos;
+	private List<List<int[]>> witnesses = new ArrayList<>();		// More layouts than the limit, or none
+	private int[] witnessFleet;
+
+	// The transposition table: each slot holds a state, its value and the move it was solved in
+	private long[] tableLayouts = new long[1 << TABLE_BITS];
+	private long[] tableShots = new long[1 << TABLE_BITS];
+	private double[] tableValues = new double[1 << TABLE_BITS];
+	private boolean[] tableExact = new boolean[1 << TABLE_BITS];	// Whether the value is exact rather than a lower bound
+	private int[] tableMoves = new int[1 << TABLE_BITS];
+
+	// The move being solved: the cells of the layouts and of their ships, as bits of the cells not shot yet
+	private long[] layoutCells = new long[MAX_LAYOUTS];
+	private long[][] shipCells = new long[MAX_LAYOUTS][];
+	private double[] weights = new double[MAX_LAYOUTS];
+	private Map<Long, Double> chances = new HashMap<>();		// The chance of the ships left, by the ships placed
+	private int[] cellOf = new int[Long.SIZE];			// The grid cell of every bit, as x * size + y
+	private int[][] order = new int[Long.SIZE + 1][Long.SIZE];		// The candidate shots of every depth
+	private double[][] covers = new double[Long.SIZE + 1][Long.SIZE];
+	private long[][] parts = new long[Long.SIZE + 1][3];		// The layouts of every answer to the shot of every depth
+	private double[][] partLowers = new double[Long.SIZE + 1][3];
+	private int move;
+	private long deadline;
+	private int nodes;
+	private boolean timedOut;
+	private int bestCell;
+
+	private long moves;
+	private long solvedMoves;
+	private long cutShort;
+	private long tableHits;
+
+	/**
+	 * Constructs a solver.
+	 * @param maxLayouts the most layouts the solver takes over at, up to {@value #MAX_LAYOUTS}.
+	 * @param millis the time each move can take, listing the layouts included, in milliseconds.
+	 */
+	public EndgameSolver(int maxLayouts, long millis)
+	{
+		if (maxLayouts < 1 || maxLayouts > MAX_LAYOUTS)
+			throw new IllegalArgumentException("The number of layouts must be between 1 and " + MAX_LAYOUTS + ".");
+		this.maxLayouts = maxLayouts;
+		capNanos = millis * 1_000_000;
+	}
+
+	/**
+	 * Chooses the next shot on the specified board, if the end of the game has come.
+	 * @param board the attacker's board.
+	 * @param fleet the lengths of all the ships of the enemy fleet, from the longest to the shortest.
+	 * @return the shot, or {@code null} if there are too many layouts left, or too many cells, or they couldn't
+	 * be listed in time.
+	 */
+	Coordinate chooseShot(Board board, int[] fleet)
+	{
+		deadline = System.nanoTime() + capNanos;
+		if (witnesses.size() > maxLayouts && Arrays.equals(fleet, witnessFleet))
+		{
+			ShotResults[] grid = readGrid(board);
+			int size = board.getGridSize();
+			witnesses.removeIf(layout -> !fits(layout, grid, size));
+			if (witnesses.size() > maxLayouts)
+				return null;
+		}
+
+		List<List<int[]>> layouts = new ArrayList<>();
+		boolean complete = LayoutEnumeration.enumerate(new LayoutSampler(board, fleet), WITNESSES * maxLayouts,
+				deadline, layouts);
+		if (layouts.size() > maxLayouts)
+		{
+			witnesses = layouts;
+			witnessFleet = fleet.clone();
+			return null;
+		}
+		witnesses.clear();
+		if (!complete || layouts.isEmpty() || !load(board, layouts) || !weigh(layouts, fleet, board.getGridSize()))
+			return null;
+
+		moves++;
+		move++;
+		nodes = 0;
+		timedOut = false;
+		bestCell = -1;
+		search(-1L >>> (Long.SIZE - layouts.size()), 0, Double.MAX_VALUE, 0);
+		if (timedOut)
+			cutShort++;
+		else
+			solvedMoves++;
+
+		int size = board.getGridSize();
+		int cell = cellOf[bestCell >= 0 ? bestCell : order[0][0]];
+		return new Coordinate(cell / size, cell % size);
+	}
+
+	private static ShotResults[] readGrid(Board board)
+	{
+		int size = board.getGridSize();
+		ShotResults[] grid = new ShotResults[size * size];
+		Coordinate pos = new Coordinate();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				pos.set(x, y);
+				grid[x * size + y] = board.getResultAt(pos);
+			}
+		return grid;
+	}
+
+	/**
+	 * Returns whether a layout still fits the shot grid: no ship on a miss, every hit on a ship, and the ships
+	 * hit all over exactly the ones sunk.
+	 */
+	private static boolean fits(List<int[]> layout, ShotResults[] grid, int size)
+	{
+		int hits = 0;
+		for (ShotResults result : grid)
+			if (result == ShotResults.HIT || result == ShotResults.SINK)
+				hits++;
+		for (int[] ship : layout)
+		{
+			int shipHits = 0;
+			boolean sunk = false;
+			for (int k = 0; k < ship[3]; k++)
+			{
+				ShotResults result = grid[(ship[0] + ship[2] * k) * size + ship[1] + (1 - ship[2]) * k];
+				if (result == ShotResults.MISS)
+					return false;
+				if (result != null)
+					shipHits++;
+				sunk |= result == ShotResults.SINK;
+			}
+			if (sunk != (shipHits == ship[3]))
+				return false;
+			hits -= shipHits;
+		}
+		return hits == 0;
+	}
+
+	/**
+	 * Turns the layouts into sets of bits, one per cell not shot yet that some ship may lie on.
+	 * @return {@code false} if there are too many cells, or nothing left to shoot.
+	 */
+	private boolean load(Board board, List<List<int[]>> layouts)
+	{
+		int size = board.getGridSize();
+		int[] bitOf = new int[size * size];
+		Arrays.fill(bitOf, -1);
+		int cells = 0;
+		Coordinate pos = new Coordinate();
+		for (int l = 0; l < layouts.size(); l++)
+		{
+			List<int[]> layout = layouts.get(l);
+			long[] ships = new long[layout.size()];
+			int count = 0;
+			long all = 0;
+			for (int[] ship : layout)
+			{
+				long mask = 0;
+				for (int k = 0; k < ship[3]; k++)
+				{
+					int x = ship[0] + ship[2] * k;
+					int y = ship[1] + (1 - ship[2]) * k;
+					pos.set(x, y);
+					if (board.getResultAt(pos) != null)
+						continue;		// Already hit
+					int cell = x * size + y;
+					if (bitOf[cell] < 0)
+					{
+						if (cells == Long.SIZE)
+							return false;
+						cellOf[cells] = cell;
+						bitOf[cell] = cells++;
+					}
+					mask |= 1L << bitOf[cell];
+				}
+				if (mask != 0)
+					ships[count++] = mask;
+				all |= mask;
+			}
+			if (all == 0)
+				return false;		// The whole fleet is sunk
+			shipCells[l] = Arrays.copyOf(ships, count);
+			layoutCells[l] = all;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of shots the layouts need from the specified state on, summed with their weights. The
+	 * search is given up as soon as the total can't be lower than the bound, in which case the value returned is a
+	 * lower bound, at least the bound. At the root, the best shot is stored in {@link #bestCell}.
+	 * @param layouts the layouts still possible, none of them sunk yet.
+	 * @param shot the cells already shot.
+	 * @param bound the bound.
+	 * @param depth the number of shots since the root.
+	 */
+	private double search(long layouts, long shot, double bound, int depth)
+	{
+		if (layouts == 0)
+			return 0;
+		double weight = 0;
+		double lower = 0;		// Every layout needs one shot per cell left
+		long cells = 0;
+		long union = 0;		// The cells left
+		long common = -1;
+		for (long rest = layouts; rest != 0; rest &= rest - 1)
+		{
+			int l = Long.numberOfTrailingZeros(rest);
+			cells |= layoutCells[l];
+			long left = layoutCells[l] & ~shot;
+			union |= left;
+			common &= left;
+			weight += weights[l];
+			lower += weights[l] * Long.bitCount(left);
+		}
+		if (depth > 0 && (Long.bitCount(layouts) == 1 || lower >= bound))
+			return lower;
+
+		if (++nodes % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline >= 0)
+			timedOut = true;
+		if (timedOut)
+			return bound;
+
+		long key = shot & cells;		// The shots elsewhere make no difference
+		int slot = slot(layouts, key);
+		if (depth > 0 && tableMoves[slot] == move && tableLayouts[slot] == layouts && tableShots[slot] == key
+				&& (tableExact[slot] || tableValues[slot] >= bound))
+		{
+			tableHits++;
+			return tableValues[slot];
+		}
+
+		// The cells covered by the heaviest layouts come first: they have the lowest lower bound. A cell every
+		// layout covers has to be shot anyway, and the sooner the more it tells, so it's the only one tried
+		int[] candidate = order[depth];
+		double[] cover = covers[depth];
+		int candidates = 0;
+		for (long rest = common != 0 ? Long.lowestOneBit(common) : union; rest != 0; rest &= rest - 1)
+		{
+			int bit = Long.numberOfTrailingZeros(rest);
+			double c = 0;
+			for (long l = layouts; l != 0; l &= l - 1)
+				if ((layoutCells[Long.numberOfTrailingZeros(l)] & 1L << bit) != 0)
+					c += weights[Long.numberOfTrailingZeros(l)];
+			int i = candidates++;
+			while (i > 0 && cover[i - 1] < c)
+			{
+				candidate[i] = candidate[i - 1];
+				cover[i] = cover[i - 1];
+				i--;
+			}
+			candidate[i] = bit;
+			cover[i] = c;
+		}
+
+		double best = bound;
+		long[] parts = this.parts[depth];
+		double[] partLower = partLowers[depth];
+		for (int i = 0; i < candidates; i++)
+		{
+			if (weight + lower - cover[i] >= best)
+				break;		// Neither this shot nor the ones covering less weight can do better
+			long bit = 1L << candidate[i];
+			long next = shot | bit;
+
+			// Splits the layouts into misses, hits and sinks, leaving out the ones this shot sinks for good
+			Arrays.fill(parts, 0);
+			Arrays.fill(partLower, 0);
+			for (long rest = layouts; rest != 0; rest &= rest - 1)
+			{
+				int l = Long.numberOfTrailingZeros(rest);
+				long left = layoutCells[l] & ~next;
+				int part;
+				if ((layoutCells[l] & bit) == 0)
+					part = 0;
+				else if (left == 0)
+					continue;
+				else
+				{
+					long ship = 0;
+					for (long s : shipCells[l])
+						if ((s & bit) != 0)
+							ship = s;
+					part = (ship & ~next) == 0 ? 2 : 1;
+				}
+				parts[part] |= 1L << l;
+				partLower[part] += weights[l] * Long.bitCount(left);
+			}
+
+			double slack = best - weight - (lower - cover[i]);		// How much the parts can exceed their lower bounds
+			double total = weight;
+			boolean better = true;
+			for (int p = 0; p < 3 && better; p++)
+			{
+				double partBound = partLower[p] + slack;
+				double value = search(parts[p], next, partBound, depth + 1);
+				better = value < partBound;
+				slack -= value - partLower[p];
+				total += value;
+			}
+			if (timedOut)
+				return bound;
+			if (better && total < best)
+			{
+				best = total;
+				if (depth == 0)
+					bestCell = candidate[i];
+			}
+		}
+
+		tableMoves[slot] = move;
+		tableLayouts[slot] = layouts;
+		tableShots[slot] = key;
+		tableValues[slot] = best;
+		tableExact[slot] = best < bound;
+		return best;
+	}
+
+	/**
+	 * Weighs the layouts by their chance of being drawn by a random placement like the one of {@link CPUPlayer}:
+	 * the ships placed one at a time, from the longest to the shortest as {@link Board#getShipLengths()} lists
+	 * them, each in a window drawn evenly among the ones still free. Ships of the same length may have been placed
+	 * in either order. The weights add up to the number of layouts.
+	 * @return {@code false} if the deadline passed first, or the layouts have too many ships.
+	 */
+	private boolean weigh(List<List<int[]>> layouts, int[] fleet, int size)
+	{
+		GridTables tables = GridTables.of(size, Arrays.stream(fleet).max().orElse(1));
+		int[] taken = new int[size * size];
+		nodes = 0;
+		timedOut = false;
+		double sum = 0;
+		for (int l = 0; l < layouts.size(); l++)
+		{
+			List<int[]> layout = layouts.get(l);
+			if (layout.size() >= Long.SIZE)
+				return false;
+			int[] windows = new int[layout.size()];
+			for (int s = 0; s < windows.length; s++)
+			{
+				int[] ship = layout.get(s);
+				windows[s] = tables.window(ship[0], ship[1], ship[2] == 1, ship[3]);
+			}
+			chances.clear();
+			weights[l] = chance(tables, fleet, 0, windows, 0, taken);
+			if (timedOut)
+				return false;
+			sum += weights[l];
+		}
+		for (int l = 0; l < layouts.size(); l++)
+			weights[l] *= layouts.size() / sum;
+		return true;
+	}
+
+	/**
+	 * Returns the chance of placing the ships of a layout from the specified one of the fleet on, with the ones
+	 * before already placed: the chance of each ship of the right length left to go next, times the chance of the
+	 * others after it. Ships of the same length can be placed in any order, so the same ships are placed first
+	 * along many paths: the chance of the rest is worked out once for each set of ships placed, in
+	 * {@link #chances}. The search stops, setting {@link #timedOut}, when the deadline passes.
+	 * @param placed the ships of the layout already placed, as bits.
+	 */
+	private double chance(GridTables tables, int[] fleet, int next, int[] windows, long placed, int[] taken)
+	{
+		if (next == fleet.length)
+			return 1;
+		Double known = chances.get(placed);
+		if (known != null)
+			return known;
+		if (++nodes % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline >= 0)
+			timedOut = true;
+		if (timedOut)
+			return 0;
+		int length = fleet[next];
+		int free = 0;
+		for (int w = tables.firstWindow(length); w < tables.firstWindow(length + 1); w++)
+		{
+			boolean fits = true;
+			for (int cell : tables.windowCells(w))
+				fits &= taken[cell] == 0;
+			if (fits)
+				free++;
+		}
+
+		double chance = 0;
+		for (int s = 0; s < windows.length; s++)
+		{
+			if ((placed & 1L << s) != 0 || tables.windowCells(windows[s]).length != length)
+				continue;
+			mark(tables, windows[s], taken, 1);
+			chance += chance(tables, fleet, next + 1, windows, placed | 1L << s, taken) / free;
+			mark(tables, windows[s], taken, -1);
+		}
+		chances.put(placed, chance);
+		return chance;
+	}
+
+	private static void mark(GridTables tables, int window, int[] taken, int delta)
+	{
+		for (int cell : tables.windowCells(window))
+			taken[cell] += delta;
+		for (int cell : tables.windowHalo(window))
+			taken[cell] += delta;
+	}
+
+	private static int slot(long layouts, long shot)
+	{
+		long hash = layouts * 0x9E3779B97F4A7C15L ^ shot * 0xC2B2AE3D27D4EB4FL;
+		return (int) (hash ^ hash >>> 29) & (1 << TABLE_BITS) - 1;
+	}
+
+	/**
+	 * @return the number of moves chosen by this solver
+	 */
+	public long getMoves()
+	{
+		return moves;
+	}
+
+	/**
+	 * @return the number of moves solved exactly, before the time cap
+	 */
+	public long getSolvedMoves()
+	{
+		return solvedMoves;
+	}
+
+	/**
+	 * @return the number of moves cut short by the time cap, which shot the cell covered by the most layouts
+	 */
+	public long getMovesCutShort()
+	{
+		return cutShort;
+	}
+
+	/**
+	 * @return the number of states found in the transposition table
+	 */
+	public long getTableHits()
+	{
+		return tableHits;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d moves, %d solved, %d cut short by the time cap, %d states reused",
+				getMoves(), getSolvedMoves(), getMovesCutShort(), getTableHits());
+	}
+}
@@ -0,0 +1,204 @@
+package player;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup tables describing the geometry of a grid: the neighbourhood of every cell and every window a ship
+ * can lie in, with the cells around it that must stay free of other ships. The tables are immutable,
+ * built once per grid size and longest ship, and shared by every board and player using that grid, so
+ * that placements and AI maps can walk precomputed lists instead of checking bounds cell by cell.
+ * <p>
+ * Cells are identified by their index {@code x * size + y}.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+final class GridTables
+{
+	private static final Map<Long, GridTables> CACHE = new ConcurrentHashMap<>();
+
+	private final int size;
+	private final int maxShipLength;
+	private final int[] cellX;
+	private final int[] cellY;
+	private final int[][] neighbours;		// By cell: the other cells of its 3x3 box
+	private final int[] firstWindow;		// By length: the first window of that length, windows being sorted by length
+	private final int[][] windowIndex;	// By length, then cell * 2 + (horizontal ? 0 : 1): the window starting there, or -1
+	private final int[][] windowCells;	// By window: its cells, from the top left one
+	private final int[][] windowHalo;		// By window: the cells around it
+
+	/**
+	 * Returns the tables of the specified grid.
+	 * @param gridSize the size of the grid.
+	 * @param maxShipLength the longest ship the windows must cover. Lengths beyond the grid size are ignored.
+	 * @return the tables, shared with every other caller asking for the same grid.
+	 */
+	static GridTables of(int gridSize, int maxShipLength)
+	{
+		int length = Math.max(1, Math.min(maxShipLength, gridSize));
+		return CACHE.computeIfAbsent(((long) gridSize << 32) | length, key -> new GridTables(gridSize, length));
+	}
+
+	private GridTables(int size, int maxShipLength)
+	{
+		this.size = size;
+		this.maxShipLength = maxShipLength;
+
+		int cells = size * size;
+		cellX = new int[cells];
+		cellY = new int[cells];
+		neighbours = new int[cells][];
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				int cell = x * size + y;
+				cellX[cell] = x;
+				cellY[cell] = y;
+				neighbours[cell] = box(x - 1, y - 1, x + 1, y + 1, cell, cell);
+			}
+
+		// Counts the windows: every length fits in (size - length + 1) positions per row and per column
+		int windows = 0;
+		firstWindow = new int[maxShipLength + 2];
+		for (int length = 1; length <= maxShipLength; length++)
+		{
+			firstWindow[length] = windows;
+			windows += (size - length + 1) * size * (length == 1 ? 1 : 2);
+		}
+		firstWindow[maxShipLength + 1] = windows;
+
+		windowIndex = new int[maxShipLength + 1][];
+		windowCells = new int[windows][];
+		windowHalo = new int[windows][];
+		int window = 0;
+		for (int length = 1; length <= maxShipLength; length++)
+		{
+			windowIndex[length] = new int[cells * 2];
+			Arrays.fill(windowIndex[length], -1);
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+				{
+					int cell = x * size + y;
+					if (x + length <= size)
+						window = addWindow(window, length, cell, x, y, 1, 0);
+					if (length > 1 && y + length <= size)
+						window = addWindow(window, length, cell, x, y, 0, 1);
+				}
+		}
+	}
+
+	private int addWindow(int window, int length, int cell, int x, int y, int dx, int dy)
+	{
+		windowIndex[length][cell * 2 + dy] = window;
+		windowCells[window] = new int[length];
+		for (int k = 0; k < length; k++)
+			windowCells[window][k] = (x + dx * k) * size + y + dy * k;
+		windowHalo[window] = box(x - 1, y - 1, x + dx * (length - 1) + 1, y + dy * (length - 1) + 1,
+				cell, windowCells[window][length - 1]);
+		return window + 1;
+	}
+
+	/**
+	 * Lists the cells of a box, clipped to the grid, except those of the inner box from {@code first} to {@code last}.
+	 */
+	private int[] box(int x1, int y1, int x2, int y2, int first, int last)
+	{
+		int[] found = new int[(x2 - x1 + 1) * (y2 - y1 + 1)];
+		int count = 0;
+		for (int x = Math.max(0, x1); x <= Math.min(size - 1, x2); x++)
+			for (int y = Math.max(0, y1); y <= Math.min(size - 1, y2); y++)
+			{
+				boolean inside = x >= cellX[first] && x <= cellX[last] && y >= cellY[first] && y <= cellY[last];
+				if (!inside)
+					found[count++] = x * size + y;
+			}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * @return the size of the grid
+	 */
+	int getGridSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the longest ship the windows cover
+	 */
+	int getMaxShipLength()
+	{
+		return maxShipLength;
+	}
+
+	/**
+	 * @return the column of the specified cell
+	 */
+	int cellX(int cell)
+	{
+		return cellX[cell];
+	}
+
+	/**
+	 * @return the row of the specified cell
+	 */
+	int cellY(int cell)
+	{
+		return cellY[cell];
+	}
+
+	/**
+	 * Returns the cells touching the specified one, diagonally included. The array must not be modified.
+	 * @param cell the cell.
+	 * @return the neighbouring cells.
+	 */
+	int[] neighbours(int cell)
+	{
+		return neighbours[cell];
+	}
+
+	/**
+	 * Returns the first window of the specified length. The windows of a length are numbered
+	 * from {@code firstWindow(length)} to {@code firstWindow(length + 1) - 1}.
+	 * @param length the ship length, up to one more than the longest ship.
+	 * @return the first window.
+	 */
+	int firstWindow(int length)
+	{
+		return firstWindow[length];
+	}
+
+	/**
+	 * Returns the window of a ship whose top left cell is at the specified position.
+	 * @param x the column of the top left cell.
+	 * @param y the row of the top left cell.
+	 * @param horizontal whether the ship extends to the right rather than down. Ignored for ships of length 1.
+	 * @param length the length of the ship, up to the longest ship of the tables.
+	 * @return the window, or {@code -1} if the ship doesn't fit in the grid there.
+	 */
+	int window(int x, int y, boolean horizontal, int length)
+	{
+		return windowIndex[length][(x * size + y) * 2 + (horizontal || length == 1 ? 0 : 1)];
+	}
+
+	/**
+	 * Returns the cells of a window, from its top left one. The array must not be modified.
+	 * @param window the window.
+	 * @return the cells.
+	 */
+	int[] windowCells(int window)
+	{
+		return windowCells[window];
+	}
+
+	/**
+	 * Returns the cells around a window, which can't hold any other ship. The array must not be modified.
+	 * @param window the window.
+	 * @return the cells.
+	 */
+	int[] windowHalo(int window)
+	{
+		return windowHalo[window];
+	}
+}
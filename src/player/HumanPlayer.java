@@ -1,6 +1,7 @@
 package player;
 
-import main.*;
+import java.util.InputMismatchException;
+
 import types.Coordinate;
 import types.Directions;
 import types.ShotResults;
@@ -13,6 +14,7 @@ import types.ShotResults;
 public class HumanPlayer extends AbstractPlayer
 {	
 	private static final long serialVersionUID = 1L;
+	private transient MoveInput input;
 	
 	/**
 	 * Constructs a new player object with the specified player name and the specified board size.
@@ -25,71 +27,105 @@ public class HumanPlayer extends AbstractPlayer
 		super(playerName, boardSize);
 	}
 	
+	/**
+	 * Constructs a deep copy of the specified player.
+	 * @param other the player to copy.
+	 */
+	public HumanPlayer(HumanPlayer other)
+	{
+		super(other);
+		this.input = other.input;
+	}
+	
+	/**
+	 * Constructs a player that chooses shots on behalf of another one, on the specified board.
+	 * @param shooter the player to act for.
+	 * @param board the board to choose the shots on.
+	 */
+	private HumanPlayer(HumanPlayer shooter, Board board)
+	{
+		super(shooter, board);
+		this.input = shooter.input;
+	}
+	
+	/**
+	 * Sets where the moves of this player are read from. Players read from the console unless told otherwise,
+	 * and again after being loaded from a save file.
+	 * @param input the input, or {@code null} for the console.
+	 */
+	public void setInput(MoveInput input)
+	{
+		this.input = input;
+	}
+	
+	private MoveInput input()
+	{
+		return input != null ? input : MoveInput.console();
+	}
+	
+	@Override
+	public HumanPlayer copy()
+	{
+		return new HumanPlayer(this);
+	}
+	
+	@Override
+	public HumanPlayer aimAt(Board target)
+	{
+		return new HumanPlayer(this, target.receivedView());
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * This method will prompt the human player for a ship placement until all the ships have been placed.
+	 * @throws InputMismatchException if the moves are scripted and a ship can't be placed as the script says.
 	 */
 	@Override
 	public void placeShips(int[] lengths)
 	{
-		System.out.println("\n" + getPlayerName() + ", please positions your ships.\n");
+		MoveInput input = input();
+		prompt(input, "\n" + getPlayerName() + ", please positions your ships.\n\n");
 		
+		Coordinate position = new Coordinate();
 		for (int i = 0; i < lengths.length; i++)
 		{
 			// Show the ship board to help player in selecting the new place
-			getBoard().displayShipGrid();
+			if (isVerbose())
+				getBoard().displayShipGrid();
 
 			// Asks for new placing coordinate and direction
-			Coordinate position = new Coordinate();
-            Directions direction;
 			while (true)
 			{
-                if (lengths[i] == 1) // 1-long ships don't need the user to input a direction
-                {
-    				System.out.println(getPlayerName() + ", input the coordinate to place a 1 tile ship at.");
-    				
-    				String input = null;		
-    				while (true)
-    				{
-    					System.out.print("\nAccepted inputs look like \"A3\" or \"D5\": ");
-    					input = Game.scan.nextLine();
-    					
-    					if (input.matches("[A-Za-z]\\d{1,2}")) break;
-    					else System.out.println("Invalid input. Please try again.");
-    				}
-    				System.out.println();
-    				
-    				int x = Character.getNumericValue(input.charAt(0)) - Character.getNumericValue('A');
-    				int y = Integer.parseInt(input.substring(1));
-    				
-    				position.set(x, y);
-    				direction = Directions.UP;  // Adding a "NONE" direction and special-casing it in the ship placement code isn't worth it
-                }
-                else
-                {
-    				System.out.println(getPlayerName() + ", input the coordinate to place a " + lengths[i] + 
-    						" tiles ship at,\nas well as the direction to place it in (R=right, L=left, U=up, D=down).");
-    				
-    				String input = null;		
-    				while (true)
-    				{
-    					System.out.print("\nAccepted inputs look like \"A3 R\" or \"D5 D\": ");
-    					input = Game.scan.nextLine();
-    					if (input.matches("(?i)[A-Za-z]\\d{1,2}\\s(?:l|r|u|d)")) break;
-    					else System.out.println("Invalid input. Please try again.");
-    				}
-    				System.out.println();
-    				
-    				String[] inputdata = input.split("\\s");
-    				int x = Character.getNumericValue(inputdata[0].charAt(0)) - Character.getNumericValue('A');
-    				int y = Integer.parseInt(inputdata[0].substring(1));
-    				
-    				position.set(x, y);
-    				direction = Directions.fromFirstLetter(inputdata[1].toUpperCase());
-                }
-          		boolean validShip = getBoard().placeShip(position, direction, lengths[i]);
-  				if (validShip) break;
-  				else System.out.println("The specified ship could not be placed. Please try again.\n");
+				Directions direction;
+				if (lengths[i] == 1) // 1-long ships don't need the user to input a direction
+				{
+					prompt(input, getPlayerName() + ", input the coordinate to place a 1 tile ship at.\n");
+					while (true)
+					{
+						prompt(input, "\nAccepted inputs look like \"A3\" or \"D5\": ");
+						nextLine(input);
+						if (input.readCoordinate(position) && input.readEnd()) break;
+						else invalid(input);
+					}
+					direction = Directions.UP;  // Adding a "NONE" direction and special-casing it in the ship placement code isn't worth it
+				}
+				else
+				{
+					prompt(input, getPlayerName() + ", input the coordinate to place a " + lengths[i] + 
+							" tiles ship at,\nas well as the direction to place it in (R=right, L=left, U=up, D=down).\n");
+					while (true)
+					{
+						prompt(input, "\nAccepted inputs look like \"A3 R\" or \"D5 D\": ");
+						nextLine(input);
+						if (input.readCoordinate(position) && (direction = input.readDirection()) != null && input.readEnd()) break;
+						else invalid(input);
+					}
+				}
+				prompt(input, "\n");
+				
+				boolean validShip = getBoard().placeShip(position, direction, lengths[i]);
+				if (validShip) break;
+				else rejected(input, "The specified ship could not be placed there.\n");
 			}
 		}
 	}
@@ -97,10 +133,62 @@ public class HumanPlayer extends AbstractPlayer
 	@Override
 	public Coordinate getShot()
 	{
-		System.out.println("\nIt's " + getPlayerName() +"'s turn.");
+		prompt(input(), "\nIt's " + getPlayerName() +"'s turn.\n");
+		if (isVerbose())
+			getBoard().displayShotGrid();
+		
+		Coordinate newShot = readShot(null);
+
+		if (newShot != null && isVerbose())
+			System.out.println("Shooting in " + (char)('A' + newShot.getX()) + newShot.getY());
+
+		return newShot;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This method will prompt the human player for every shot of the volley.
+	 */
+	@Override
+	public Coordinate[] getVolley(int shots)
+	{
+		shots = Math.min(shots, countUnknownCells());
+		prompt(input(), "\nIt's " + getPlayerName() +"'s turn.\n");
+		if (isVerbose())
+			getBoard().displayShotGrid();
+		prompt(input(), "Salvo! You have " + shots + " shots this turn.\n");
 		
-		getBoard().displayShotGrid();
+		int size = getBoard().getGridSize();
+		boolean[][] chosen = new boolean[size][size];
+		Coordinate[] volley = new Coordinate[shots];
+		for (int i = 0; i < shots; i++)
+		{
+			volley[i] = readShot(chosen);
+			if (volley[i] == null)
+				return null;
+			chosen[volley[i].getX()][volley[i].getY()] = true;
+		}
+		
+		if (isVerbose())
+		{
+			StringBuilder line = new StringBuilder("Shooting in");
+			for (Coordinate c : volley)
+				line.append(' ').append((char)('A' + c.getX())).append(c.getY());
+			System.out.println(line);
+		}
 		
+		return volley;
+	}
+
+	/**
+	 * Prompts the player for a coordinate to shoot at until a valid one is given.
+	 * @param chosen the cells already chosen for the current volley, or {@code null} for a single shot.
+	 * @return the coordinate, or {@code null} if the player wants to exit the game or the script is over.
+	 * @throws InputMismatchException if the moves are scripted and the shot can't be played.
+	 */
+	private Coordinate readShot(boolean[][] chosen)
+	{
+		MoveInput input = input();
 		Coordinate newShot = new Coordinate();
 
 		while (true)
@@ -108,76 +196,104 @@ public class HumanPlayer extends AbstractPlayer
 			// Asks for new placing coordinate and direction.
 			// Word "save" (case insensitive) can be used to stop immediately the game and save the state
 			
-			System.out.print("\nInput a coordinate, or \"exit\" to quit (and save the game if you wish): ");
+			prompt(input, "\nInput a coordinate, or \"exit\" to quit (and save the game if you wish): ");
 			
-			String input = Game.scan.nextLine();
-			
-			if (input.equalsIgnoreCase("exit"))
+			if (!input.nextLine() || input.isWord("exit"))
+				return null;
+			else if (input.readCoordinate(newShot) && input.readEnd())
 			{
-				newShot = null;
-				break;
-			}
-			else if (input.matches("[A-Za-z]\\d{1,2}"))
-			{
-				int x = Character.getNumericValue(input.charAt(0)) - Character.getNumericValue('A');
-				int y = Integer.parseInt(input.substring(1));
+				int x = newShot.getX();
+				int y = newShot.getY();
 				
 				if (getBoard().isOutside(x, y))
-					System.out.println("Input coordinates are out of bounds.\n");
+					rejected(input, "Input coordinates are out of bounds.\n");
+				else if (chosen != null && chosen[x][y])
+					rejected(input, "The specified coordinate is already part of this salvo.\n");
+				else if (getBoard().getResultAt(newShot) == null)
+					return newShot;
 				else
-				{
-					newShot.set(x, y);
-					if (getBoard().getResultAt(newShot) == null) break;
-					else System.out.println("The specified coordinate has already been targeted.\n");	
+					rejected(input, "The specified coordinate has already been targeted.\n");
 					// Just to give a little help to an absent-minded player ;)
-				}
 			}
 			else
-				System.out.println("Invalid input. Please try again.");
+				invalid(input);
 		}
+	}
 
-		if (newShot != null)
-			System.out.println("Shooting in " + (char)('A' + newShot.getX()) + newShot.getY());
+	/**
+	 * Reads the next line of a placement.
+	 * @throws InputMismatchException if the input is over, since ships must be placed.
+	 */
+	private void nextLine(MoveInput input)
+	{
+		if (!input.nextLine())
+			throw new InputMismatchException("The input ended before all the ships of " + getPlayerName() + " were placed.");
+	}
 
-		return newShot;
+	/**
+	 * Tells the player a line couldn't be parsed, and where.
+	 * @throws InputMismatchException if the moves are scripted.
+	 */
+	private void invalid(MoveInput input)
+	{
+		if (input.isScripted())
+			throw input.mistake(null);
+		System.out.println("Invalid input. " + input.getError());
+	}
+
+	/**
+	 * Tells the player a move was rejected. Scripted moves aren't asked again, so the game stops.
+	 * @throws InputMismatchException if the moves are scripted.
+	 */
+	private void rejected(MoveInput input, String message)
+	{
+		if (input.isScripted())
+			throw input.mistake(message.trim());
+		System.out.println(message);
+	}
+
+	/**
+	 * Prints the specified request for input. Someone typing the moves is always asked for them, whereas
+	 * scripted moves are only asked for if the player isn't silent.
+	 */
+	private void prompt(MoveInput input, String text)
+	{
+		if (isVerbose() || !input.isScripted())
+			System.out.print(text);
 	}
 
 	/**
 	 * {@inheritDoc}
-	 * It waits for a key to be pressed in order to let the player read the result of its shot.
+	 * It waits for a key to be pressed in order to let the player read the result of its shot, unless the moves are scripted.
 	 */
 	@Override
 	public void recordShot(Coordinate c, ShotResults result)
 	{
 		super.recordShot(c, result);
 		
-		System.out.print("Press enter to continue. ");
-		Game.scan.nextLine();
+		waitForEnter();
 	}
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+	/**
+	 * {@inheritDoc}
+	 * It waits for a key to be pressed in order to let the player read the results of the volley, unless the moves are scripted.
+	 */
+	@Override
+	public void recordVolley(Coordinate[] shots, ShotResults[] results)
+	{
+		super.recordVolley(shots, results);
+		
+		waitForEnter();
+	}
 
+	/**
+	 * Waits for the player to press enter, at the console.
+	 */
+	private void waitForEnter()
+	{
+		if (input().isScripted())
+			return;
+		System.out.print("Press enter to continue. ");
+		input().nextLine();
+	}
+}
@@ -0,0 +1,208 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Lists all the layouts a {@link LayoutSampler} could draw, for the {@link EndgameSolver}, with a depth-first
+ * search over the windows of the sampler. The state of the search is kept apart from the sampler, so that the
+ * sampler can still be shared between threads.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+class LayoutEnumeration
+{
+	private static final int CLOCK_INTERVAL = 1024;	// Steps of the enumeration between two looks at the clock
+
+	// The sampler's windows, shared
+	private int size;
+	private List<int[]> sunkShips;
+	private int[] remainingLengths;
+	private List<List<int[]>> windows;
+	private int[][] clusterOf;
+	private int clusters;
+
+	private int limit;
+	private long deadline;
+	private List<List<int[]>> layouts;
+	private int[][] taken;	// How many of the ships placed cover or surround every cell
+	private boolean[] covered;
+	private int uncovered;
+	private int[][] ships;
+	private int[] chosen;		// Index of the window of every ship
+	private List<List<int[]>> coveringWindows = new ArrayList<>();	// The windows covering every group of hits
+	private int steps;
+	private boolean stopped;
+
+	private LayoutEnumeration(LayoutSampler sampler, int limit, long deadline, List<List<int[]>> layouts)
+	{
+		size = sampler.size;
+		sunkShips = sampler.sunkShips;
+		remainingLengths = sampler.remainingLengths;
+		windows = sampler.windows;
+		clusterOf = sampler.clusterOf;
+		clusters = sampler.clusters;
+		taken = new int[size][size];
+		covered = new boolean[clusters];
+		uncovered = clusters;
+		ships = new int[remainingLengths.length][];
+		chosen = new int[remainingLengths.length];
+		this.limit = limit;
+		this.deadline = deadline;
+		this.layouts = layouts;
+		for (int c = 0; c < clusters; c++)
+			coveringWindows.add(new ArrayList<>());
+		for (List<int[]> byLength : windows)
+			for (int[] w : byLength)
+			{
+				int last = -1;
+				for (int k = 0; k < w[3]; k++)
+				{
+					int cluster = clusterOf[w[0] + w[2] * k][w[1] + (1 - w[2]) * k];
+					if (cluster >= 0 && cluster != last)
+						coveringWindows.get(cluster).add(w);
+					last = cluster;
+				}
+			}
+	}
+
+	/**
+	 * Lists every layout of the whole fleet, if there are no more than the specified number of them. Ships of the
+	 * same length are interchangeable, so every layout is listed once. The layouts are in the same format as the ones
+	 * drawn by {@link LayoutSampler#sample(Random, int[][], List)}, and their arrays are shared as well.
+	 * @param sampler the sampler, holding the windows the ships can lie in.
+	 * @param limit the most layouts to list.
+	 * @param deadline when to give up, as a {@link System#nanoTime()} value.
+	 * @param layouts receives the layouts, after being cleared.
+	 * @return {@code true} if all the layouts were listed, {@code false} if there are more than the limit or the
+	 * deadline passed first, in which case the list is incomplete.
+	 */
+	static boolean enumerate(LayoutSampler sampler, int limit, long deadline, List<List<int[]>> layouts)
+	{
+		layouts.clear();
+		LayoutEnumeration enumeration = new LayoutEnumeration(sampler, limit, deadline, layouts);
+		enumeration.place(enumeration.remainingLengths.length - 1);
+		return !enumeration.stopped;
+	}
+
+	/**
+	 * Places the ships from the specified one down to the shortest, in every way, longest first.
+	 */
+	private void place(int s)
+	{
+		if (++steps % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline >= 0)
+			stopped = true;
+		if (stopped || !coverable(s))
+			return;
+		if (s < 0)
+		{
+			if (layouts.size() == limit)
+			{
+				stopped = true;
+				return;
+			}
+			List<int[]> layout = new ArrayList<>(sunkShips.size() + ships.length);
+			layout.addAll(sunkShips);
+			layout.addAll(Arrays.asList(ships));
+			layouts.add(layout);
+			return;
+		}
+
+		int length = remainingLengths[s];
+		List<int[]> candidates = windows.get(length);
+		boolean twin = s + 1 < remainingLengths.length && remainingLengths[s + 1] == length;
+		for (int i = twin ? chosen[s + 1] + 1 : 0; i < candidates.size() && !stopped; i++)
+		{
+			int[] w = candidates.get(i);
+			if (!fits(w, length))
+				continue;
+			int before = uncovered;
+			cover(w, length, true);
+			mark(w, length, 1);
+			ships[s] = w;
+			chosen[s] = i;
+			place(s - 1);
+			mark(w, length, -1);
+			if (uncovered != before)
+				cover(w, length, false);
+		}
+	}
+
+	/**
+	 * Returns whether every group of hits not covered yet can still be covered by one of the ships left to place,
+	 * from the specified one down.
+	 */
+	private boolean coverable(int s)
+	{
+		if (uncovered == 0 || s < 0)
+			return uncovered == 0;
+		for (int c = 0; c < clusters; c++)
+		{
+			if (covered[c])
+				continue;
+			boolean found = false;
+			for (int i = 0; i < coveringWindows.get(c).size() && !found; i++)
+			{
+				int[] w = coveringWindows.get(c).get(i);
+				if (w[3] <= remainingLengths[s] && fits(w, w[3]))		// The lengths are sorted
+					for (int k = 0; k <= s && !found; k++)
+						found = remainingLengths[k] == w[3];
+			}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether a window is free of the ships placed and of the groups of hits they cover.
+	 */
+	private boolean fits(int[] w, int length)
+	{
+		int dx = w[2];
+		int dy = 1 - w[2];
+		for (int k = 0; k < length; k++)
+		{
+			int x = w[0] + dx * k;
+			int y = w[1] + dy * k;
+			if (taken[x][y] > 0 || clusterOf[x][y] >= 0 && covered[clusterOf[x][y]])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the groups of hits under a window as covered, or uncovers them. A ship may join several groups.
+	 */
+	private void cover(int[] w, int length, boolean cover)
+	{
+		int dx = w[2];
+		int dy = 1 - w[2];
+		for (int k = 0; k < length; k++)
+		{
+			int cluster = clusterOf[w[0] + dx * k][w[1] + dy * k];
+			if (cluster >= 0 && covered[cluster] != cover)
+			{
+				covered[cluster] = cover;
+				uncovered += cover ? -1 : 1;
+			}
+		}
+	}
+
+	private void mark(int[] w, int length, int delta)
+	{
+		int dx = w[2];
+		int dy = 1 - w[2];
+		for (int i = w[0] - 1; i <= w[0] + dx * (length - 1) + 1; i++)
+			for (int j = w[1] - 1; j <= w[1] + dy * (length - 1) + 1; j++)
+				if (!outside(i, j))
+					taken[i][j] += delta;
+	}
+
+	private boolean outside(int x, int y)
+	{
+		return x < 0 || y < 0 || x >= size || y >= size;
+	}
+}
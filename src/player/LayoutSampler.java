@@ -0,0 +1,303 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * Samples fleet layouts consistent with what an attacker knows of the defender's board: no ship on a
+ * missed cell, every hit covered by a ship, ships not sunk yet still having a cell left to hit, and
+ * ships never touching each other.
+ * <p>
+ * Sunk ships are fixed in place, since the no-touch rule makes every group of hits containing a
+ * sink a single, whole ship. All the windows the other ships can lie in are computed once, so the
+ * sampler can be shared by any number of threads, each drawing layouts with its own random
+ * number generator.
+ * <p>
+ * Late in a game there may be few enough layouts left to list them all, which {@link LayoutEnumeration} does
+ * with a depth-first search over the same windows.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class LayoutSampler
+{
+	private static final int MAX_ATTEMPTS = 1000;
+
+	// Read by LayoutEnumeration too
+	int size;
+	List<int[]> sunkShips = new ArrayList<>();
+	int[] remainingLengths;
+	List<List<int[]>> windows;	// By ship length, in the same format as the ships of a layout
+	int[][] clusterOf;			// Index of the open group of hits of every cell, or -1
+	int clusters;
+
+	/**
+	 * Prepares a sampler for the enemy fleet, as seen from the shot grid of the specified board.
+	 * @param board the attacker's board.
+	 * @param fleet the lengths of all the ships of the enemy fleet.
+	 */
+	public LayoutSampler(Board board, int[] fleet)
+	{
+		size = board.getGridSize();
+		ShotResults[][] grid = new ShotResults[size][size];
+		Coordinate pos = new Coordinate();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				pos.set(x, y);
+				grid[x][y] = board.getResultAt(pos);
+			}
+
+		// Groups the hits: sunk groups are whole ships, the other ones still need to be covered
+		clusterOf = new int[size][size];
+		boolean[][] water = new boolean[size][size];
+		List<Integer> remaining = new ArrayList<>();
+		for (int length : fleet)
+			remaining.add(length);
+		boolean[][] visited = new boolean[size][size];
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				clusterOf[x][y] = -1;
+				if (grid[x][y] == ShotResults.MISS)
+					water[x][y] = true;
+			}
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				if (visited[x][y] || !isHit(grid[x][y]))
+					continue;
+				List<int[]> group = collect(grid, visited, x, y);
+				boolean sunk = false;
+				for (int[] c : group)
+					sunk |= grid[c[0]][c[1]] == ShotResults.SINK;
+
+				if (sunk)
+				{
+					int[] first = group.get(0);		// The group is sorted, so this is the top left cell
+					boolean horizontal = group.size() > 1 && group.get(1)[1] == first[1];
+					sunkShips.add(new int[] {first[0], first[1], horizontal ? 1 : 0, group.size()});
+					remaining.remove(Integer.valueOf(group.size()));
+					for (int[] c : group)		// The ship and its surroundings can't hold any other ship
+						for (int i = c[0] - 1; i <= c[0] + 1; i++)
+							for (int j = c[1] - 1; j <= c[1] + 1; j++)
+								if (!outside(i, j))
+									water[i][j] = true;
+				}
+				else
+				{
+					for (int[] c : group)
+						clusterOf[c[0]][c[1]] = clusters;
+					clusters++;
+				}
+			}
+
+		remainingLengths = new int[remaining.size()];
+		int maxLength = 0;
+		for (int i = 0; i < remainingLengths.length; i++)
+		{
+			remainingLengths[i] = remaining.get(i);
+			maxLength = Math.max(maxLength, remainingLengths[i]);
+		}
+		Arrays.sort(remainingLengths);
+
+		// Finds every window a remaining ship can lie in
+		windows = new ArrayList<>();
+		windows.add(new ArrayList<>());		// No ship has length 0
+		for (int length = 1; length <= maxLength; length++)
+		{
+			windows.add(new ArrayList<>());
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+				{
+					addWindow(grid, water, length, x, y, true);
+					if (length > 1)
+						addWindow(grid, water, length, x, y, false);
+				}
+		}
+	}
+
+	private void addWindow(ShotResults[][] grid, boolean[][] water, int length, int x, int y, boolean horizontal)
+	{
+		int dx = horizontal ? 1 : 0;
+		int dy = horizontal ? 0 : 1;
+		if (outside(x + dx * (length - 1), y + dy * (length - 1)))
+			return;
+
+		int hits = 0;
+		for (int k = 0; k < length; k++)
+		{
+			int cx = x + dx * k;
+			int cy = y + dy * k;
+			if (water[cx][cy])
+				return;
+			if (isHit(grid[cx][cy]))
+				hits++;
+		}
+		if (hits == length)
+			return;		// The ship would have been sunk already
+
+		// A hit next to the ship would belong to another ship touching it
+		for (int i = x - 1; i <= x + dx * (length - 1) + 1; i++)
+			for (int j = y - 1; j <= y + dy * (length - 1) + 1; j++)
+			{
+				boolean inside = (i - x) * dy == 0 && (j - y) * dx == 0 && i >= x && j >= y
+						&& i <= x + dx * (length - 1) && j <= y + dy * (length - 1);
+				if (!inside && !outside(i, j) && isHit(grid[i][j]))
+					return;
+			}
+
+		windows.get(length).add(new int[] {x, y, horizontal ? 1 : 0, length});
+	}
+
+	/**
+	 * Collects the group of adjacent hits containing the specified cell, sorted from the top left.
+	 */
+	private List<int[]> collect(ShotResults[][] grid, boolean[][] visited, int x, int y)
+	{
+		List<int[]> group = new ArrayList<>();
+		group.add(new int[] {x, y});
+		visited[x][y] = true;
+		for (int i = 0; i < group.size(); i++)
+		{
+			int[] c = group.get(i);
+			int[][] near = {{c[0] + 1, c[1]}, {c[0] - 1, c[1]}, {c[0], c[1] + 1}, {c[0], c[1] - 1}};
+			for (int[] n : near)
+				if (!outside(n[0], n[1]) && !visited[n[0]][n[1]] && isHit(grid[n[0]][n[1]]))
+				{
+					visited[n[0]][n[1]] = true;
+					group.add(n);
+				}
+		}
+		group.sort((a, b) -> a[0] != b[0] ? a[0] - b[0] : a[1] - b[1]);
+		return group;
+	}
+
+	private static boolean isHit(ShotResults result)
+	{
+		return result == ShotResults.HIT || result == ShotResults.SINK;
+	}
+
+	private boolean outside(int x, int y)
+	{
+		return x < 0 || y < 0 || x >= size || y >= size;
+	}
+
+	/**
+	 * Returns the size of the grid the layouts are drawn on.
+	 * @return the grid size.
+	 */
+	public int getGridSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Draws a layout of the whole fleet: the sunk ships where they are, plus a random position for every
+	 * other ship. Each ship is {@code {x, y, horizontal ? 1 : 0, length}}, {@code (x, y)} being its top
+	 * left cell. The arrays are shared and must not be modified.
+	 * @param random the random number generator to draw with.
+	 * @param taken a {@code size x size} scratch grid, reused between calls.
+	 * @param layout receives the ships of the layout, after being cleared.
+	 * @return {@code true} if a consistent layout was found, {@code false} if too many attempts failed.
+	 */
+	public boolean sample(Random random, int[][] taken, List<int[]> layout)
+	{
+		return sample(random, taken, layout, MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Draws a layout of the whole fleet, giving up after the specified number of attempts. Lets callers with
+	 * a deadline check the time between short rounds of attempts.
+	 * @param random the random number generator to draw with.
+	 * @param taken a {@code size x size} scratch grid, reused between calls.
+	 * @param layout receives the ships of the layout, after being cleared.
+	 * @param attempts the maximum number of attempts.
+	 * @return {@code true} if a consistent layout was found, {@code false} if all the attempts failed.
+	 * @see #sample(Random, int[][], List)
+	 */
+	public boolean sample(Random random, int[][] taken, List<int[]> layout, int attempts)
+	{
+		for (int attempt = 1; attempt <= attempts; attempt++)
+			if (tryLayout(random, taken, layout, attempt))
+				return true;
+		return false;
+	}
+
+	private boolean tryLayout(Random random, int[][] taken, List<int[]> layout, int stamp)
+	{
+		// taken[x][y] == stamp marks the cells occupied or surrounded by the ships placed in this attempt
+		if (stamp == 1)
+			for (int[] column : taken)
+				Arrays.fill(column, 0);
+		layout.clear();
+		layout.addAll(sunkShips);
+
+		boolean[] covered = new boolean[clusters];
+		int uncovered = clusters;
+
+		// The longest ships are the hardest to fit, so they go first
+		for (int s = remainingLengths.length - 1; s >= 0; s--)
+		{
+			int length = remainingLengths[s];
+			List<int[]> candidates = windows.get(length);
+			if (candidates.isEmpty())
+				return false;
+
+			// With as many chances as there are groups of hits left for each ship, covers one of them
+			boolean mustCover = uncovered > 0 && random.nextInt(s + 1) < uncovered;
+
+			int[] chosen = null;
+			int seen = 0;
+			for (int[] w : candidates)		// Reservoir sampling over the windows that fit
+				if (fits(w, length, taken, stamp, covered, mustCover) && random.nextInt(++seen) == 0)
+					chosen = w;
+			if (chosen == null)
+				return false;
+
+			int dx = chosen[2];
+			int dy = 1 - chosen[2];
+			for (int k = 0; k < length; k++)
+			{
+				int cluster = clusterOf[chosen[0] + dx * k][chosen[1] + dy * k];
+				if (cluster >= 0 && !covered[cluster])
+				{
+					covered[cluster] = true;
+					uncovered--;
+				}
+			}
+			for (int i = chosen[0] - 1; i <= chosen[0] + dx * (length - 1) + 1; i++)
+				for (int j = chosen[1] - 1; j <= chosen[1] + dy * (length - 1) + 1; j++)
+					if (!outside(i, j))
+						taken[i][j] = stamp;
+			layout.add(chosen);
+		}
+		return uncovered == 0;
+	}
+
+	private boolean fits(int[] w, int length, int[][] taken, int stamp, boolean[] covered, boolean mustCover)
+	{
+		int dx = w[2];
+		int dy = 1 - w[2];
+		boolean coversNew = false;
+		for (int k = 0; k < length; k++)
+		{
+			int x = w[0] + dx * k;
+			int y = w[1] + dy * k;
+			if (taken[x][y] == stamp)
+				return false;
+			int cluster = clusterOf[x][y];
+			if (cluster >= 0)
+			{
+				if (covered[cluster])
+					return false;
+				coversNew = true;
+			}
+		}
+		return coversNew == mustCover;
+	}
+}
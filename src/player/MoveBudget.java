@@ -0,0 +1,137 @@
+package player;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The time an automated player can spend choosing each move. The player refines its choice until the
+ * deadline of the move or until the move is cancelled, then plays the best choice found so far.
+ * <p>
+ * A budget also keeps statistics about the moves played with it, which can be read from any thread:
+ * how many were cut short by the deadline or by a cancellation, and how late the latest move was.
+ * A budget times one move at a time, so players choosing their moves at the same time need a budget each.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class MoveBudget
+{
+	private long budgetNanos;
+	private volatile boolean cancelled;
+
+	private AtomicLong moves = new AtomicLong();
+	private AtomicLong cutShort = new AtomicLong();
+	private AtomicLong cancelledMoves = new AtomicLong();
+	private AtomicLong maxOverrunNanos = new AtomicLong();
+
+	/**
+	 * Constructs a budget.
+	 * @param millis the time each move can take, in milliseconds.
+	 */
+	public MoveBudget(long millis)
+	{
+		budgetNanos = millis * 1_000_000;
+	}
+
+	/**
+	 * Returns a budget holding the statistics of the moves of several budgets together, to report them
+	 * as a whole.
+	 * @param budgets the budgets, all with the same time per move.
+	 * @return the combined budget.
+	 * @throws IllegalArgumentException if there are no budgets.
+	 */
+	public static MoveBudget combine(List<MoveBudget> budgets)
+	{
+		if (budgets.isEmpty())
+			throw new IllegalArgumentException("There are no budgets to combine.");
+		MoveBudget combined = new MoveBudget(0);
+		combined.budgetNanos = budgets.get(0).budgetNanos;
+		for (MoveBudget budget : budgets)
+		{
+			combined.moves.addAndGet(budget.getMoves());
+			combined.cutShort.addAndGet(budget.getMovesCutShort());
+			combined.cancelledMoves.addAndGet(budget.getCancelledMoves());
+			combined.maxOverrunNanos.accumulateAndGet(budget.getMaxOverrunNanos(), Math::max);
+		}
+		return combined;
+	}
+
+	/**
+	 * Starts timing a move.
+	 * @return the deadline of the move, as a {@link System#nanoTime()} value.
+	 */
+	long startMove()
+	{
+		cancelled = false;
+		moves.incrementAndGet();
+		return System.nanoTime() + budgetNanos;
+	}
+
+	/**
+	 * Returns whether the move has to be played right away.
+	 * @param deadline the deadline of the move.
+	 * @return {@code true} if the deadline has passed or the move was cancelled.
+	 */
+	boolean isOver(long deadline)
+	{
+		return cancelled || System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * Records the end of a move.
+	 * @param deadline the deadline of the move.
+	 * @param complete whether the choice was fully refined before the end of the move.
+	 */
+	void endMove(long deadline, boolean complete)
+	{
+		if (!complete)
+			(cancelled ? cancelledMoves : cutShort).incrementAndGet();
+		maxOverrunNanos.accumulateAndGet(System.nanoTime() - deadline, Math::max);
+	}
+
+	/**
+	 * Cancels the move being chosen, which is played as soon as possible. Can be called from any thread.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return the number of moves played with this budget
+	 */
+	public long getMoves()
+	{
+		return moves.get();
+	}
+
+	/**
+	 * @return the number of moves whose choice was cut short by the deadline
+	 */
+	public long getMovesCutShort()
+	{
+		return cutShort.get();
+	}
+
+	/**
+	 * @return the number of moves whose choice was cut short by a cancellation
+	 */
+	public long getCancelledMoves()
+	{
+		return cancelledMoves.get();
+	}
+
+	/**
+	 * @return the most a move went past its deadline, in nanoseconds, or {@code 0} if none did
+	 */
+	public long getMaxOverrunNanos()
+	{
+		return maxOverrunNanos.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d moves, %d cut short by the deadline, %d cancelled, latest %.2f ms past the deadline",
+				getMoves(), getMovesCutShort(), getCancelledMoves(), getMaxOverrunNanos() / 1e6);
+	}
+}
@@ -0,0 +1,339 @@
+package player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+import main.Game;
+import types.Coordinate;
+import types.Directions;
+
+/**
+ * Where a {@link HumanPlayer} reads its moves from: the console, or a script of moves played back from a
+ * file or a pipe, to replay games or to play human games by the million in load tests.
+ * <p>
+ * Input is read a line at a time and parsed in place, without regular expressions or intermediate strings:
+ * coordinates are a letter followed by one or two digits, as in {@code A3} or {@code d10}, and directions are
+ * the first letter of their name, in either case. Parsing stops at the first mistake, which is described
+ * along with the column it was found at.
+ * <p>
+ * A script holds one move per line, in the order the game asks for them: a coordinate and a direction for
+ * every ship placed, such as {@code A3 R}, a coordinate alone for ships of length 1 and for every shot, or
+ * {@code exit} to quit. Blank lines and lines starting with {@code #} are skipped. Scripted moves are never
+ * asked again: a move that can't be played stops the game with an {@link InputMismatchException} giving the
+ * script, line and column of the mistake.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class MoveInput
+implements Closeable
+{
+	private static final MoveInput CONSOLE = new MoveInput();
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Reader reader;
+	private String name;
+	private char[] buffer;
+	private int bufferStart;
+	private int bufferEnd;
+
+	private char[] line = new char[128];
+	private int length;
+	private int position;
+	private long lineNumber;
+
+	private String errorMessage;
+	private int errorColumn;
+
+	/**
+	 * Constructs the console input.
+	 */
+	private MoveInput()
+	{
+	}
+
+	/**
+	 * Constructs a script read from the specified reader.
+	 * @param reader the script.
+	 * @param name the name of the script, such as its file name, used to report mistakes.
+	 */
+	public MoveInput(Reader reader, String name)
+	{
+		this.reader = reader;
+		this.name = name;
+		buffer = new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * Constructs a script read from the specified file, encoded in UTF-8.
+	 * @param file the script.
+	 * @throws IOException if the file can't be opened.
+	 */
+	public MoveInput(Path file) throws IOException
+	{
+		this(Files.newBufferedReader(file, StandardCharsets.UTF_8), file.toString());
+	}
+
+	/**
+	 * Returns the input read from the console, through {@link Game#scan}.
+	 * @return the console input.
+	 */
+	public static MoveInput console()
+	{
+		return CONSOLE;
+	}
+
+	/**
+	 * @return {@code true} if the moves come from a script, {@code false} if they are typed at the console
+	 */
+	public boolean isScripted()
+	{
+		return reader != null;
+	}
+
+	/**
+	 * Reads the next line, which becomes the one parsed. Scripts skip blank lines and comments.
+	 * @return {@code false} if the input is over.
+	 * @throws UncheckedIOException if the script can't be read.
+	 */
+	public boolean nextLine()
+	{
+		errorMessage = null;
+		position = 0;
+		if (reader == null)
+		{
+			String text;
+			try
+			{
+				text = Game.scan.nextLine();
+			}
+			catch (NoSuchElementException e)
+			{
+				return false;
+			}
+			lineNumber++;
+			length = 0;
+			for (int i = 0; i < text.length(); i++)
+				append(text.charAt(i));
+			return true;
+		}
+
+		while (readLine())
+		{
+			skipSpaces();
+			if (position < length && line[position] != '#')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a line of the script into {@link #line}, without its line terminator.
+	 * @return {@code false} at the end of the script.
+	 */
+	private boolean readLine()
+	{
+		length = 0;
+		position = 0;
+		boolean any = false;
+		while (true)
+		{
+			if (bufferStart == bufferEnd && !fill())
+			{
+				if (!any)
+					return false;
+				if (length > 0 && line[length - 1] == '\r')
+					length--;
+				lineNumber++;
+				return true;
+			}
+			any = true;
+			int i = bufferStart;
+			while (i < bufferEnd && buffer[i] != '\n')
+				i++;
+			for (int k = bufferStart; k < i; k++)
+				append(buffer[k]);
+			if (i < bufferEnd)
+			{
+				bufferStart = i + 1;
+				if (length > 0 && line[length - 1] == '\r')
+					length--;
+				lineNumber++;
+				return true;
+			}
+			bufferStart = bufferEnd;
+		}
+	}
+
+	private boolean fill()
+	{
+		try
+		{
+			int read = reader.read(buffer, 0, buffer.length);
+			bufferStart = 0;
+			bufferEnd = Math.max(read, 0);
+			return read > 0;
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not read the moves from " + name + ".", e);
+		}
+	}
+
+	private void append(char c)
+	{
+		if (length == line.length)
+			line = Arrays.copyOf(line, 2 * length);
+		line[length++] = c;
+	}
+
+	/**
+	 * Returns whether the current line is the specified word, in any case and ignoring the spaces around it.
+	 * @param word the word.
+	 * @return {@code true} if the line is the word.
+	 */
+	public boolean isWord(String word)
+	{
+		int from = 0;
+		int to = length;
+		while (from < to && Character.isWhitespace(line[from]))
+			from++;
+		while (to > from && Character.isWhitespace(line[to - 1]))
+			to--;
+		if (to - from != word.length())
+			return false;
+		for (int i = 0; i < word.length(); i++)
+			if (Character.toLowerCase(line[from + i]) != Character.toLowerCase(word.charAt(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Parses a coordinate, such as {@code A3}, at the current position of the line. The letter gives
+	 * the x and the number the y: bounds aren't checked.
+	 * @param c where the coordinate is stored.
+	 * @return {@code false} if there is no coordinate, in which case {@link #getError()} tells why.
+	 */
+	public boolean readCoordinate(Coordinate c)
+	{
+		skipSpaces();
+		if (position == length)
+			return fail("a coordinate");
+		int letter = line[position] | 0x20;		// Lower case
+		if (letter < 'a' || letter > 'z')
+			return fail("a letter");
+		position++;
+
+		int y = 0;
+		int digits = 0;
+		while (position < length && line[position] >= '0' && line[position] <= '9')
+		{
+			if (++digits > 2)
+				return fail("at most two digits");
+			y = 10 * y + line[position++] - '0';
+		}
+		if (digits == 0)
+			return fail("a number");
+		c.set(letter - 'a', y);
+		return true;
+	}
+
+	/**
+	 * Parses the first letter of a direction, {@code U}, {@code D}, {@code L} or {@code R} in either case,
+	 * after at least one space.
+	 * @return the direction, or {@code null} if there is none, in which case {@link #getError()} tells why.
+	 */
+	public Directions readDirection()
+	{
+		int start = position;
+		skipSpaces();
+		if (position == start || position == length)
+		{
+			fail("a space and a direction");
+			return null;
+		}
+		switch (line[position] | 0x20)
+		{
+			case 'u': position++; return Directions.UP;
+			case 'd': position++; return Directions.DOWN;
+			case 'l': position++; return Directions.LEFT;
+			case 'r': position++; return Directions.RIGHT;
+			default:
+				fail("a direction (U, D, L or R)");
+				return null;
+		}
+	}
+
+	/**
+	 * Checks that nothing but spaces is left on the line.
+	 * @return {@code false} if there is more, in which case {@link #getError()} tells why.
+	 */
+	public boolean readEnd()
+	{
+		skipSpaces();
+		return position == length || fail("the end of the line");
+	}
+
+	private void skipSpaces()
+	{
+		while (position < length && Character.isWhitespace(line[position]))
+			position++;
+	}
+
+	private boolean fail(String expected)
+	{
+		errorMessage = expected;
+		errorColumn = position + 1;
+		return false;
+	}
+
+	/**
+	 * Describes the last parsing mistake on the current line.
+	 * @return the description, or {@code null} if the line was parsed correctly.
+	 */
+	public String getError()
+	{
+		if (errorMessage == null)
+			return null;
+		return "Expected " + errorMessage + " at column " + errorColumn + ".";
+	}
+
+	/**
+	 * Returns an exception reporting a move of the script that can't be played, at the current line.
+	 * @param message what is wrong with the move, or {@code null} to report the last parsing mistake.
+	 * @return the exception, which gives the script, line and column.
+	 */
+	public InputMismatchException mistake(String message)
+	{
+		if (message == null)
+			message = "expected " + errorMessage;
+		return new InputMismatchException(name + ":" + lineNumber + ":" + (errorMessage == null ? 1 : errorColumn)
+				+ ": " + message + " (\"" + new String(line, 0, length) + "\")");
+	}
+
+	/**
+	 * @return the number of lines read so far
+	 */
+	public long getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	/**
+	 * Closes the script. Closing the console does nothing: it belongs to the game.
+	 * @throws IOException if the script can't be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (reader != null)
+			reader.close();
+	}
+}
@@ -0,0 +1,110 @@
+package player;
+
+import java.util.Arrays;
+
+import types.Coordinate;
+import types.Directions;
+
+/**
+ * An immutable layout of a fleet, stored compactly: a bitmap of the cells occupied by the ships, plus
+ * three bytes per ship for its top left cell, length and direction. Two placements are equal when they
+ * occupy the same cells, which, since ships can't touch each other, means they have the same ships.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ * @see PlacementPool
+ */
+public final class Placement
+{
+	private final int gridSize;
+	private final long[] occupied;		// Bit x * size + y is set if a ship covers (x, y)
+	private final byte[] ships;			// x, y and length << 1 | horizontal of every ship
+	private final int hash;
+
+	/**
+	 * Constructs a placement.
+	 * @param gridSize the size of the grid.
+	 * @param occupied the bitmap of the occupied cells.
+	 * @param ships the ships, three bytes each.
+	 */
+	Placement(int gridSize, long[] occupied, byte[] ships)
+	{
+		this.gridSize = gridSize;
+		this.occupied = occupied;
+		this.ships = ships;
+		hash = Arrays.hashCode(occupied);
+	}
+
+	/**
+	 * @return the size of the grid
+	 */
+	public int getGridSize()
+	{
+		return gridSize;
+	}
+
+	/**
+	 * @return the number of ships
+	 */
+	public int getShipCount()
+	{
+		return ships.length / 3;
+	}
+
+	/**
+	 * Returns whether a ship covers the specified cell.
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @return {@code true} if the cell is occupied.
+	 */
+	public boolean isOccupied(int x, int y)
+	{
+		int cell = x * gridSize + y;
+		return (occupied[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * Places the ships on an empty board.
+	 * @param board the board, of the same size as this placement.
+	 * @throws IllegalArgumentException if the board is of a different size or a ship can't be placed.
+	 */
+	public void placeOn(Board board)
+	{
+		if (board.getGridSize() != gridSize)
+			throw new IllegalArgumentException("The board is " + board.getGridSize() + "x" + board.getGridSize()
+					+ ", the placement " + gridSize + "x" + gridSize + ".");
+
+		Coordinate pos = new Coordinate();
+		for (int i = 0; i < ships.length; i += 3)
+		{
+			pos.set(ships[i], ships[i + 1]);
+			int packed = ships[i + 2];
+			if (!board.placeShip(pos, (packed & 1) != 0 ? Directions.RIGHT : Directions.DOWN, packed >>> 1))
+				throw new IllegalArgumentException("The board already has ships in the way.");
+		}
+	}
+
+	/**
+	 * Returns the ships, three bytes each: column and row of the top left cell, then the length shifted
+	 * left by one, plus one if the ship is horizontal.
+	 * @return a copy of the ships.
+	 */
+	public byte[] getShips()
+	{
+		return ships.clone();
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof Placement))
+			return false;
+		Placement placement = (Placement) other;
+		return gridSize == placement.gridSize && hash == placement.hash && Arrays.equals(occupied, placement.occupied);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+}
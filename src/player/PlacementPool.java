@@ -0,0 +1,408 @@
+package player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A pool of fleet layouts for a grid size and fleet, generated ahead of time on background threads and
+ * handed out to new games, so that simulations don't spend their time placing ships.
+ * <p>
+ * Layouts are generated in one of two ways. Uniform pools draw every ship at a random position and
+ * start over if any of them overlaps or touches another, so every valid layout is equally likely: this
+ * is exact, but slow for crowded fleets. Other pools place the ships one at a time, retrying each one
+ * until it fits, like {@link CPUPlayer#placeShips(int[])}. Either way, duplicate layouts are discarded and
+ * {@link #take(RandomGenerator)} draws uniformly from the pool.
+ * <p>
+ * Pools can be saved to and loaded from a cache file, so that later runs start with a full pool.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class PlacementPool
+{
+	private static final int MAGIC = 0x504C4301;
+	private static final int MAX_SHIP_ATTEMPTS = 100;	// Attempts at a ship before starting the layout over
+	private static final int MAX_DUPLICATE_RUN = 100000;	// Duplicates in a row after which no new layout is expected
+
+	/**
+	 * What happened to a layout added to the pool.
+	 */
+	private enum Outcome
+	{
+		ADDED, DUPLICATE, FULL
+	}
+
+	private int gridSize;
+	private int[] fleet;
+	private boolean uniform;
+	private int capacity;				// Guarded by this once generation starts
+
+	private GridTables tables;
+	private int words;
+	private long[][] cellMasks;			// By window: the cells of the window
+	private long[][] blockMasks;		// By window: the cells of the window and around it
+
+	// The pool, guarded by this
+	private List<Placement> placements = new ArrayList<>();
+	private Set<Placement> known = new HashSet<>();
+	private long duplicates;
+	private int duplicateRun;			// Duplicates since the last new layout
+
+	private ExecutorService generators;
+	private volatile boolean stopped;
+
+	/**
+	 * Constructs an empty pool.
+	 * @param gridSize the size of the grid.
+	 * @param fleet the lengths of the ships.
+	 * @param capacity the number of layouts after which generation stops.
+	 * @param uniform whether every valid layout must be equally likely.
+	 */
+	public PlacementPool(int gridSize, int[] fleet, int capacity, boolean uniform)
+	{
+		this.gridSize = gridSize;
+		this.fleet = fleet.clone();
+		this.capacity = capacity;
+		this.uniform = uniform;
+
+		// The longest ships go first, since they are the hardest to fit
+		Arrays.sort(this.fleet);
+		for (int i = 0; i < this.fleet.length / 2; i++)
+		{
+			int swap = this.fleet[i];
+			this.fleet[i] = this.fleet[this.fleet.length - 1 - i];
+			this.fleet[this.fleet.length - 1 - i] = swap;
+		}
+
+		tables = GridTables.of(gridSize, this.fleet.length == 0 ? 1 : this.fleet[0]);
+		words = (gridSize * gridSize + 63) / 64;
+		int windows = tables.firstWindow(tables.getMaxShipLength() + 1);
+		cellMasks = new long[windows][words];
+		blockMasks = new long[windows][words];
+		for (int window = 0; window < windows; window++)
+		{
+			for (int cell : tables.windowCells(window))
+			{
+				cellMasks[window][cell >>> 6] |= 1L << cell;
+				blockMasks[window][cell >>> 6] |= 1L << cell;
+			}
+			for (int cell : tables.windowHalo(window))
+				blockMasks[window][cell >>> 6] |= 1L << cell;
+		}
+	}
+
+	/**
+	 * Starts filling the pool in the background, up to its capacity.
+	 * @param threads the number of threads generating layouts.
+	 * @param seed the seed the random choices of the threads derive from.
+	 */
+	public synchronized void start(int threads, long seed)
+	{
+		if (generators != null)
+			return;
+		generators = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "placements");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		SplittableRandom seeds = new SplittableRandom(seed);
+		for (int i = 0; i < threads; i++)
+		{
+			SplittableRandom random = seeds.split();
+			generators.execute(() -> {
+				while (!stopped && add(generate(random)) != Outcome.FULL);
+			});
+		}
+		generators.shutdown();
+	}
+
+	/**
+	 * Waits for the pool to be full. A pool whose fleet has fewer layouts than its capacity is full once the
+	 * generators keep finding the layouts it already holds.
+	 * @param timeoutMillis the longest time to wait, in milliseconds.
+	 * @return {@code true} if the pool is full, {@code false} if the time ran out.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 * @throws IllegalStateException if the pool was never started.
+	 */
+	public boolean awaitFull(long timeoutMillis) throws InterruptedException
+	{
+		ExecutorService running;
+		synchronized (this)
+		{
+			if (generators == null)
+				throw new IllegalStateException("The pool wasn't started.");
+			running = generators;
+		}
+		return running.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS) || isFull();
+	}
+
+	/**
+	 * Stops generating layouts. The layouts already in the pool can still be taken.
+	 */
+	public void close()
+	{
+		stopped = true;
+	}
+
+	/**
+	 * Draws a layout from the pool, every layout being equally likely. Layouts are not removed,
+	 * so the same layout can be drawn again. If the pool is empty, a layout is generated right away.
+	 * @param random the random number generator to draw with.
+	 * @return the layout.
+	 */
+	public Placement take(RandomGenerator random)
+	{
+		synchronized (this)
+		{
+			if (!placements.isEmpty())
+				return placements.get(random.nextInt(placements.size()));
+		}
+		Placement placement = generate(random);
+		add(placement);
+		return placement;
+	}
+
+	/**
+	 * Adds a layout to the pool, unless it's already there. After {@link #MAX_DUPLICATE_RUN} duplicates in a
+	 * row, the pool is deemed to hold every layout of the fleet, and becomes full at its current size.
+	 * @return whether the layout was added, was a duplicate, or the pool is full.
+	 */
+	private synchronized Outcome add(Placement placement)
+	{
+		if (placements.size() >= capacity)
+			return Outcome.FULL;
+		if (known.add(placement))
+		{
+			placements.add(placement);
+			duplicateRun = 0;
+			return Outcome.ADDED;
+		}
+		duplicates++;
+		if (++duplicateRun >= MAX_DUPLICATE_RUN)
+			capacity = placements.size();
+		return Outcome.DUPLICATE;
+	}
+
+	/**
+	 * Generates a random layout of the fleet.
+	 */
+	private Placement generate(RandomGenerator random)
+	{
+		long[] blocked = new long[words];
+		long[] occupied = new long[words];
+		byte[] ships = new byte[3 * fleet.length];
+
+		layout:
+		while (true)
+		{
+			Arrays.fill(blocked, 0);
+			Arrays.fill(occupied, 0);
+			for (int i = 0; i < fleet.length; i++)
+			{
+				int length = fleet[i];
+				int first = tables.firstWindow(length);
+				int windows = tables.firstWindow(length + 1) - first;
+
+				int window = -1;
+				for (int attempt = 0; attempt < (uniform ? 1 : MAX_SHIP_ATTEMPTS) && window < 0; attempt++)
+				{
+					int candidate = first + random.nextInt(windows);
+					if (fits(cellMasks[candidate], blocked))
+						window = candidate;
+				}
+				if (window < 0)
+					continue layout;
+
+				for (int w = 0; w < words; w++)
+				{
+					occupied[w] |= cellMasks[window][w];
+					blocked[w] |= blockMasks[window][w];
+				}
+				int[] cells = tables.windowCells(window);
+				ships[3 * i] = (byte) tables.cellX(cells[0]);
+				ships[3 * i + 1] = (byte) tables.cellY(cells[0]);
+				ships[3 * i + 2] = (byte) (length << 1 | (length == 1 || cells[1] - cells[0] == gridSize ? 1 : 0));
+			}
+			return new Placement(gridSize, occupied, ships);
+		}
+	}
+
+	private boolean fits(long[] cells, long[] blocked)
+	{
+		for (int w = 0; w < words; w++)
+			if ((cells[w] & blocked[w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return {@code true} if no more layouts will be added to the pool
+	 */
+	public synchronized boolean isFull()
+	{
+		return placements.size() >= capacity;
+	}
+
+	/**
+	 * @return the number of layouts in the pool
+	 */
+	public synchronized int size()
+	{
+		return placements.size();
+	}
+
+	/**
+	 * @return the number of generated layouts that were already in the pool
+	 */
+	public synchronized long getDuplicates()
+	{
+		return duplicates;
+	}
+
+	/**
+	 * Returns the name of the cache file of a pool, so that runs with the same settings share it.
+	 * @param directory the directory of the cache.
+	 * @return the cache file.
+	 */
+	public Path cacheFile(Path directory)
+	{
+		return directory.resolve("placements-" + gridSize + "-"
+				+ Arrays.stream(fleet).mapToObj(Integer::toString).collect(Collectors.joining("."))
+				+ (uniform ? "-uniform" : "") + ".bin.gz");
+	}
+
+	/**
+	 * Adds the layouts saved in a file to the pool, up to its capacity.
+	 * @param file the file.
+	 * @return the number of layouts read, or {@code 0} if the file doesn't exist.
+	 * @throws IOException if the file can't be read, or was saved by a pool with other settings.
+	 */
+	public int load(Path file) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != gridSize || in.readBoolean() != uniform)
+				throw new IOException("The file doesn't hold layouts of this pool.");
+			int[] saved = new int[in.readInt()];
+			for (int i = 0; i < saved.length; i++)
+				saved[i] = in.readInt();
+			if (!Arrays.equals(saved, fleet))
+				throw new IOException("The file holds layouts of another fleet.");
+
+			int count = in.readInt();
+			byte[] ships = new byte[3 * fleet.length];
+			for (int i = 0; i < count; i++)
+			{
+				in.readFully(ships);
+				long[] occupied = new long[words];
+				for (int s = 0; s < ships.length; s += 3)
+				{
+					int window = tables.window(ships[s], ships[s + 1], (ships[s + 2] & 1) != 0, ships[s + 2] >>> 1);
+					for (int w = 0; w < words; w++)
+						occupied[w] |= cellMasks[window][w];
+				}
+				if (add(new Placement(gridSize, occupied, ships.clone())) == Outcome.FULL)
+					return i;
+			}
+			return count;
+		}
+		catch (NoSuchFileException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Saves the layouts of the pool to a file. The file is replaced atomically, so that runs reading it
+	 * at the same time never see it half written.
+	 * @param file the file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void save(Path file) throws IOException
+	{
+		List<Placement> saved;
+		synchronized (this)
+		{
+			saved = new ArrayList<>(placements);
+		}
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(gridSize);
+			out.writeBoolean(uniform);
+			out.writeInt(fleet.length);
+			for (int length : fleet)
+				out.writeInt(length);
+			out.writeInt(saved.size());
+			for (Placement placement : saved)
+				out.write(placement.getShips());
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Fills a pool, using and updating its cache file, then compares the time to set up games from the
+	 * pool with placing the ships of every game.
+	 * @param args the cache directory, the grid size (10), the fleet ({@code 4,3,3,2,2,1}), the capacity
+	 * (100000) and whether the pool is uniform ({@code false}).
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		Path directory = Path.of(args[0]);
+		int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int[] fleet = Arrays.stream((args.length > 2 ? args[2] : "4,3,3,2,2,1").split(",")).mapToInt(Integer::parseInt).toArray();
+		int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+		boolean uniform = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+		PlacementPool pool = new PlacementPool(gridSize, fleet, capacity, uniform);
+		Files.createDirectories(directory);
+		long start = System.nanoTime();
+		int loaded = pool.load(pool.cacheFile(directory));
+		pool.start(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+		pool.awaitFull(Long.MAX_VALUE);
+		System.out.printf("%d layouts (%d from the cache, %d duplicates) in %d ms%n", pool.size(), loaded,
+				pool.getDuplicates(), (System.nanoTime() - start) / 1_000_000);
+		pool.save(pool.cacheFile(directory));
+
+		int games = 100000;
+		SplittableRandom random = new SplittableRandom(1);
+		CPUPlayer player = new CPUPlayer("A", gridSize, 0);
+		player.setVerbose(false);
+		start = System.nanoTime();
+		for (int i = 0; i < games; i++)
+		{
+			player.reset(i);
+			player.placeShips(fleet);
+		}
+		long placed = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < games; i++)
+		{
+			player.reset(i);
+			player.placeShips(pool.take(random));
+		}
+		long pooled = System.nanoTime() - start;
+		System.out.printf("Setup per game: %.2f us placing ships, %.2f us from the pool%n", placed / 1e3 / games, pooled / 1e3 / games);
+	}
+}
@@ -0,0 +1,326 @@
+package player;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * The target mode of a {@link CPUPlayer}: a queue of the enemy ships hit but not sunk yet, in the order
+ * they were first hit. Every ship is worked on until it sinks before moving on to the next one.
+ * <p>
+ * Since ships can't touch each other, every group of adjacent hits is a single ship, which is sunk if the
+ * group contains a sink, and is a straight line: two hits or more tell the orientation of the ship. For the
+ * same reason the cells around a sunk ship, or around any other ship hit, can't belong to the ship being
+ * finished off, and are never shot at. Among the cells left, the one covered by most placements of the
+ * surviving ships is chosen.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+final class TargetQueue
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+	private static final int[][] SIDES = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+	private List<Coordinate> hits = new ArrayList<>();		// A hit of every ship, oldest first; sunk ships are dropped lazily
+
+	private transient int size;
+	private transient int[] cluster;		// Scratch space: the hits of the ship being worked on, as x * size + y
+	private transient int clusterSize;
+	private transient boolean[] inCluster;
+	private transient int[] scores;			// The placements covering the last candidates, best first
+	private transient int placements;		// The placements covering the hits of the last ship
+	private transient Coordinate pos;
+
+	/**
+	 * Constructs an empty queue.
+	 */
+	TargetQueue()
+	{
+	}
+
+	/**
+	 * Constructs a copy of the specified queue.
+	 * @param other the queue to copy.
+	 */
+	TargetQueue(TargetQueue other)
+	{
+		for (Coordinate c : other.hits)
+			hits.add(new Coordinate(c.getX(), c.getY()));
+	}
+
+	/**
+	 * Records a hit, already in the shot grid. If it belongs to a ship hit before, or to a ship sunk since, it
+	 * changes nothing, otherwise the ship joins the queue.
+	 * @param board the board whose shot grid is used.
+	 * @param c the coordinate of the hit.
+	 */
+	void hit(Board board, Coordinate c)
+	{
+		if (!collect(board, c))
+			return;
+		for (Coordinate queued : hits)
+			if (inCluster[queued.getX() * size + queued.getY()])
+				return;
+		hits.add(new Coordinate(c.getX(), c.getY()));
+	}
+
+	/**
+	 * Empties the queue.
+	 */
+	void clear()
+	{
+		hits.clear();
+	}
+
+	/**
+	 * Fills the queue from a shot grid, for players set up in the middle of a game. The order in which the
+	 * ships were hit isn't known, so they are queued in order of x and then y.
+	 * @param board the board whose shot grid is used.
+	 */
+	void rebuild(Board board)
+	{
+		hits.clear();
+		int gridSize = board.getGridSize();
+		Coordinate cell = new Coordinate();
+		for (int x = 0; x < gridSize; x++)
+			for (int y = 0; y < gridSize; y++)
+			{
+				cell.set(x, y);
+				if (board.getResultAt(cell) == ShotResults.HIT)
+					hit(board, cell);
+			}
+	}
+
+	/**
+	 * Chooses the shot that is the most likely to hit the oldest ship in the queue.
+	 * @param board the board whose shot grid is used.
+	 * @param afloat the lengths of the ships which may still be afloat: {@code afloat[length]} is {@code true}
+	 * if there may be a ship of that length.
+	 * @param random the random number generator to break ties with, or {@code null} to take the first best cell.
+	 * @return the shot, or {@code null} if there are no ships to finish off.
+	 */
+	Coordinate nextShot(Board board, boolean[] afloat, Random random)
+	{
+		while (!hits.isEmpty())
+		{
+			Coordinate seed = hits.get(0);
+			if (collect(board, seed))
+			{
+				List<Coordinate> candidates = candidates(board, afloat);
+				if (!candidates.isEmpty())
+				{
+					int best = 0;
+					if (random != null)
+					{
+						int ties = 1;
+						while (ties < candidates.size() && scores[ties] == scores[0])
+							ties++;
+						best = random.nextInt(ties);
+					}
+					return candidates.get(best);
+				}
+			}
+			hits.remove(0);		// Sunk, or nothing left to shoot at around it
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cells that can belong to the ships in the queue, the most likely first whichever ship they
+	 * belong to: a cell is as likely as the share of the placements of its ship that cover it. Between equally
+	 * likely cells, the older ships come first. Used to fill volleys.
+	 * @param board the board whose shot grid is used.
+	 * @param afloat the lengths of the ships which may still be afloat, as for {@link #nextShot(Board, boolean[], Random)}.
+	 * @return the cells, without duplicates.
+	 */
+	List<Coordinate> volleyCandidates(Board board, boolean[] afloat)
+	{
+		List<Coordinate> all = new ArrayList<>();
+		List<Double> allChances = new ArrayList<>();
+		boolean[] added = new boolean[board.getGridSize() * board.getGridSize()];
+		for (int i = 0; i < hits.size(); i++)
+		{
+			Coordinate seed = hits.get(i);
+			if (added[seed.getX() * board.getGridSize() + seed.getY()] || !collect(board, seed))
+				continue;
+			for (int k = 0; k < clusterSize; k++)
+				added[cluster[k]] = true;		// Later hits of the same ship are skipped
+			List<Coordinate> candidates = candidates(board, afloat);
+			for (int j = 0; j < candidates.size(); j++)
+			{
+				Coordinate c = candidates.get(j);
+				if (added[c.getX() * size + c.getY()])
+					continue;
+				added[c.getX() * size + c.getY()] = true;
+				double chance = placements == 0 ? 0 : (double) scores[j] / placements;
+				int at = all.size();
+				while (at > 0 && allChances.get(at - 1) < chance)
+					at--;
+				all.add(at, c);
+				allChances.add(at, chance);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Collects the hits of the ship the specified hit belongs to.
+	 * @return {@code false} if the ship has been sunk.
+	 */
+	private boolean collect(Board board, Coordinate seed)
+	{
+		if (cluster == null || size != board.getGridSize())
+		{
+			size = board.getGridSize();
+			cluster = new int[size * size];
+			inCluster = new boolean[size * size];
+			pos = new Coordinate();
+		}
+		for (int k = 0; k < clusterSize; k++)
+			inCluster[cluster[k]] = false;
+		clusterSize = 0;
+
+		if (result(board, seed.getX(), seed.getY()) != ShotResults.HIT)
+			return false;
+		add(seed.getX(), seed.getY());
+		for (int k = 0; k < clusterSize; k++)
+		{
+			int x = cluster[k] / size;
+			int y = cluster[k] % size;
+			for (int[] side : SIDES)
+			{
+				int nx = x + side[0];
+				int ny = y + side[1];
+				ShotResults near = result(board, nx, ny);
+				if (near == ShotResults.SINK)
+					return false;
+				if (near == ShotResults.HIT && !inCluster[nx * size + ny])
+					add(nx, ny);
+			}
+		}
+		return true;
+	}
+
+	private void add(int x, int y)
+	{
+		cluster[clusterSize++] = x * size + y;
+		inCluster[x * size + y] = true;
+	}
+
+	/**
+	 * Returns the cells which can extend the collected ship, the most likely first, and leaves their
+	 * scores in {@link #scores}. Cells no placement fits in are kept last, in case the fleet isn't the
+	 * one expected.
+	 */
+	private List<Coordinate> candidates(Board board, boolean[] afloat)
+	{
+		int minX = size, maxX = -1, minY = size, maxY = -1;
+		for (int k = 0; k < clusterSize; k++)
+		{
+			minX = Math.min(minX, cluster[k] / size);
+			maxX = Math.max(maxX, cluster[k] / size);
+			minY = Math.min(minY, cluster[k] % size);
+			maxY = Math.max(maxY, cluster[k] % size);
+		}
+		boolean horizontal = maxX > minX;
+		boolean vertical = maxY > minY;
+		if (horizontal && vertical)
+		{
+			scores = new int[0];
+			return new ArrayList<>();	// Not a line: the grid doesn't follow the rules
+		}
+
+		List<Coordinate> candidates = new ArrayList<>(4);
+		List<Integer> candidateScores = new ArrayList<>(4);
+		for (int[] side : SIDES)
+		{
+			boolean alongX = side[1] == 0;
+			if ((horizontal && !alongX) || (vertical && alongX))
+				continue;		// The ship doesn't extend sideways
+			int x = side[0] < 0 ? minX - 1 : side[0] > 0 ? maxX + 1 : minX;
+			int y = side[1] < 0 ? minY - 1 : side[1] > 0 ? maxY + 1 : minY;
+			if (!isFree(board, x, y))
+				continue;
+
+			int score = placements(board, afloat, alongX, Math.min(x, minX), Math.min(y, minY), Math.max(x, maxX), Math.max(y, maxY), clusterSize + 1);
+			int at = 0;
+			while (at < candidates.size() && candidateScores.get(at) >= score)
+				at++;
+			candidates.add(at, new Coordinate(x, y));
+			candidateScores.add(at, score);
+		}
+
+		placements = 0;
+		if (!vertical)
+			placements += placements(board, afloat, true, minX, minY, maxX, maxY, clusterSize + 1);
+		if (!horizontal)
+			placements += placements(board, afloat, false, minX, minY, maxX, maxY, clusterSize + 1);
+		scores = new int[candidateScores.size()];
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = candidateScores.get(i);
+		return candidates;
+	}
+
+	/**
+	 * Counts the placements of the ships which may be afloat that cover the specified segment
+	 * and only cells that can belong to the collected ship.
+	 */
+	private int placements(Board board, boolean[] afloat, boolean alongX, int x1, int y1, int x2, int y2, int minLength)
+	{
+		int from = alongX ? x1 : y1;
+		int to = alongX ? x2 : y2;
+		int count = 0;
+		for (int length = Math.max(minLength, to - from + 1); length < afloat.length; length++)
+		{
+			if (!afloat[length])
+				continue;
+			for (int start = to - length + 1; start <= from; start++)
+			{
+				boolean fits = true;
+				for (int i = start; i < start + length && fits; i++)
+				{
+					int x = alongX ? i : x1;
+					int y = alongX ? y1 : i;
+					fits = (x >= 0 && y >= 0 && x < size && y < size && inCluster[x * size + y]) || isFree(board, x, y);
+				}
+				if (fits)
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns whether a cell can belong to the collected ship: it's on the board, it hasn't been shot at,
+	 * and no other ship is hit right next to it.
+	 */
+	private boolean isFree(Board board, int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= size || y >= size || result(board, x, y) != null)
+			return false;
+		for (int nx = x - 1; nx <= x + 1; nx++)
+			for (int ny = y - 1; ny <= y + 1; ny++)
+			{
+				ShotResults near = result(board, nx, ny);
+				if ((near == ShotResults.HIT || near == ShotResults.SINK) && !inCluster[nx * size + ny])
+					return false;
+			}
+		return true;
+	}
+
+	/**
+	 * Returns the result at a cell of the shot grid, or {@code null} if the cell is unknown or outside the board.
+	 */
+	private ShotResults result(Board board, int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= size || y >= size)
+			return null;
+		pos.set(x, y);
+		return board.getResultAt(pos);
+	}
+}
@@ -0,0 +1,124 @@
+package sim;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A snapshot of the progress of a {@link BatchRunner}: which games are completed, the statistics
+ * accumulated so far and the state of the games that were being played. Since every game is
+ * derived from its index, this is all it takes to resume the batch and obtain the same results.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class BatchCheckpoint
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private String batch;
+	private int nextGame;
+	private BitSet completed;
+	private WorkResult result;
+	private Map<Integer, byte[]> inFlight;
+
+	/**
+	 * Constructs a checkpoint.
+	 * @param batch a description of the batch, used to make sure a checkpoint is resumed by the same batch.
+	 * @param nextGame the index of the first game that was never started.
+	 * @param completed the indices of the completed games.
+	 * @param result the statistics of the completed games.
+	 * @param inFlight the serialized {@link HeadlessGame}s that were being played, by index.
+	 */
+	public BatchCheckpoint(String batch, int nextGame, BitSet completed, WorkResult result, Map<Integer, byte[]> inFlight)
+	{
+		this.batch = batch;
+		this.nextGame = nextGame;
+		this.completed = completed;
+		this.result = result;
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * @return the description of the batch
+	 */
+	public String getBatch()
+	{
+		return batch;
+	}
+
+	/**
+	 * @return the index of the first game that was never started
+	 */
+	public int getNextGame()
+	{
+		return nextGame;
+	}
+
+	/**
+	 * @return the indices of the completed games
+	 */
+	public BitSet getCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * @return the statistics of the completed games
+	 */
+	public WorkResult getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * @return the serialized games that were being played, by index
+	 */
+	public Map<Integer, byte[]> getInFlight()
+	{
+		return inFlight;
+	}
+
+	/**
+	 * Writes this checkpoint to a compressed file. The checkpoint is first written to a temporary
+	 * file, which then replaces the target, so that a crash never leaves a truncated checkpoint behind.
+	 * @param file the file to write.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void write(Path file) throws IOException
+	{
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (ObjectOutputStream writer = new ObjectOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))
+		{
+			writer.writeObject(this);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #write(Path)}.
+	 * @param file the file to read.
+	 * @return the checkpoint.
+	 * @throws IOException if an I/O error occurs or the file is not a checkpoint.
+	 */
+	public static BatchCheckpoint read(Path file) throws IOException
+	{
+		try (ObjectInputStream reader = new ObjectInputStream(new GZIPInputStream(new FileInputStream(file.toFile()))))
+		{
+			return (BatchCheckpoint) reader.readObject();
+		}
+		catch (ClassNotFoundException | ClassCastException e)
+		{
+			throw new IOException("The specified file is not a batch checkpoint.", e);
+		}
+	}
+}
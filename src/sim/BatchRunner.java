@@ -0,0 +1,291 @@
+package sim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import player.AbstractPlayer;
+
+/**
+ * Plays a large batch of seeded games on several threads, periodically writing a
+ * {@link BatchCheckpoint} so that an interrupted batch can be resumed where it stopped.
+ * <p>
+ * Every game is derived from its index alone, and the statistics don't depend on the order
+ * games complete in, so a resumed batch produces exactly the results of an uninterrupted one.
+ * Checkpoints are written by a background thread: the worker threads only take a
+ * copy of the game they are playing when a checkpoint asks for it.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class BatchRunner
+{
+	private WorkUnit batch;
+	private int threads;
+	private Path checkpointFile;
+	private long checkpointMillis;
+
+	// Ledger of the completed games, guarded by this
+	private WorkResult result;
+	private BitSet completed;
+
+	private AtomicInteger nextGame;
+	private Queue<Integer> resumed = new ConcurrentLinkedQueue<>();
+	private Map<Integer, byte[]> resumedStates = new ConcurrentHashMap<>();
+	private Map<Integer, byte[]> inFlight = new ConcurrentHashMap<>();
+	private volatile int epoch;
+	private volatile IOException checkpointFailure;
+
+	/**
+	 * Constructs a batch runner.
+	 * @param batch the games to play: all of them are played on the same grid, with the same
+	 * fleet and strategies, and are derived from the seed of the unit.
+	 * @param threads the number of worker threads.
+	 * @param checkpointFile the checkpoint to resume from, if it exists, and to write to.
+	 * @param checkpointMillis the interval between checkpoints, in milliseconds.
+	 */
+	public BatchRunner(WorkUnit batch, int threads, Path checkpointFile, long checkpointMillis)
+	{
+		this.batch = batch;
+		this.threads = threads;
+		this.checkpointFile = checkpointFile;
+		this.checkpointMillis = checkpointMillis;
+	}
+
+	/**
+	 * Plays the batch, resuming it from the checkpoint file if there is one. A final checkpoint
+	 * is written once every game is completed.
+	 * @return the statistics of all the games of the batch.
+	 * @throws IOException if the checkpoint cannot be read or written.
+	 * @throws InterruptedException if interrupted while waiting for the workers.
+	 * @throws IllegalArgumentException if the checkpoint belongs to a different batch.
+	 */
+	public WorkResult run() throws IOException, InterruptedException
+	{
+		restore();
+
+		ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor();
+		checkpointer.scheduleWithFixedDelay(this::checkpoint, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++)
+			futures.add(workers.submit(this::work));
+
+		try
+		{
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("A game of the batch failed.", e.getCause());
+		}
+		finally
+		{
+			workers.shutdownNow();
+			checkpointer.shutdown();
+			checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		if (checkpointFailure != null)
+			throw checkpointFailure;
+		snapshot().write(checkpointFile);
+		return result;
+	}
+
+	/**
+	 * Returns a description of the batch, stored in checkpoints to recognise it.
+	 */
+	private String describe()
+	{
+		return batch.getGroup() + " seed " + batch.getSeed() + " games " + batch.getGames();
+	}
+
+	/**
+	 * Loads the checkpoint, if any, and queues the games it left unfinished.
+	 */
+	private void restore() throws IOException
+	{
+		if (!Files.exists(checkpointFile))
+		{
+			result = new WorkResult(batch.getGroup());
+			completed = new BitSet(batch.getGames());
+			nextGame = new AtomicInteger();
+			return;
+		}
+
+		BatchCheckpoint checkpoint = BatchCheckpoint.read(checkpointFile);
+		if (!checkpoint.getBatch().equals(describe()))
+			throw new IllegalArgumentException("The checkpoint belongs to a different batch: " + checkpoint.getBatch());
+
+		result = checkpoint.getResult();
+		completed = checkpoint.getCompleted();
+		nextGame = new AtomicInteger(checkpoint.getNextGame());
+		for (int i = completed.nextClearBit(0); i < checkpoint.getNextGame(); i = completed.nextClearBit(i + 1))
+			resumed.add(i);
+		for (Map.Entry<Integer, byte[]> entry : checkpoint.getInFlight().entrySet())
+			if (!completed.get(entry.getKey()))
+				resumedStates.put(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Body of a worker thread: plays games until there are none left.
+	 */
+	private void work()
+	{
+		while (true)
+		{
+			Integer index = resumed.poll();
+			if (index == null)
+			{
+				index = nextGame.getAndIncrement();
+				if (index >= batch.getGames())
+					return;
+			}
+
+			byte[] state = resumedStates.remove(index);
+			HeadlessGame game = state != null ? deserialize(state) : newGame(index);
+
+			int seenEpoch = epoch;
+			while (!game.isOver())
+			{
+				game.playTurn();
+				if (seenEpoch != epoch)		// A checkpoint wants to know where this game is
+				{
+					seenEpoch = epoch;
+					inFlight.put(index, serialize(game));
+				}
+			}
+
+			synchronized (this)
+			{
+				result.addGame(game.getWinner().getPlayerName().equals("A"), game.getTurn(), game.getWinnerShots());
+				completed.set(index);
+			}
+			inFlight.remove(index);
+		}
+	}
+
+	/**
+	 * Creates the game with the specified index. The first strategy attacks first in even games.
+	 */
+	private HeadlessGame newGame(int index)
+	{
+		SplittableRandom seeds = new SplittableRandom(batch.getSeed() ^ (index * 0x9E3779B97F4A7C15L));
+		AbstractPlayer a = Strategies.create(batch.getStrategyA(), "A", batch.getGridSize(), seeds.nextLong());
+		AbstractPlayer b = Strategies.create(batch.getStrategyB(), "B", batch.getGridSize(), seeds.nextLong());
+		a.placeShips(batch.getShipLengths());
+		b.placeShips(batch.getShipLengths());
+		return index % 2 == 0 ? new HeadlessGame(a, b) : new HeadlessGame(b, a);
+	}
+
+	/**
+	 * Takes a consistent snapshot of the progress of the batch.
+	 */
+	private BatchCheckpoint snapshot()
+	{
+		WorkResult resultCopy = new WorkResult(batch.getGroup());
+		BitSet completedCopy;
+		synchronized (this)
+		{
+			resultCopy.merge(result);
+			completedCopy = (BitSet) completed.clone();
+		}
+
+		// Games that completed after the ledger was copied are simply replayed from their state
+		Map<Integer, byte[]> states = new HashMap<>();
+		for (Map.Entry<Integer, byte[]> entry : inFlight.entrySet())
+			if (!completedCopy.get(entry.getKey()))
+				states.put(entry.getKey(), entry.getValue());
+		for (Map.Entry<Integer, byte[]> entry : resumedStates.entrySet())
+			states.putIfAbsent(entry.getKey(), entry.getValue());
+
+		int next = Math.min(nextGame.get(), batch.getGames());
+		return new BatchCheckpoint(describe(), next, completedCopy, resultCopy, states);
+	}
+
+	/**
+	 * Writes a checkpoint and asks the workers for fresh copies of their games, which will
+	 * be part of the next checkpoint.
+	 */
+	private void checkpoint()
+	{
+		try
+		{
+			snapshot().write(checkpointFile);
+		}
+		catch (IOException e)
+		{
+			checkpointFailure = e;
+		}
+		epoch++;
+	}
+
+	private static byte[] serialize(HeadlessGame game)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream writer = new ObjectOutputStream(bytes))
+		{
+			writer.writeObject(game);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static HeadlessGame deserialize(byte[] state)
+	{
+		try (ObjectInputStream reader = new ObjectInputStream(new ByteArrayInputStream(state)))
+		{
+			return (HeadlessGame) reader.readObject();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IllegalStateException("The checkpoint contains an unknown game.", e);
+		}
+	}
+
+	/**
+	 * Runs a batch of CPU games, resuming it from its checkpoint if it was interrupted.
+	 * @param args the checkpoint file, optionally followed by the number of games (default 10000),
+	 * the grid size (default 10) and the number of threads (default: one per processor).
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		Path file = Paths.get(args[0]);
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int gridSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		WorkUnit batch = new WorkUnit(0, gridSize, new int[] {4, 3, 3, 2, 2, 1}, Strategies.CPU, Strategies.CPU, 1, games);
+		System.out.println(new BatchRunner(batch, threads, file, 5000).run());
+	}
+}
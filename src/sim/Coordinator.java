@@ -0,0 +1,257 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link Tournament} across several worker processes. The coordinator listens on a local
+ * socket, hands out work units to the {@link Worker}s that connect to it and merges their results.
+ * Units held by a worker that crashes or disconnects are put back in the queue and retried by
+ * another worker, up to a maximum number of attempts.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class Coordinator
+{
+	private static final long POLL_MILLIS = 100;
+
+	private BlockingQueue<WorkUnit> pending;
+	private Map<Integer, WorkResult> results = new ConcurrentHashMap<>();
+	private Map<Integer, Integer> attempts = new ConcurrentHashMap<>();
+	private List<WorkUnit> failed = new CopyOnWriteArrayList<>();
+	private List<WorkUnit> units;
+	private CountDownLatch remaining;
+	private int maxAttempts;
+
+	private ServerSocket server;
+	private List<Process> workers = new ArrayList<>();
+
+	/**
+	 * Constructs a coordinator for the specified work units.
+	 * @param units the units to play.
+	 * @param maxAttempts how many times a unit is sent to a worker before it's given up.
+	 */
+	public Coordinator(List<WorkUnit> units, int maxAttempts)
+	{
+		this.units = units;
+		this.pending = new LinkedBlockingQueue<>(units);
+		this.remaining = new CountDownLatch(units.size());
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Starts listening for workers on an ephemeral port of the loopback interface.
+	 * @return the port the workers must connect to.
+	 * @throws IOException if the socket cannot be opened.
+	 */
+	public int start() throws IOException
+	{
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+		Thread acceptor = new Thread(() -> {
+			try
+			{
+				while (true)
+				{
+					Socket socket = server.accept();
+					Thread handler = new Thread(() -> serve(socket), "coordinator-" + socket.getPort());
+					handler.setDaemon(true);
+					handler.start();
+				}
+			}
+			catch (IOException e)
+			{
+				// The server socket was closed
+			}
+		}, "coordinator-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Launches worker processes on this machine, running on the same JVM and class path as this one.
+	 * @param count the number of workers to launch.
+	 * @param crashAfter the number of units after which each worker crashes on purpose, or a
+	 * negative number for well-behaved workers.
+	 * @throws IOException if a process cannot be started.
+	 * @throws IllegalStateException if the coordinator hasn't been started.
+	 */
+	public void launchLocalWorkers(int count, int crashAfter) throws IOException
+	{
+		if (server == null)
+			throw new IllegalStateException("The coordinator must be started first.");
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		for (int i = 0; i < count; i++)
+		{
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					Worker.class.getName(), server.getInetAddress().getHostAddress(),
+					Integer.toString(server.getLocalPort()), Integer.toString(crashAfter));
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+			workers.add(builder.start());
+		}
+	}
+
+	/**
+	 * Waits until every unit has either been played or given up, then returns the results merged by group.
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of the timeout.
+	 * @return the merged results, in the order the groups appear in the tournament.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if the timeout expires first.
+	 */
+	public Map<String, WorkResult> awaitResults(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		if (!remaining.await(timeout, unit))
+			throw new IllegalStateException((remaining.getCount()) + " units still pending.");
+
+		Map<String, WorkResult> merged = new LinkedHashMap<>();
+		for (WorkUnit u : units)
+		{
+			WorkResult result = results.get(u.getId());
+			if (result != null)
+				merged.computeIfAbsent(u.getGroup(), WorkResult::new).merge(result);
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the units that were given up, either because they failed on the worker or because
+	 * they exhausted their attempts
+	 */
+	public List<WorkUnit> getFailedUnits()
+	{
+		return failed;
+	}
+
+	/**
+	 * Stops accepting workers and waits for the launched worker processes to exit.
+	 */
+	public void close() throws IOException, InterruptedException
+	{
+		if (server != null)
+			server.close();
+		for (Process worker : workers)
+			if (!worker.waitFor(5, TimeUnit.SECONDS))
+				worker.destroyForcibly();
+	}
+
+	/**
+	 * Feeds work units to a single worker until there is no more work or the worker goes away.
+	 */
+	private void serve(Socket socket)
+	{
+		WorkUnit unit = null;
+		try (socket)
+		{
+			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			out.flush();
+			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+
+			while (remaining.getCount() > 0)
+			{
+				unit = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (unit == null)
+					continue;		// Other workers may still fail and give their units back
+
+				attempts.merge(unit.getId(), 1, Integer::sum);
+				out.writeObject(unit);
+				out.reset();
+				out.flush();
+
+				Object reply = in.readObject();
+				if (reply instanceof WorkResult)
+					results.put(unit.getId(), (WorkResult) reply);
+				else
+					failed.add(unit);	// The unit itself is broken: retrying won't help
+				remaining.countDown();
+				unit = null;
+			}
+			out.writeObject(null);
+			out.flush();
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			// The worker crashed or sent garbage: its unit is retried below
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (unit != null)
+				retry(unit);
+		}
+	}
+
+	private void retry(WorkUnit unit)
+	{
+		if (attempts.get(unit.getId()) < maxAttempts)
+			pending.add(unit);
+		else
+		{
+			failed.add(unit);
+			remaining.countDown();
+		}
+	}
+
+	/**
+	 * Runs a sample tournament on local worker processes and prints its results.
+	 * @param args optionally, the number of workers (default 4) and of games per unit (default 50).
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		int workerCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		Tournament tournament = new Tournament(
+				new int[] {10, 15, 20},
+				new int[][] {{4, 3, 2, 1}, {4, 3, 3, 2, 2, 1}},
+				new String[][] {{Strategies.CPU, Strategies.CPU}},
+				new long[] {1, 2, 3, 4},
+				games);
+
+		Coordinator coordinator = new Coordinator(tournament.getUnits(), 3);
+		coordinator.start();
+		coordinator.launchLocalWorkers(workerCount, -1);
+
+		try
+		{
+			for (WorkResult result : coordinator.awaitResults(1, TimeUnit.HOURS).values())
+				System.out.println(result);
+			for (WorkUnit unit : coordinator.getFailedUnits())
+				System.out.println("Failed: unit " + unit.getId() + " (" + unit.getGroup() + ")");
+		}
+		finally
+		{
+			try
+			{
+				coordinator.close();
+			}
+			catch (SocketException e)
+			{
+				// Already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,306 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+import player.AbstractPlayer;
+
+/**
+ * An append-only archive of finished games, meant to hold millions of them for audits and analysis.
+ * <p>
+ * The archive is a directory of segment files, holding the {@link GameRecord}s back to back, each one
+ * preceded by its size, plus an index file holding the position of every record as a {@code long}. Games
+ * are numbered from 0 in the order they are added, so the position of a game is found in constant time at
+ * {@code 8 * id} in the index. Both are memory-mapped for reading, so lookups and sequential scans read
+ * straight from the page cache.
+ * <p>
+ * Records are written through a buffer, which is flushed by {@link #flush()}, when it's full and before
+ * reading a record that is still in it. If the archive wasn't closed properly, records written after the
+ * last indexed one are discarded when it's opened again.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class GameArchive
+{
+	private static final long DEFAULT_SEGMENT_SIZE = 256L << 20;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int OFFSET_BITS = 40;		// Low bits of a position, holding the offset in the segment
+	private static final String INDEX_FILE = "index";
+
+	private Path directory;
+	private long segmentSize;
+
+	private FileChannel index;
+	private FileChannel segment;
+	private int segmentNumber;
+	private long segmentEnd;				// Where the next record goes, buffered ones included
+	private long count;						// Games in the archive, buffered ones included
+	private long flushedCount;
+
+	private ByteBuffer recordBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private ByteBuffer indexBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE / 8);
+
+	private MappedByteBuffer indexMap;
+	private List<MappedByteBuffer> segmentMaps = new ArrayList<>();
+
+	/**
+	 * Opens an archive, creating it if it doesn't exist, with segments of 256 MB.
+	 * @param directory the directory of the archive.
+	 * @throws IOException if the archive can't be opened.
+	 */
+	public GameArchive(Path directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens an archive, creating it if it doesn't exist.
+	 * @param directory the directory of the archive.
+	 * @param segmentSize the size after which a new segment is started.
+	 * @throws IOException if the archive can't be opened.
+	 */
+	public GameArchive(Path directory, long segmentSize) throws IOException
+	{
+		if (segmentSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Segments can't be mapped beyond 2 GB.");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+
+		index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		count = index.size() / 8;
+		index.truncate(count * 8);		// Drops a partly written entry
+		index.position(count * 8);
+		flushedCount = count;
+
+		// Resumes writing after the last indexed record
+		long end = 0;
+		if (count > 0)
+		{
+			ByteBuffer last = ByteBuffer.allocate(8);
+			index.read(last, (count - 1) * 8);
+			long position = last.getLong(0);
+			segmentNumber = (int) (position >>> OFFSET_BITS);
+			long offset = position & ((1L << OFFSET_BITS) - 1);
+			ByteBuffer size = ByteBuffer.allocate(4);
+			try (FileChannel channel = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.READ))
+			{
+				channel.read(size, offset);
+			}
+			end = offset + 4 + size.getInt(0);
+		}
+		openSegment(segmentNumber, end);
+	}
+
+	private Path segmentPath(int number)
+	{
+		return directory.resolve(String.format("segment-%06d", number));
+	}
+
+	private void openSegment(int number, long end) throws IOException
+	{
+		if (segment != null)
+			segment.close();
+		segmentNumber = number;
+		segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment.truncate(end);		// Drops the records written after the last indexed one
+		segment.position(end);
+		segmentEnd = end;
+	}
+
+	/**
+	 * Adds a game to the archive. The id of the record is ignored and replaced by the next one.
+	 * @param record the game.
+	 * @return the id of the game.
+	 * @throws IOException if the game can't be written.
+	 */
+	public synchronized long append(GameRecord record) throws IOException
+	{
+		int size = record.encodedSize();
+		if (4 + size > recordBuffer.capacity())
+			throw new IllegalArgumentException("The record is too large.");
+
+		if (segmentEnd > 0 && segmentEnd + 4 + size > segmentSize)
+		{
+			flush();
+			openSegment(segmentNumber + 1, 0);
+		}
+		if (recordBuffer.remaining() < 4 + size || indexBuffer.remaining() < 8)
+			flush();
+
+		long id = count++;
+		indexBuffer.putLong((long) segmentNumber << OFFSET_BITS | segmentEnd);
+		recordBuffer.putInt(size);
+		int start = recordBuffer.position();
+		record.write(recordBuffer);
+		recordBuffer.putLong(start, id);		// The id is the first field of a record
+		segmentEnd += 4 + size;
+		return id;
+	}
+
+	/**
+	 * Writes the buffered records to the files. The records go first, so that the index never points
+	 * past the end of a segment.
+	 * @throws IOException if the records can't be written.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		recordBuffer.flip();
+		while (recordBuffer.hasRemaining())
+			segment.write(recordBuffer);
+		recordBuffer.clear();
+
+		indexBuffer.flip();
+		while (indexBuffer.hasRemaining())
+			index.write(indexBuffer);
+		indexBuffer.clear();
+		flushedCount = count;
+	}
+
+	/**
+	 * Returns the number of games in the archive.
+	 * @return the number of games.
+	 */
+	public synchronized long size()
+	{
+		return count;
+	}
+
+	/**
+	 * Reads a game.
+	 * @param id the id of the game.
+	 * @return the game.
+	 * @throws IOException if the game can't be read.
+	 * @throws IndexOutOfBoundsException if there is no such game.
+	 */
+	public synchronized GameRecord get(long id) throws IOException
+	{
+		if (id < 0 || id >= count)
+			throw new IndexOutOfBoundsException("No game " + id + " in the archive.");
+		if (id >= flushedCount)
+			flush();
+
+		if (indexMap == null || indexMap.capacity() < (id + 1) * 8)
+			indexMap = index.map(FileChannel.MapMode.READ_ONLY, 0, flushedCount * 8);
+		long position = indexMap.getLong((int) (id * 8));
+		int number = (int) (position >>> OFFSET_BITS);
+		int offset = (int) (position & ((1L << OFFSET_BITS) - 1));
+
+		ByteBuffer records = segmentMap(number, offset + 4);
+		int size = records.getInt(offset);
+		return GameRecord.read(records.duplicate().position(offset + 4).limit(offset + 4 + size));
+	}
+
+	/**
+	 * Returns a mapping of a segment covering at least the specified number of bytes.
+	 */
+	private MappedByteBuffer segmentMap(int number, long needed) throws IOException
+	{
+		while (segmentMaps.size() <= number)
+			segmentMaps.add(null);
+		MappedByteBuffer map = segmentMaps.get(number);
+		if (map == null || map.capacity() < needed || (number == segmentNumber && map.capacity() < segmentEnd))
+		{
+			if (number == segmentNumber)
+				map = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+			else
+				try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.READ))
+				{
+					map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+			segmentMaps.set(number, map);
+		}
+		return map;
+	}
+
+	/**
+	 * Reads every game in order, segment after segment, without going through the index.
+	 * @param action what to do with each game.
+	 * @throws IOException if the archive can't be read.
+	 */
+	public synchronized void scan(Consumer<GameRecord> action) throws IOException
+	{
+		flush();
+		long left = count;
+		for (int number = 0; left > 0 && number <= segmentNumber; number++)
+		{
+			ByteBuffer records = segmentMap(number, 0).duplicate();
+			while (left > 0 && records.remaining() >= 4)
+			{
+				int size = records.getInt();
+				int end = records.position() + size;
+				action.accept(GameRecord.read(records.limit(end)));
+				records.limit(records.capacity()).position(end);
+				left--;
+			}
+		}
+	}
+
+	/**
+	 * Flushes the buffered games and closes the archive.
+	 * @throws IOException if the games can't be written.
+	 */
+	public synchronized void close() throws IOException
+	{
+		flush();
+		segment.close();
+		index.close();
+		indexMap = null;
+		segmentMaps.clear();
+	}
+
+	/**
+	 * Plays and archives a batch of games, then times random lookups and a full scan.
+	 * @param args the archive directory, the number of games (100000) and the grid size (10).
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path directory = Path.of(args[0]);
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int gridSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int[] fleet = {4, 3, 3, 2, 2, 1};
+
+		GameArchive archive = new GameArchive(directory);
+		long start = System.nanoTime();
+		long first = archive.size();
+		for (int i = 0; i < games; i++)
+		{
+			AbstractPlayer a = Strategies.create(Strategies.CPU, "A", gridSize, 2L * i);
+			AbstractPlayer b = Strategies.create(Strategies.CPU, "B", gridSize, 2L * i + 1);
+			a.placeShips(fleet);
+			b.placeShips(fleet);
+			HeadlessGame game = new HeadlessGame(a, b);
+			game.startRecording();
+			game.play();
+			archive.append(GameRecord.of(0, game));
+		}
+		archive.flush();
+		System.out.printf("Archived %d games in %d ms, %d games in the archive%n", games,
+				(System.nanoTime() - start) / 1_000_000, archive.size());
+
+		start = System.nanoTime();
+		SplittableRandom random = new SplittableRandom(1);
+		long turns = 0;
+		for (int i = 0; i < 100000; i++)
+			turns += archive.get(first + random.nextLong(games)).getTurnCount();
+		System.out.printf("100000 random lookups in %d ms (%d turns)%n", (System.nanoTime() - start) / 1_000_000, turns);
+
+		start = System.nanoTime();
+		long[] wins = new long[2];
+		archive.scan(record -> wins[Math.max(0, record.getWinner())]++);
+		System.out.printf("Scanned %d games in %d ms, first attacker won %d%n", wins[0] + wins[1],
+				(System.nanoTime() - start) / 1_000_000, wins[0]);
+		archive.close();
+	}
+}
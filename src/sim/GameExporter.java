@@ -0,0 +1,494 @@
+package sim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import events.OverflowPolicy;
+import player.AbstractPlayer;
+
+/**
+ * Streams finished games to a file for external analysis tools, one line per game, as newline-delimited
+ * JSON or as CSV, optionally compressed with gzip. Every line holds the settings of the game, the ships of
+ * both players, every shot with its result in the order they were fired, the winner and the duration.
+ * <p>
+ * Games are handed to a background thread, which formats and writes them, so the games being played never
+ * wait for the disk. At most a fixed number of games is waiting to be written at any time, and the formatting
+ * buffers are reused, so memory stays the same however many games are exported. When the writer falls behind
+ * and the queue is full, the {@link OverflowPolicy} decides what is given up.
+ * <p>
+ * In both formats ships are {@code x y horizontal length} and shots are {@code turn player x y result}, turns
+ * counting from 1 and player 0 being the one who attacked first. In JSON they are arrays, the result being
+ * {@code "MISS"}, {@code "HIT"} or {@code "SINK"}; in CSV they are separated by colons, the result being
+ * {@code M}, {@code H} or {@code S}, and the ships and shots of a field are separated by spaces.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class GameExporter
+implements AutoCloseable
+{
+	/** The formats games can be exported in. */
+	public enum Format
+	{
+		/** A JSON object per line. */
+		NDJSON,
+		/** Comma-separated values, with a header line. */
+		CSV
+	}
+
+	private static final String CSV_HEADER = "id,gridSize,salvo,fleet,player0,player1,ships0,ships1,shots,winner,turns,durationMs";
+	private static final Entry END = new Entry(null, 0);
+	private static final int MISS = 0;
+	private static final int HIT = 1;
+	private static final int SINK = 2;
+	private static final String[] RESULT_NAMES = {"MISS", "HIT", "SINK"};
+	private static final char[] RESULT_LETTERS = {'M', 'H', 'S'};
+
+	private Format format;
+	private OverflowPolicy policy;
+	private BlockingQueue<Entry> queue;
+	private Writer writer;
+	private Thread thread;
+	private AtomicLong exported = new AtomicLong();
+	private AtomicLong dropped = new AtomicLong();
+	private volatile IOException failure;
+	private volatile boolean closed;
+
+	// Reused for every game by the writer thread
+	private StringBuilder line = new StringBuilder();
+	private int[][] shipAt = new int[2][0];		// The ship at every cell of each player, as its index + 1
+	private byte[][] shotAt = new byte[2][0];		// The result of the first shot at every cell, + 1
+	private int[][] hitsLeft = new int[2][0];
+	private byte[] results = new byte[0];			// The result of every shot of the game, in order
+
+	/**
+	 * A game waiting to be written.
+	 */
+	private static class Entry
+	{
+		private final GameRecord record;
+		private final long durationNanos;
+
+		private Entry(GameRecord record, long durationNanos)
+		{
+			this.record = record;
+			this.durationNanos = durationNanos;
+		}
+	}
+
+	/**
+	 * Opens an exporter, replacing the specified file.
+	 * @param file the file to write.
+	 * @param format the format of the file.
+	 * @param gzip {@code true} to compress the file.
+	 * @param capacity the number of games that can wait to be written.
+	 * @param policy what to do when a game is exported and as many games are waiting already:
+	 * {@link OverflowPolicy#DISCONNECT} stops the export, which is then reported by {@link #close()}.
+	 * @throws IOException if the file can't be created.
+	 */
+	public GameExporter(Path file, Format format, boolean gzip, int capacity, OverflowPolicy policy) throws IOException
+	{
+		this.format = format;
+		this.policy = policy;
+		queue = new ArrayBlockingQueue<>(capacity);
+
+		OutputStream out = Files.newOutputStream(file);
+		if (gzip)
+			out = new GZIPOutputStream(out, 1 << 16);
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+		if (format == Format.CSV)
+		{
+			writer.write(CSV_HEADER);
+			writer.write('\n');
+		}
+
+		thread = new Thread(this::writeLoop, "game-exporter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a game to be written, without waiting.
+	 * @param record the game.
+	 * @param durationNanos how long the game took, in nanoseconds.
+	 * @return {@code true} if the game was queued, {@code false} if it was given up.
+	 * @throws IllegalStateException if the exporter has been closed.
+	 */
+	public boolean export(GameRecord record, long durationNanos)
+	{
+		if (closed)
+			throw new IllegalStateException("The exporter has been closed.");
+		if (failure != null)
+		{
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		Entry entry = new Entry(record, durationNanos);
+		if (queue.offer(entry))
+			return true;
+
+		switch (policy)
+		{
+			case DROP_OLDEST:
+				// Another producer may fill the room again, in which case the new game is given up too
+				if (queue.poll() != null)
+					dropped.incrementAndGet();
+				if (queue.offer(entry))
+					return true;
+				break;
+			case DISCONNECT:
+				failure = new IOException("The export fell behind the games and was stopped.");
+				break;
+			default:
+				break;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * @return the number of games written so far
+	 */
+	public long getExported()
+	{
+		return exported.get();
+	}
+
+	/**
+	 * @return the number of games given up because the writer fell behind or failed
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the games still waiting and closes the file.
+	 * @throws IOException if writing failed, the export was stopped because it fell behind, or the thread
+	 * was interrupted while waiting for the writer.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		try
+		{
+			// A writer that died may have left the queue full: give up on it rather than wait for room
+			while (!queue.offer(END, 100, TimeUnit.MILLISECONDS))
+				if (!thread.isAlive())
+					break;
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the last games.");
+		}
+		if (failure == null && !queue.isEmpty())
+			failure = new IOException("The writer stopped before the last games were written.");
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Writes the queued games until the end of the export, flushing whenever the queue is empty
+	 * so that readers of the file see the games soon.
+	 */
+	private void writeLoop()
+	{
+		try (Writer out = writer)
+		{
+			while (true)
+			{
+				Entry entry = queue.poll();
+				if (entry == null)
+				{
+					out.flush();
+					entry = queue.poll(1, TimeUnit.SECONDS);
+					if (entry == null)
+						continue;
+				}
+				if (entry == END)
+					break;
+				if (failure != null)
+					continue;		// Stopped: the queue is drained until the end
+
+				line.setLength(0);
+				replay(entry.record);
+				if (format == Format.CSV)
+					formatCsv(entry.record, entry.durationNanos);
+				else
+					formatJson(entry.record, entry.durationNanos);
+				line.append('\n');
+				out.append(line);
+				exported.incrementAndGet();
+			}
+		}
+		catch (IOException e)
+		{
+			if (failure == null)
+				failure = e;
+			queue.clear();
+		}
+		catch (RuntimeException e)
+		{
+			if (failure == null)
+				failure = new IOException("The writer failed.", e);
+			queue.clear();
+		}
+		catch (InterruptedException e)
+		{
+			failure = new IOException("The export was interrupted.", e);
+		}
+	}
+
+	/**
+	 * Works out the result of every shot of a game into {@link #results}, by replaying the shots against the
+	 * ships. A cell shot at again gives the result of the first shot at it.
+	 */
+	private void replay(GameRecord record)
+	{
+		int size = record.getGridSize();
+		for (int player = 0; player < 2; player++)
+		{
+			if (shipAt[player].length < size * size)
+			{
+				shipAt[player] = new int[size * size];
+				shotAt[player] = new byte[size * size];
+			}
+			Arrays.fill(shipAt[player], 0, size * size, 0);
+			Arrays.fill(shotAt[player], 0, size * size, (byte) 0);
+
+			int[][] ships = record.getShips(player);
+			if (hitsLeft[player].length < ships.length)
+				hitsLeft[player] = new int[ships.length];
+			for (int i = 0; i < ships.length; i++)
+			{
+				int[] ship = ships[i];
+				for (int k = 0; k < ship[3]; k++)
+					shipAt[player][(ship[0] + (ship[2] == 1 ? k : 0)) * size + ship[1] + (ship[2] == 1 ? 0 : k)] = i + 1;
+				hitsLeft[player][i] = ship[3];
+			}
+		}
+
+		int shots = 0;
+		for (int turn = 0; turn < record.getTurnCount(); turn++)
+			shots += record.getShots(turn).length;
+		if (results.length < shots)
+			results = new byte[Math.max(shots, 2 * results.length)];
+
+		int n = 0;
+		for (int turn = 0; turn < record.getTurnCount(); turn++)
+		{
+			int defender = 1 - turn % 2;
+			for (int cell : record.getShots(turn))
+			{
+				int result = shotAt[defender][cell] - 1;
+				if (result < 0)
+				{
+					int ship = shipAt[defender][cell] - 1;
+					result = ship < 0 ? MISS : --hitsLeft[defender][ship] == 0 ? SINK : HIT;
+					shotAt[defender][cell] = (byte) (result + 1);
+				}
+				results[n++] = (byte) result;
+			}
+		}
+	}
+
+	private void formatJson(GameRecord record, long durationNanos)
+	{
+		line.append("{\"id\":").append(record.getId())
+			.append(",\"gridSize\":").append(record.getGridSize())
+			.append(",\"salvo\":").append(record.getSalvo())
+			.append(",\"fleet\":[");
+		int[][] fleet = record.getShips(0);
+		for (int i = 0; i < fleet.length; i++)
+			line.append(i == 0 ? "" : ",").append(fleet[i][3]);
+		line.append("],\"players\":[");
+		appendJsonString(record.getPlayerName(0));
+		line.append(',');
+		appendJsonString(record.getPlayerName(1));
+		line.append("],\"ships\":[");
+		for (int player = 0; player < 2; player++)
+		{
+			line.append(player == 0 ? "[" : ",[");
+			int[][] ships = record.getShips(player);
+			for (int i = 0; i < ships.length; i++)
+				line.append(i == 0 ? "[" : ",[").append(ships[i][0]).append(',').append(ships[i][1]).append(',')
+					.append(ships[i][2]).append(',').append(ships[i][3]).append(']');
+			line.append(']');
+		}
+		line.append("],\"shots\":[");
+		int size = record.getGridSize();
+		int n = 0;
+		for (int turn = 0; turn < record.getTurnCount(); turn++)
+			for (int cell : record.getShots(turn))
+			{
+				line.append(n == 0 ? "[" : ",[").append(turn + 1).append(',').append(turn % 2).append(',')
+					.append(cell / size).append(',').append(cell % size).append(",\"")
+					.append(RESULT_NAMES[results[n++]]).append("\"]");
+			}
+		line.append("],\"winner\":").append(record.getWinner())
+			.append(",\"turns\":").append(record.getTurnCount())
+			.append(",\"durationMs\":");
+		appendMillis(durationNanos);
+		line.append('}');
+	}
+
+	private void formatCsv(GameRecord record, long durationNanos)
+	{
+		line.append(record.getId()).append(',').append(record.getGridSize()).append(',').append(record.getSalvo()).append(',');
+		int[][] fleet = record.getShips(0);
+		for (int i = 0; i < fleet.length; i++)
+			line.append(i == 0 ? "" : " ").append(fleet[i][3]);
+		for (int player = 0; player < 2; player++)
+		{
+			line.append(',');
+			appendCsvString(record.getPlayerName(player));
+		}
+		for (int player = 0; player < 2; player++)
+		{
+			line.append(',');
+			int[][] ships = record.getShips(player);
+			for (int i = 0; i < ships.length; i++)
+				line.append(i == 0 ? "" : " ").append(ships[i][0]).append(':').append(ships[i][1]).append(':')
+					.append(ships[i][2]).append(':').append(ships[i][3]);
+		}
+		line.append(',');
+		int size = record.getGridSize();
+		int n = 0;
+		for (int turn = 0; turn < record.getTurnCount(); turn++)
+			for (int cell : record.getShots(turn))
+			{
+				line.append(n == 0 ? "" : " ").append(turn + 1).append(':').append(turn % 2).append(':')
+					.append(cell / size).append(':').append(cell % size).append(':')
+					.append(RESULT_LETTERS[results[n++]]);
+			}
+		line.append(',').append(record.getWinner()).append(',').append(record.getTurnCount()).append(',');
+		appendMillis(durationNanos);
+	}
+
+	/**
+	 * Appends a duration in milliseconds, with three decimals.
+	 */
+	private void appendMillis(long nanos)
+	{
+		long micros = nanos / 1000;
+		line.append(micros / 1000).append('.');
+		long fraction = micros % 1000;
+		if (fraction < 100)
+			line.append(fraction < 10 ? "00" : "0");
+		line.append(fraction);
+	}
+
+	private void appendJsonString(String text)
+	{
+		line.append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				line.append('\\').append(c);
+			else if (c < 0x20)
+				line.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			else
+				line.append(c);
+		}
+		line.append('"');
+	}
+
+	private void appendCsvString(String text)
+	{
+		boolean quoted = false;
+		for (int i = 0; i < text.length() && !quoted; i++)
+		{
+			char c = text.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quoted)
+		{
+			line.append(text);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"')
+				line.append('"');
+			line.append(c);
+		}
+		line.append('"');
+	}
+
+	/**
+	 * Plays a batch of games and exports them, showing how long it took and how much memory was used.
+	 * @param args the file to write, optionally followed by the number of games (default 100000), the grid
+	 * size (default 10), {@code --csv} to write CSV instead of JSON and {@code --gzip} to compress the file.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path file = Paths.get(args[0]);
+		int games = 100000;
+		int gridSize = 10;
+		Format format = Format.NDJSON;
+		boolean gzip = false;
+		int position = 0;
+		for (int i = 1; i < args.length; i++)
+			if (args[i].equals("--csv"))
+				format = Format.CSV;
+			else if (args[i].equals("--gzip"))
+				gzip = true;
+			else if (position++ == 0)
+				games = Integer.parseInt(args[i]);
+			else
+				gridSize = Integer.parseInt(args[i]);
+		int[] fleet = {4, 3, 3, 2, 2, 1};
+
+		Runtime runtime = Runtime.getRuntime();
+		long peak = 0;
+		long start = System.nanoTime();
+		GameExporter exporter = new GameExporter(file, format, gzip, 1024, OverflowPolicy.DROP_NEWEST);
+		try
+		{
+			for (int i = 0; i < games; i++)
+			{
+				long gameStart = System.nanoTime();
+				AbstractPlayer a = Strategies.create(Strategies.CPU, "A", gridSize, 2L * i);
+				AbstractPlayer b = Strategies.create(Strategies.CPU, "B", gridSize, 2L * i + 1);
+				a.placeShips(fleet);
+				b.placeShips(fleet);
+				HeadlessGame game = new HeadlessGame(a, b);
+				game.startRecording();
+				game.play();
+				exporter.export(GameRecord.of(i, game), System.nanoTime() - gameStart);
+				if (i % 1000 == 0)
+					peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+			}
+		}
+		finally
+		{
+			exporter.close();
+		}
+		System.out.printf("Exported %d games (%d dropped) in %d ms to %d bytes, at most %d MB of heap in use%n",
+				exporter.getExported(), exporter.getDropped(), (System.nanoTime() - start) / 1_000_000,
+				Files.size(file), peak >> 20);
+	}
+}
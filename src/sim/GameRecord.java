@@ -0,0 +1,283 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import player.AbstractPlayer;
+import player.BoardView;
+import types.Coordinate;
+
+/**
+ * A compact, immutable record of a finished game: the settings, the ships of both players, every shot
+ * and the winner. Records are what a {@link GameArchive} stores, encoded in a few hundred bytes.
+ * <p>
+ * Player 0 is the one who attacked first, so the shots of even turns are fired by player 0 and the
+ * shots of odd turns by player 1. Ships are {@code {x, y, horizontal ? 1 : 0, length}}, {@code (x, y)}
+ * being their top left cell, and cells are {@code x * size + y}.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class GameRecord
+{
+	/** Winner of a game that wasn't finished. */
+	public static final int NO_WINNER = -1;
+
+	private long id;
+	private int gridSize;
+	private int salvo;
+	private String[] playerNames;
+	private int[][][] ships;
+	private int[][] turns;
+	private int winner;
+
+	/**
+	 * Constructs a record.
+	 * @param id the id of the game in its archive.
+	 * @param gridSize the size of the board.
+	 * @param salvo the salvo setting of the game.
+	 * @param playerNames the names of the players, the first attacker first.
+	 * @param ships the ships of each player.
+	 * @param turns the cells shot at in every turn.
+	 * @param winner the index of the winner, or {@link #NO_WINNER}.
+	 */
+	public GameRecord(long id, int gridSize, int salvo, String[] playerNames, int[][][] ships, int[][] turns, int winner)
+	{
+		this.id = id;
+		this.gridSize = gridSize;
+		this.salvo = salvo;
+		this.playerNames = playerNames;
+		this.ships = ships;
+		this.turns = turns;
+		this.winner = winner;
+	}
+
+	/**
+	 * Records a game played with its history being recorded.
+	 * @param id the id of the game in its archive.
+	 * @param game the game.
+	 * @return the record.
+	 * @throws IllegalArgumentException if the game wasn't recorded.
+	 * @see HeadlessGame#startRecording()
+	 */
+	public static GameRecord of(long id, HeadlessGame game)
+	{
+		if (game.getHistory() == null)
+			throw new IllegalArgumentException("The game wasn't recorded.");
+
+		AbstractPlayer first = game.getFirstAttacker();
+		AbstractPlayer second = first == game.getAttacker() ? game.getDefender() : game.getAttacker();
+		int winner = NO_WINNER;
+		if (game.isOver())
+			winner = game.getWinner() == first ? 0 : 1;
+
+		return new GameRecord(id, first.getBoard().getGridSize(), game.getSalvo(),
+				new String[] {first.getPlayerName(), second.getPlayerName()},
+				new int[][][] {shipsOf(first.getBoard()), shipsOf(second.getBoard())},
+				game.getHistory().toArray(new int[0][]), winner);
+	}
+
+	/**
+	 * Finds the ships of a board. Since ships can't touch each other, every group of adjacent ship cells is a ship.
+	 */
+	private static int[][] shipsOf(BoardView board)
+	{
+		int size = board.getGridSize();
+		boolean[][] seen = new boolean[size][size];
+		List<int[]> found = new ArrayList<>();
+		Coordinate pos = new Coordinate();
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+			{
+				pos.set(x, y);
+				if (seen[x][y] || !board.isShipAt(pos))
+					continue;
+
+				// This is the top left cell of the ship, which extends either right or down
+				int length = 0;
+				boolean horizontal = x + 1 < size && board.isShipAt(new Coordinate(x + 1, y));
+				pos.set(x, y);
+				while (pos.getX() < size && pos.getY() < size && board.isShipAt(pos))
+				{
+					seen[pos.getX()][pos.getY()] = true;
+					length++;
+					pos.set(x + (horizontal ? length : 0), y + (horizontal ? 0 : length));
+				}
+				found.add(new int[] {x, y, horizontal ? 1 : 0, length});
+			}
+		return found.toArray(new int[0][]);
+	}
+
+	/**
+	 * Returns the size of this record, once encoded.
+	 * @return the size in bytes.
+	 */
+	public int encodedSize()
+	{
+		int size = 8 + 3;
+		for (String name : playerNames)
+			size += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+		for (int[][] fleet : ships)
+			size += 1 + 3 * fleet.length;
+		size += 2;
+		for (int[] turn : turns)
+			size += 1 + 2 * turn.length;
+		return size;
+	}
+
+	/**
+	 * Encodes this record at the position of the specified buffer.
+	 * @param buffer the buffer, with at least {@link #encodedSize()} bytes remaining.
+	 */
+	public void write(ByteBuffer buffer)
+	{
+		buffer.putLong(id);
+		buffer.put((byte) gridSize);
+		buffer.put((byte) salvo);
+		buffer.put((byte) winner);
+		for (String name : playerNames)
+		{
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			buffer.putShort((short) bytes.length);
+			buffer.put(bytes);
+		}
+		for (int[][] fleet : ships)
+		{
+			buffer.put((byte) fleet.length);
+			for (int[] ship : fleet)
+			{
+				buffer.put((byte) ship[0]);
+				buffer.put((byte) ship[1]);
+				buffer.put((byte) (ship[3] << 1 | ship[2]));
+			}
+		}
+		buffer.putShort((short) turns.length);
+		for (int[] turn : turns)
+		{
+			if (turn.length > 0xFF)
+				throw new IllegalArgumentException("A record can't hold more than 255 shots per turn.");
+			buffer.put((byte) turn.length);
+			for (int cell : turn)
+				buffer.putShort((short) cell);
+		}
+	}
+
+	/**
+	 * Decodes a record from the position of the specified buffer, moving past it.
+	 * @param buffer the buffer.
+	 * @return the record.
+	 */
+	public static GameRecord read(ByteBuffer buffer)
+	{
+		long id = buffer.getLong();
+		int gridSize = buffer.get();
+		int salvo = buffer.get();
+		int winner = buffer.get();
+		String[] names = new String[2];
+		for (int i = 0; i < names.length; i++)
+		{
+			byte[] bytes = new byte[buffer.getShort()];
+			buffer.get(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int[][][] ships = new int[2][][];
+		for (int i = 0; i < ships.length; i++)
+		{
+			ships[i] = new int[buffer.get()][];
+			for (int j = 0; j < ships[i].length; j++)
+			{
+				int x = buffer.get();
+				int y = buffer.get();
+				int packed = buffer.get() & 0xFF;
+				ships[i][j] = new int[] {x, y, packed & 1, packed >>> 1};
+			}
+		}
+		int[][] turns = new int[buffer.getShort() & 0xFFFF][];
+		for (int i = 0; i < turns.length; i++)
+		{
+			turns[i] = new int[buffer.get() & 0xFF];
+			for (int j = 0; j < turns[i].length; j++)
+				turns[i][j] = buffer.getShort() & 0xFFFF;
+		}
+		return new GameRecord(id, gridSize, salvo, names, ships, turns, winner);
+	}
+
+	/**
+	 * @return the id of the game in its archive
+	 */
+	public long getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @return the size of the board
+	 */
+	public int getGridSize()
+	{
+		return gridSize;
+	}
+
+	/**
+	 * @return the salvo setting of the game
+	 */
+	public int getSalvo()
+	{
+		return salvo;
+	}
+
+	/**
+	 * Returns the name of a player.
+	 * @param player 0 for the first attacker, 1 for the other player.
+	 * @return the name.
+	 */
+	public String getPlayerName(int player)
+	{
+		return playerNames[player];
+	}
+
+	/**
+	 * Returns the ships of a player. The arrays must not be modified.
+	 * @param player 0 for the first attacker, 1 for the other player.
+	 * @return the ships.
+	 */
+	public int[][] getShips(int player)
+	{
+		return ships[player];
+	}
+
+	/**
+	 * @return the number of turns played
+	 */
+	public int getTurnCount()
+	{
+		return turns.length;
+	}
+
+	/**
+	 * Returns the cells shot at in a turn. The array must not be modified.
+	 * @param turn the turn, from 0.
+	 * @return the cells.
+	 */
+	public int[] getShots(int turn)
+	{
+		return turns[turn];
+	}
+
+	/**
+	 * @return the index of the winner, or {@link #NO_WINNER} if the game wasn't finished
+	 */
+	public int getWinner()
+	{
+		return winner;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Game " + id + ": " + playerNames[0] + " vs " + playerNames[1] + " on " + gridSize + "x" + gridSize
+				+ ", " + turns.length + " turns, "
+				+ (winner == NO_WINNER ? "unfinished" : playerNames[winner] + " won");
+	}
+}
@@ -0,0 +1,281 @@
+package sim;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import events.GameEvent;
+import events.GameEventPublisher;
+import main.Game;
+import main.GameState;
+import player.AbstractPlayer;
+import player.CPUPlayer;
+import types.Coordinate;
+import types.ShotResults;
+
+/**
+ * A game of battleships played without any console input or output. Used to run simulations,
+ * tournaments and any other batch of games between automated players.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class HeadlessGame
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private AbstractPlayer attacker;
+	private AbstractPlayer defender;
+	private int turn;
+	private int salvo;
+	private transient GameEventPublisher events;
+	private AbstractPlayer firstAttacker;
+	private List<int[]> history;		// The cells shot at in every turn, when recording
+	private transient LongConsumer decisionTimes;
+
+	/**
+	 * Constructs a game between two players whose ships have already been placed. Both players
+	 * are switched to silent mode, and CPU players are told the fleet of their opponent.
+	 * @param attacker the player who attacks first.
+	 * @param defender the player who is attacked first.
+	 */
+	public HeadlessGame(AbstractPlayer attacker, AbstractPlayer defender)
+	{
+		this.attacker = attacker;
+		this.defender = defender;
+		attacker.setVerbose(false);
+		defender.setVerbose(false);
+		if (attacker instanceof CPUPlayer)
+			((CPUPlayer) attacker).setEnemyFleet(defender.getBoard().getShipLengths());
+		if (defender instanceof CPUPlayer)
+			((CPUPlayer) defender).setEnemyFleet(attacker.getBoard().getShipLengths());
+		turn = 0;
+		firstAttacker = attacker;
+	}
+
+	/**
+	 * Constructs a game resuming from a saved game state.
+	 * @param state the game state to resume from.
+	 */
+	public HeadlessGame(GameState state)
+	{
+		this(state.getAttacker(), state.getDefender());
+		turn = state.getTurn();
+		salvo = state.getSalvo();
+	}
+
+	/**
+	 * Sets the salvo mode of this game.
+	 * @param salvo the salvo setting, as described by {@link Game#shotsPerTurn(int, AbstractPlayer)}.
+	 */
+	public void setSalvo(int salvo)
+	{
+		this.salvo = salvo;
+	}
+
+	/**
+	 * Starts keeping the history of the shots of the following turns, so that the game can be archived as a
+	 * {@link GameRecord}. Must be called before the first turn to record the whole game.
+	 */
+	public void startRecording()
+	{
+		history = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the cells shot at in every recorded turn, as {@code x * size + y}.
+	 * @return the history, or {@code null} if the game isn't being recorded.
+	 */
+	public List<int[]> getHistory()
+	{
+		return history;
+	}
+
+	/**
+	 * Returns the player who attacked in the first turn played by this object, which is the
+	 * first turn of the game unless it was resumed from a saved state.
+	 * @return the first attacker.
+	 */
+	public AbstractPlayer getFirstAttacker()
+	{
+		return firstAttacker;
+	}
+
+	/**
+	 * @return the salvo setting of this game
+	 */
+	public int getSalvo()
+	{
+		return salvo;
+	}
+
+	/**
+	 * Sets where the time taken by the attacker to choose the shots of every turn is reported to, in nanoseconds.
+	 * Used to measure the speed of the AIs.
+	 * @param decisionTimes the receiver of the times, or {@code null} not to measure them.
+	 */
+	public void setDecisionTimes(LongConsumer decisionTimes)
+	{
+		this.decisionTimes = decisionTimes;
+	}
+
+	/**
+	 * Sets the publisher the events of this game are reported to.
+	 * @param events the publisher, or {@code null} not to publish anything.
+	 */
+	public void setEventPublisher(GameEventPublisher events)
+	{
+		this.events = events;
+		attacker.setEventPublisher(events);
+		defender.setEventPublisher(events);
+	}
+
+	/**
+	 * Plays a single turn: the attacker shoots, the defender reports the result and,
+	 * unless the game is over, the players swap roles.
+	 * @return {@code true} if the game is over after this turn, {@code false} otherwise.
+	 * @throws IllegalStateException if the game is already over or the attacker doesn't shoot.
+	 */
+	public boolean playTurn()
+	{
+		if (isOver())
+			throw new IllegalStateException("The game is already over.");
+
+		publish(GameEvent.Type.TURN_START, turn + 1, null);
+		long start = decisionTimes == null ? 0 : System.nanoTime();
+		if (salvo == Game.SALVO_OFF)
+		{
+			Coordinate shot = attacker.getShot();
+			if (decisionTimes != null)
+				decisionTimes.accept(System.nanoTime() - start);
+			if (shot == null)
+				throw new IllegalStateException(attacker.getPlayerName() + " refused to shoot.");
+			publish(GameEvent.Type.SHOT, turn + 1, shot);
+
+			ShotResults result = defender.checkFiredShot(shot);
+			attacker.recordShot(shot, result);
+			record(new Coordinate[] {shot});
+		}
+		else
+		{
+			Coordinate[] shots = attacker.getVolley(Game.shotsPerTurn(salvo, attacker));
+			if (decisionTimes != null)
+				decisionTimes.accept(System.nanoTime() - start);
+			if (shots == null)
+				throw new IllegalStateException(attacker.getPlayerName() + " refused to shoot.");
+			for (Coordinate shot : shots)
+				publish(GameEvent.Type.SHOT, turn + 1, shot);
+
+			ShotResults[] results = defender.checkFiredVolley(shots);
+			attacker.recordVolley(shots, results);
+			record(shots);
+		}
+		turn++;
+
+		if (defender.isDefeated())
+		{
+			publish(GameEvent.Type.GAME_END, turn, null);
+			return true;
+		}
+
+		AbstractPlayer swap = attacker;
+		attacker = defender;
+		defender = swap;
+		return false;
+	}
+
+	/**
+	 * Adds the shots of a turn to the history, if the game is being recorded.
+	 */
+	private void record(Coordinate[] shots)
+	{
+		if (history == null)
+			return;
+		int size = attacker.getBoard().getGridSize();
+		int[] cells = new int[shots.length];
+		for (int i = 0; i < shots.length; i++)
+			cells[i] = shots[i].getX() * size + shots[i].getY();
+		history.add(cells);
+	}
+
+	/**
+	 * Publishes an event about the attacker, if anybody is listening.
+	 */
+	private void publish(GameEvent.Type type, int turn, Coordinate shot)
+	{
+		if (events != null && events.hasSubscribers())
+			events.publish(new GameEvent(type, turn, attacker.getPlayerName(), attacker.getPlayerId(),
+					shot == null ? -1 : shot.getX(), shot == null ? -1 : shot.getY()));
+	}
+
+	/**
+	 * Plays turns until one of the players is defeated.
+	 * @return the winner.
+	 */
+	public AbstractPlayer play()
+	{
+		while (!playTurn());
+		return attacker;
+	}
+
+	/**
+	 * Returns whether one of the players has been defeated.
+	 * @return {@code true} if the game is over, {@code false} otherwise.
+	 */
+	public boolean isOver()
+	{
+		return defender.isDefeated();
+	}
+
+	/**
+	 * Returns the winner of the game, or {@code null} if the game is still running.
+	 * @return the winner.
+	 */
+	public AbstractPlayer getWinner()
+	{
+		return isOver() ? attacker : null;
+	}
+
+	/**
+	 * Returns the number of shots the winner fired, or {@code 0} if the game is still running.
+	 * @return the shots needed by the winner.
+	 */
+	public int getWinnerShots()
+	{
+		return isOver() ? attacker.getShotsFired() : 0;
+	}
+
+	/**
+	 * @return the attacker
+	 */
+	public AbstractPlayer getAttacker()
+	{
+		return attacker;
+	}
+
+	/**
+	 * @return the defender
+	 */
+	public AbstractPlayer getDefender()
+	{
+		return defender;
+	}
+
+	/**
+	 * @return the number of turns played so far
+	 */
+	public int getTurn()
+	{
+		return turn;
+	}
+
+	/**
+	 * Returns the state of this game, suitable to be saved and resumed later.
+	 * @return the game state.
+	 */
+	public GameState getState()
+	{
+		return new GameState(attacker, defender, turn, salvo);
+	}
+}
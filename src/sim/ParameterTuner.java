@@ -0,0 +1,254 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import player.CPUParameters;
+import player.CPUPlayer;
+
+/**
+ * Tunes the settings of the {@link CPUPlayer} AI for a grid size and fleet, looking for the settings that
+ * win their self-play games in the fewest shots.
+ * <p>
+ * The search is a (1 + lambda) evolution strategy: every generation mutates the best settings found so far
+ * into lambda candidates, evaluated in parallel on the same seeded games, and the step size grows or shrinks
+ * with the share of candidates that improve. Candidates are raced: one whose games are clearly worse
+ * than the best settings stops being played early. The whole search stops after a number of
+ * generations without improvement.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class ParameterTuner
+{
+	private static final int MAX_WEIGHT = 32;
+	private static final int RACE_BLOCKS = 8;			// How often a candidate is checked against the best
+	private static final double RACE_MARGIN = 2.5;		// Standard errors a candidate must be behind to be dropped
+	private static final double TARGET_SUCCESS = 0.2;	// Share of improving candidates keeping the step size constant
+
+	private int gridSize;
+	private int[] fleet;
+	private int games;
+	private int candidates;
+	private SplittableRandom random;
+	private ExecutorService pool;
+
+	private CPUParameters best;
+	private double bestScore;
+
+	/**
+	 * Constructs a tuner.
+	 * @param gridSize the size of the board.
+	 * @param fleet the lengths of the ships of each player.
+	 * @param games the number of games every candidate plays.
+	 * @param threads the number of threads to play on. Every generation has twice as many candidates.
+	 * @param seed the seed all the games and mutations derive from.
+	 */
+	public ParameterTuner(int gridSize, int[] fleet, int games, int threads, long seed)
+	{
+		this.gridSize = gridSize;
+		this.fleet = fleet.clone();
+		this.games = games;
+		this.candidates = 2 * threads;
+		this.random = new SplittableRandom(seed);
+		pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "tuner");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Searches for the best settings, starting from the default ones.
+	 * @param generations the maximum number of generations.
+	 * @param patience the number of generations without improvement after which the search stops.
+	 * @return the best settings found.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the games.
+	 */
+	public CPUParameters tune(int generations, int patience) throws InterruptedException
+	{
+		int maxLength = Arrays.stream(fleet).max().orElse(1);
+		int[] weights = new int[maxLength + 1];
+		for (int length = 2; length <= maxLength; length++)
+			weights[length] = CPUParameters.DEFAULT.getLengthWeight(Math.min(length, CPUParameters.DEFAULT.getMaxShipLength()));
+		best = new CPUParameters(weights, CPUParameters.DEFAULT.isRandomTieBreak(), CPUParameters.DEFAULT.isTargetMode());
+		bestScore = evaluate(best, Double.POSITIVE_INFINITY);
+		System.out.println("Generation 0: " + format(bestScore) + " shots with " + best);
+
+		double step = 2;
+		int stale = 0;
+		for (int generation = 1; generation <= generations && stale < patience; generation++)
+		{
+			List<CPUParameters> offspring = new ArrayList<>(candidates);
+			for (int i = 0; i < candidates; i++)
+				offspring.add(mutate(best, step));
+
+			List<Future<Double>> scores = new ArrayList<>(candidates);
+			double threshold = bestScore;
+			for (CPUParameters candidate : offspring)
+				scores.add(pool.submit(() -> evaluate(candidate, threshold)));
+
+			int improved = 0;
+			CPUParameters generationBest = null;
+			double generationScore = bestScore;
+			for (int i = 0; i < candidates; i++)
+			{
+				double score = await(scores.get(i));
+				if (score < bestScore)
+					improved++;
+				if (score < generationScore)
+				{
+					generationScore = score;
+					generationBest = offspring.get(i);
+				}
+			}
+
+			if (generationBest != null)
+			{
+				best = generationBest;
+				bestScore = generationScore;
+				stale = 0;
+			}
+			else
+				stale++;
+
+			// One-fifth success rule
+			step *= Math.exp(((double) improved / candidates - TARGET_SUCCESS) / (1 - TARGET_SUCCESS));
+			step = Math.max(0.5, Math.min(MAX_WEIGHT / 2.0, step));
+			System.out.println("Generation " + generation + ": " + format(bestScore) + " shots with " + best
+					+ " (" + improved + " improved, step " + format(step) + ")");
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the mean number of shots the best settings needed to win.
+	 * @return the score of the best settings, or {@code NaN} before tuning.
+	 */
+	public double getBestScore()
+	{
+		return best == null ? Double.NaN : bestScore;
+	}
+
+	/**
+	 * Stops the threads of this tuner.
+	 */
+	public void close()
+	{
+		pool.shutdownNow();
+	}
+
+	private static double await(Future<Double> score) throws InterruptedException
+	{
+		try
+		{
+			return score.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("A tuning game failed.", e.getCause());
+		}
+	}
+
+	private static String format(double value)
+	{
+		return String.format("%.2f", value);
+	}
+
+	/**
+	 * Mutates every weight by a normally distributed step, and rarely flips the other settings.
+	 */
+	private CPUParameters mutate(CPUParameters parent, double step)
+	{
+		int maxLength = parent.getMaxShipLength();
+		int[] weights = new int[maxLength + 1];
+		boolean changed = false;
+		synchronized (random)
+		{
+			while (!changed)
+			{
+				for (int length = 2; length <= maxLength; length++)
+				{
+					weights[length] = (int) Math.round(parent.getLengthWeight(length) + random.nextGaussian() * step);
+					weights[length] = Math.max(0, Math.min(MAX_WEIGHT, weights[length]));
+					changed |= weights[length] != parent.getLengthWeight(length);
+				}
+				boolean randomTieBreak = parent.isRandomTieBreak() ^ (random.nextInt(10) == 0);
+				boolean targetMode = parent.isTargetMode() ^ (random.nextInt(10) == 0);
+				changed |= randomTieBreak != parent.isRandomTieBreak() || targetMode != parent.isTargetMode();
+				if (changed)
+					return new CPUParameters(weights, randomTieBreak, targetMode);
+			}
+		}
+		return parent;
+	}
+
+	/**
+	 * Plays the seeded self-play games of a candidate, reusing the same two players for all of them.
+	 * @param candidate the settings to evaluate.
+	 * @param best the score to beat: the games stop as soon as the candidate is clearly worse.
+	 * @return the mean number of shots the winners needed, or infinity if the candidate was dropped.
+	 */
+	private double evaluate(CPUParameters candidate, double best)
+	{
+		CPUPlayer first = new CPUPlayer("first", gridSize, 0, candidate);
+		CPUPlayer second = new CPUPlayer("second", gridSize, 0, candidate);
+		first.setVerbose(false);
+		second.setVerbose(false);
+
+		double sum = 0;
+		double squares = 0;
+		int block = Math.max(1, games / RACE_BLOCKS);
+		for (int index = 0; index < games; index++)
+		{
+			// The same seeds as the batch runner, so every candidate faces the same placements
+			SplittableRandom seeds = new SplittableRandom(index * 0x9E3779B97F4A7C15L);
+			first.reset(seeds.nextLong());
+			second.reset(seeds.nextLong());
+			first.placeShips(fleet);
+			second.placeShips(fleet);
+
+			HeadlessGame game = new HeadlessGame(index % 2 == 0 ? first : second, index % 2 == 0 ? second : first);
+			game.play();
+			int shots = game.getWinnerShots();
+			sum += shots;
+			squares += (double) shots * shots;
+
+			int played = index + 1;
+			if (played % block == 0 && played < games)
+			{
+				double mean = sum / played;
+				double error = Math.sqrt(Math.max(0, squares / played - mean * mean) / played);
+				if (mean - RACE_MARGIN * error > best)
+					return Double.POSITIVE_INFINITY;
+			}
+		}
+		return sum / games;
+	}
+
+	/**
+	 * Tunes the AI and prints the best settings found.
+	 * @param args the grid size (10), the fleet as comma separated lengths ({@code 4,3,3,2,2,1}), the games
+	 * per candidate (2000), the maximum generations (30), the generations without improvement before stopping (5)
+	 * and the number of threads (one per processor).
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int[] fleet = Arrays.stream((args.length > 1 ? args[1] : "4,3,3,2,2,1").split(",")).mapToInt(Integer::parseInt).toArray();
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int generations = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+		int patience = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+		ParameterTuner tuner = new ParameterTuner(gridSize, fleet, games, threads, 1);
+		CPUParameters best = tuner.tune(generations, patience);
+		System.out.println("Best: " + best + ", " + format(tuner.getBestScore()) + " shots to win");
+		tuner.close();
+	}
+}
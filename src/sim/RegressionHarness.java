@@ -0,0 +1,346 @@
+package sim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+
+import main.Game;
+import player.AbstractPlayer;
+import player.Board;
+import types.Coordinate;
+import types.Directions;
+
+/**
+ * Replays a fixed corpus of seeded games to tell whether a change to an AI made it slower or made it play worse.
+ * The placements of the ships and the seeds of the players only depend on the corpus, so every build of an AI
+ * plays the same games. The time taken by every decision, the memory allocated per turn and the shots needed to
+ * win are measured, and compared with a baseline measured earlier.
+ * <p>
+ * Nothing is read from or written to the console, except by {@link #main(String[])}.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class RegressionHarness
+{
+	/** The description of the corpus the metrics were measured on. */
+	public static final String CORPUS = "corpus";
+	/** The average number of shots fired by the winners. */
+	public static final String SHOTS_TO_WIN = "shotsToWin.mean";
+	/** The average number of turns of the games. */
+	public static final String TURNS = "turns.mean";
+	/** The median time taken to choose the shots of a turn, in nanoseconds. */
+	public static final String DECISION_P50 = "decision.p50.ns";
+	/** The 90th percentile of the time taken to choose the shots of a turn, in nanoseconds. */
+	public static final String DECISION_P90 = "decision.p90.ns";
+	/** The 99th percentile of the time taken to choose the shots of a turn, in nanoseconds. */
+	public static final String DECISION_P99 = "decision.p99.ns";
+	/** The memory allocated by a turn on average, in bytes. Not measured on JVMs that can't tell. */
+	public static final String ALLOCATION = "allocation.perTurn.bytes";
+
+	private static final int MAX_RESTARTS = 1000;		// Attempts at placing the whole fleet
+	private static final int MAX_ATTEMPTS = 1000;		// Attempts at placing a single ship
+
+	private String strategy;
+	private int gridSize;
+	private int[] fleet;
+	private int games;
+	private long seed;
+	private int salvo;
+	private int warmupGames;
+	private Map<String, Double> tolerances = new LinkedHashMap<>();
+
+	/**
+	 * Constructs a harness for the specified corpus. By default the whole corpus is played once before
+	 * measuring, to let the JIT compile the AI, and the metrics may grow by 1% for the quality of the
+	 * play, 25% for the decision times (50% for the 99th percentile) and 10% for the allocations.
+	 * @param strategy the strategy of both players, as understood by {@link Strategies}.
+	 * @param gridSize the size of the boards.
+	 * @param fleet the lengths of the ships of each player.
+	 * @param games the number of games of the corpus.
+	 * @param seed the seed the games are derived from.
+	 * @param salvo the salvo setting, as described by {@link Game#shotsPerTurn(int, AbstractPlayer)}.
+	 * @throws IllegalArgumentException if the number of games is not positive.
+	 */
+	public RegressionHarness(String strategy, int gridSize, int[] fleet, int games, long seed, int salvo)
+	{
+		if (games <= 0)
+			throw new IllegalArgumentException("The number of games must be positive.");
+		this.strategy = strategy;
+		this.gridSize = gridSize;
+		this.fleet = fleet.clone();
+		this.games = games;
+		this.seed = seed;
+		this.salvo = salvo;
+		warmupGames = games;
+
+		tolerances.put(SHOTS_TO_WIN, 0.01);
+		tolerances.put(TURNS, 0.01);
+		tolerances.put(DECISION_P50, 0.25);
+		tolerances.put(DECISION_P90, 0.25);
+		tolerances.put(DECISION_P99, 0.5);
+		tolerances.put(ALLOCATION, 0.1);
+	}
+
+	/**
+	 * Sets the number of games played before measuring, which are the first games of the corpus.
+	 * @param warmupGames the number of games, 0 not to warm up.
+	 */
+	public void setWarmupGames(int warmupGames)
+	{
+		this.warmupGames = warmupGames;
+	}
+
+	/**
+	 * Sets how much a metric may grow before it counts as a regression.
+	 * @param metric the name of the metric.
+	 * @param tolerance the largest growth allowed, as a fraction of the baseline.
+	 */
+	public void setTolerance(String metric, double tolerance)
+	{
+		tolerances.put(metric, tolerance);
+	}
+
+	/**
+	 * @return the largest growth allowed for every metric, as a fraction of the baseline
+	 */
+	public Map<String, Double> getTolerances()
+	{
+		return Collections.unmodifiableMap(tolerances);
+	}
+
+	/**
+	 * Returns a description of the corpus, which tells whether two sets of metrics can be compared.
+	 * @return the description.
+	 */
+	public String describe()
+	{
+		return strategy + " " + gridSize + "x" + gridSize + " " + Arrays.toString(fleet) + ", " + games + " games, seed " + seed + ", salvo " + salvo;
+	}
+
+	/**
+	 * Plays the corpus and measures the metrics.
+	 * @return the metrics, by name, along with the description of the corpus.
+	 * @throws IllegalArgumentException if the fleet doesn't fit on the board.
+	 */
+	public Properties run()
+	{
+		for (int i = 0; i < Math.min(warmupGames, games); i++)
+			newGame(i).play();
+
+		// Room for the longest games, so that the measured code is the only one allocating
+		long[] times = new long[games * 2 * gridSize * gridSize];
+		int[] decisions = new int[1];
+		LongConsumer timer = time -> times[decisions[0]++] = time;
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()
+				? (com.sun.management.ThreadMXBean) threads : null;
+
+		long turns = 0;
+		long shots = 0;
+		long allocated = 0;
+		for (int i = 0; i < games; i++)
+		{
+			HeadlessGame game = newGame(i);
+			game.setDecisionTimes(timer);
+			long before = allocations == null ? 0 : allocations.getCurrentThreadAllocatedBytes();
+			game.play();
+			if (allocations != null)
+				allocated += allocations.getCurrentThreadAllocatedBytes() - before;
+			turns += game.getTurn();
+			shots += game.getWinnerShots();
+		}
+
+		long[] sorted = Arrays.copyOf(times, decisions[0]);
+		Arrays.sort(sorted);
+		Properties metrics = new Properties();
+		metrics.setProperty(CORPUS, describe());
+		metrics.setProperty(SHOTS_TO_WIN, format((double) shots / games));
+		metrics.setProperty(TURNS, format((double) turns / games));
+		metrics.setProperty(DECISION_P50, Long.toString(percentile(sorted, 0.5)));
+		metrics.setProperty(DECISION_P90, Long.toString(percentile(sorted, 0.9)));
+		metrics.setProperty(DECISION_P99, Long.toString(percentile(sorted, 0.99)));
+		if (allocations != null)
+			metrics.setProperty(ALLOCATION, format((double) allocated / turns));
+		return metrics;
+	}
+
+	/**
+	 * Plays the corpus and compares the metrics with the baseline.
+	 * @param baseline the baseline metrics, as returned by {@link #run()} on an earlier build.
+	 * @return the comparison.
+	 */
+	public RegressionReport check(Properties baseline)
+	{
+		return new RegressionReport(baseline, run(), tolerances);
+	}
+
+	/**
+	 * Creates the game with the specified index. The players are the same for every build of the AI,
+	 * and so are their ships, which are placed by the harness. The first player attacks first in even games.
+	 */
+	private HeadlessGame newGame(int index)
+	{
+		SplittableRandom seeds = new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+		AbstractPlayer a = Strategies.create(strategy, "A", gridSize, seeds.nextLong());
+		AbstractPlayer b = Strategies.create(strategy, "B", gridSize, seeds.nextLong());
+		placeFleet(a.getBoard(), seeds.split());
+		placeFleet(b.getBoard(), seeds.split());
+		HeadlessGame game = index % 2 == 0 ? new HeadlessGame(a, b) : new HeadlessGame(b, a);
+		game.setSalvo(salvo);
+		return game;
+	}
+
+	/**
+	 * Places the fleet at random on an empty board, starting over whenever a ship doesn't fit.
+	 */
+	private void placeFleet(Board board, SplittableRandom random)
+	{
+		Directions[] directions = Directions.values();
+		Coordinate position = new Coordinate();
+		for (int restart = 0; restart < MAX_RESTARTS; restart++)
+		{
+			board.clear();
+			boolean placed = true;
+			for (int length : fleet)
+			{
+				placed = false;
+				for (int attempt = 0; attempt < MAX_ATTEMPTS && !placed; attempt++)
+				{
+					position.set(random.nextInt(gridSize), random.nextInt(gridSize));
+					placed = board.placeShip(position, directions[random.nextInt(directions.length)], length);
+				}
+				if (!placed)
+					break;
+			}
+			if (placed)
+				return;
+		}
+		throw new IllegalArgumentException("The fleet doesn't fit on the board.");
+	}
+
+	private static long percentile(long[] sorted, double fraction)
+	{
+		if (sorted.length == 0)
+			return 0;
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+	}
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * Reads a baseline written by {@link #save(Properties, Path)}.
+	 * @param file the file to read.
+	 * @return the metrics.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static Properties load(Path file) throws IOException
+	{
+		Properties metrics = new Properties();
+		try (Reader reader = Files.newBufferedReader(file))
+		{
+			metrics.load(reader);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Writes metrics to a file, one per line in order of name, so that baselines can be compared by eye and
+	 * kept under version control. The file is first written to a temporary file, which then replaces the target.
+	 * @param metrics the metrics.
+	 * @param file the file to write.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void save(Properties metrics, Path file) throws IOException
+	{
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp))
+		{
+			writer.write("# Regression baseline");
+			writer.newLine();
+			for (Map.Entry<String, String> entry : toMap(metrics).entrySet())
+			{
+				writer.write(entry.getKey() + "=" + entry.getValue().replace("\\", "\\\\"));
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Map<String, String> toMap(Properties metrics)
+	{
+		Map<String, String> map = new TreeMap<>();
+		for (String name : metrics.stringPropertyNames())
+			map.put(name, metrics.getProperty(name));
+		return map;
+	}
+
+	/**
+	 * Checks the standard CPU player against a baseline, or records the baseline. Exits with status 1 if any
+	 * metric regressed.
+	 * @param args the baseline file, optionally followed by {@code --update} to record the baseline again,
+	 * {@code --games=N} (default 500), {@code --seed=N} (default 1), {@code --grid=N} (default 10),
+	 * {@code --salvo=N} (default 0) and {@code --strategy=NAME} (default the standard CPU player).
+	 * A missing baseline is recorded.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path file = Paths.get(args[0]);
+		boolean update = false;
+		int games = 500;
+		long seed = 1;
+		int gridSize = 10;
+		int salvo = Game.SALVO_OFF;
+		String strategy = Strategies.CPU;
+		for (int i = 1; i < args.length; i++)
+		{
+			if (args[i].equals("--update"))
+				update = true;
+			else if (args[i].startsWith("--games="))
+				games = Integer.parseInt(args[i].substring("--games=".length()));
+			else if (args[i].startsWith("--seed="))
+				seed = Long.parseLong(args[i].substring("--seed=".length()));
+			else if (args[i].startsWith("--grid="))
+				gridSize = Integer.parseInt(args[i].substring("--grid=".length()));
+			else if (args[i].startsWith("--salvo="))
+				salvo = Integer.parseInt(args[i].substring("--salvo=".length()));
+			else if (args[i].startsWith("--strategy="))
+				strategy = args[i].substring("--strategy=".length());
+			else
+				System.out.println("Unknown argument \"" + args[i] + "\" ignored.");
+		}
+
+		RegressionHarness harness = new RegressionHarness(strategy, gridSize, new int[] {4, 3, 3, 2, 2, 1}, games, seed, salvo);
+		if (update || !Files.exists(file))
+		{
+			save(harness.run(), file);
+			System.out.println("Baseline of " + harness.describe() + " written to " + file + ".");
+			return;
+		}
+
+		RegressionReport report = harness.check(load(file));
+		System.out.println(report);
+		if (report.isRegression())
+			System.exit(1);
+	}
+}
@@ -0,0 +1,100 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The comparison of the metrics measured by a {@link RegressionHarness} with a baseline. Every metric
+ * is better when lower, and regresses when it grows by more than its tolerance.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class RegressionReport
+{
+	private String corpus;
+	private List<String> lines = new ArrayList<>();
+	private List<String> regressions = new ArrayList<>();
+
+	/**
+	 * Compares the current metrics with the baseline.
+	 * @param baseline the baseline metrics.
+	 * @param current the current metrics.
+	 * @param tolerances the largest growth allowed for every metric compared, as a fraction of the baseline.
+	 */
+	public RegressionReport(Properties baseline, Properties current, Map<String, Double> tolerances)
+	{
+		corpus = current.getProperty(RegressionHarness.CORPUS);
+		String baselineCorpus = baseline.getProperty(RegressionHarness.CORPUS);
+		if (baselineCorpus != null && !baselineCorpus.equals(corpus))
+		{
+			regressions.add(RegressionHarness.CORPUS);
+			lines.add("The baseline was measured on a different corpus: " + baselineCorpus);
+		}
+
+		lines.add(String.format(Locale.ROOT, "%-28s %14s %14s %9s %8s", "metric", "baseline", "current", "change", "limit"));
+		for (Map.Entry<String, Double> entry : tolerances.entrySet())
+		{
+			String metric = entry.getKey();
+			String before = baseline.getProperty(metric);
+			String after = current.getProperty(metric);
+			if (before == null || after == null)
+			{
+				lines.add(String.format(Locale.ROOT, "%-28s %14s %14s %9s %8s  not measured", metric,
+						before == null ? "-" : before, after == null ? "-" : after, "", ""));
+				continue;
+			}
+
+			double b = Double.parseDouble(before);
+			double a = Double.parseDouble(after);
+			double change = b == 0 ? (a == 0 ? 0 : Double.POSITIVE_INFINITY) : (a - b) / b;
+			String verdict;
+			if (change > entry.getValue())
+			{
+				verdict = "REGRESSED";
+				regressions.add(metric);
+			}
+			else
+				verdict = change < -entry.getValue() ? "improved" : "ok";
+			lines.add(String.format(Locale.ROOT, "%-28s %14s %14s %+8.2f%% %+7.2f%%  %s", metric, before, after,
+					100 * change, 100 * entry.getValue(), verdict));
+		}
+	}
+
+	/**
+	 * Returns whether any metric regressed beyond its tolerance, or the baseline belongs to another corpus.
+	 * @return {@code true} if the AI got worse.
+	 */
+	public boolean isRegression()
+	{
+		return !regressions.isEmpty();
+	}
+
+	/**
+	 * @return the names of the metrics that regressed
+	 */
+	public List<String> getRegressions()
+	{
+		return Collections.unmodifiableList(regressions);
+	}
+
+	/**
+	 * Returns the comparison as a table, one metric per line, followed by the verdict.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder("Regression check on ").append(corpus).append('\n');
+		for (String line : lines)
+			text.append(line).append('\n');
+		if (regressions.isEmpty())
+			text.append("No regressions.");
+		else
+			text.append(regressions.size()).append(regressions.size() == 1 ? " metric regressed: " : " metrics regressed: ")
+				.append(String.join(", ", regressions));
+		return text.toString();
+	}
+}
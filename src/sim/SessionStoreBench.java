@@ -0,0 +1,111 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import main.GameState;
+import main.SessionStore;
+import player.AbstractPlayer;
+
+/**
+ * Measures a {@link SessionStore} under the load of a server, with headless games standing in for the players.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class SessionStoreBench
+{
+	private SessionStoreBench()
+	{
+	}
+
+	/**
+	 * Plays CPU games on several threads through a {@link SessionStore} holding a fraction of them, most requests going to a
+	 * few hot games, as players of a server would, and reports the latency of the requests and the statistics
+	 * of the store. Every request plays a turn, and finished games are replaced by new ones.
+	 * @param args the directory of the snapshots, then optionally the number of sessions (2000), the capacity
+	 * (200), the number of requests (200000) and of threads (4).
+	 * @throws IOException if the directory can't be used.
+	 * @throws InterruptedException if interrupted while waiting for the threads.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		Path directory = Path.of(args[0]);
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		int requests = args.length > 3 ? Integer.parseInt(args[3]) : 200000;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+		int[] fleet = {4, 3, 3, 2, 2, 1};
+		AtomicLong seeds = new AtomicLong();
+		UnaryOperator<GameState> play = state ->
+		{
+			HeadlessGame game;
+			if (state == null || state.getDefender().isDefeated())
+			{
+				long seed = seeds.getAndAdd(2);
+				AbstractPlayer a = Strategies.create(Strategies.CPU, "A", 10, seed);
+				AbstractPlayer b = Strategies.create(Strategies.CPU, "B", 10, seed + 1);
+				a.placeShips(fleet);
+				b.placeShips(fleet);
+				game = new HeadlessGame(a, b);
+			}
+			else
+				game = new HeadlessGame(state);
+			game.playTurn();
+			return game.getState();
+		};
+
+		try (SessionStore store = new SessionStore(directory, capacity))
+		{
+			for (int i = 0; i < count; i++)
+				store.put("session-" + i, play.apply(null));
+			while (store.getResidentCount() > capacity)		// Lets the passivation thread catch up
+				Thread.sleep(10);
+
+			long[][] latencies = new long[threads][];
+			List<Thread> workers = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; t++)
+			{
+				int thread = t;
+				Thread worker = new Thread(() ->
+				{
+					SplittableRandom random = new SplittableRandom(thread);
+					long[] times = new long[requests / threads];
+					for (int r = 0; r < times.length; r++)
+					{
+						// Nine requests out of ten go to a tenth of the games
+						int session = random.nextInt(10) < 9 ? random.nextInt(count / 10) : random.nextInt(count);
+						long begin = System.nanoTime();
+						store.update("session-" + session, play);
+						times[r] = System.nanoTime() - begin;
+					}
+					latencies[thread] = times;
+				});
+				workers.add(worker);
+				worker.start();
+			}
+			for (Thread worker : workers)
+				worker.join();
+			long elapsed = System.nanoTime() - start;
+
+			long[] all = new long[0];
+			for (long[] times : latencies)
+			{
+				int from = all.length;
+				all = Arrays.copyOf(all, from + times.length);
+				System.arraycopy(times, 0, all, from, times.length);
+			}
+			Arrays.sort(all);
+			System.out.printf("%d requests on %d threads in %d ms: median %.1f us, 99%% %.1f us, 99.9%% %.1f us%n",
+					all.length, threads, elapsed / 1_000_000, all[all.length / 2] / 1e3, all[all.length * 99 / 100] / 1e3,
+					all[all.length * 999 / 1000] / 1e3);
+			System.out.println(store);
+		}
+	}
+}
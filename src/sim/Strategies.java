@@ -0,0 +1,43 @@
+package sim;
+
+import player.AbstractPlayer;
+import player.CPUPlayer;
+
+/**
+ * Creates the automated players used by headless games from a strategy name, so that
+ * simulations and tournaments can describe their players as plain, serializable strings.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class Strategies
+{
+	/**
+	 * The strategy of the standard CPU player.
+	 */
+	public static final String CPU = "cpu";
+
+	private Strategies()
+	{
+	}
+
+	/**
+	 * Creates a silent player for the specified strategy.
+	 * @param strategy the name of the strategy.
+	 * @param playerName the name of the player.
+	 * @param gridSize the size of the board.
+	 * @param seed the seed of the player's random number generator.
+	 * @return the new player, with no ships placed yet.
+	 * @throws IllegalArgumentException if the strategy is unknown.
+	 */
+	public static AbstractPlayer create(String strategy, String playerName, int gridSize, long seed)
+	{
+		AbstractPlayer player;
+		if (strategy.equals(CPU))
+			player = new CPUPlayer(playerName, gridSize, seed);
+		else
+			throw new IllegalArgumentException("Unknown strategy \"" + strategy + "\".");
+
+		player.setVerbose(false);
+		return player;
+	}
+}
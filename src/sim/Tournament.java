@@ -0,0 +1,50 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tournament between automated strategies: every combination of grid size, fleet, strategy
+ * pair and seed is played for a fixed number of games. The tournament is split into
+ * {@link WorkUnit}s, one per combination.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class Tournament
+{
+	private List<WorkUnit> units = new ArrayList<>();
+
+	/**
+	 * Constructs a tournament.
+	 * @param gridSizes the grid sizes to play on.
+	 * @param fleets the fleets to play with, as arrays of ship lengths.
+	 * @param strategyPairs the pairs of strategies to confront.
+	 * @param seeds the seeds of the games. Each seed produces a different work unit.
+	 * @param gamesPerUnit the number of games in each work unit.
+	 * @throws IllegalArgumentException if a strategy pair doesn't contain exactly two strategies
+	 * or the number of games is not positive.
+	 */
+	public Tournament(int[] gridSizes, int[][] fleets, String[][] strategyPairs, long[] seeds, int gamesPerUnit)
+	{
+		if (gamesPerUnit <= 0)
+			throw new IllegalArgumentException("The number of games must be positive.");
+
+		for (int gridSize : gridSizes)
+			for (int[] fleet : fleets)
+				for (String[] pair : strategyPairs)
+				{
+					if (pair.length != 2)
+						throw new IllegalArgumentException("A strategy pair must contain two strategies.");
+					for (long seed : seeds)
+						units.add(new WorkUnit(units.size(), gridSize, fleet, pair[0], pair[1], seed, gamesPerUnit));
+				}
+	}
+
+	/**
+	 * @return the work units of this tournament
+	 */
+	public List<WorkUnit> getUnits()
+	{
+		return units;
+	}
+}
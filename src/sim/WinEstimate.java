@@ -0,0 +1,114 @@
+package sim;
+
+/**
+ * The chance of the attacker of a game to win it, as estimated by {@link WinProbabilityEstimator}
+ * from a number of simulated continuations of the game.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class WinEstimate
+{
+	private static final double Z_95 = 1.959964;	// Standard score of a 95% confidence interval
+
+	private String attackerName;
+	private String defenderName;
+	private int rollouts;
+	private int attackerWins;
+
+	/**
+	 * Constructs an estimate from the outcome of the simulated games.
+	 * @param attackerName the name of the player whose chance to win is estimated.
+	 * @param defenderName the name of the other player.
+	 * @param rollouts the number of games played out.
+	 * @param attackerWins the number of those games won by the attacker.
+	 */
+	public WinEstimate(String attackerName, String defenderName, int rollouts, int attackerWins)
+	{
+		this.attackerName = attackerName;
+		this.defenderName = defenderName;
+		this.rollouts = rollouts;
+		this.attackerWins = attackerWins;
+	}
+
+	/**
+	 * Returns the estimated probability of the attacker winning, or {@code 0.5} if no game was played out.
+	 * @return the probability, between 0 and 1.
+	 */
+	public double getProbability()
+	{
+		return rollouts == 0 ? 0.5 : (double) attackerWins / rollouts;
+	}
+
+	/**
+	 * Returns the lower bound of the 95% confidence interval of the probability, computed with the
+	 * Wilson score method, which stays accurate for few games and for probabilities close to 0 or 1.
+	 * @return the lower bound.
+	 */
+	public double getLowerBound()
+	{
+		return rollouts == 0 ? 0 : center() - halfWidth();
+	}
+
+	/**
+	 * Returns the upper bound of the 95% confidence interval of the probability.
+	 * @return the upper bound.
+	 * @see #getLowerBound()
+	 */
+	public double getUpperBound()
+	{
+		return rollouts == 0 ? 1 : center() + halfWidth();
+	}
+
+	private double center()
+	{
+		double z2 = Z_95 * Z_95 / rollouts;
+		return (getProbability() + z2 / 2) / (1 + z2);
+	}
+
+	private double halfWidth()
+	{
+		double p = getProbability();
+		double z2 = Z_95 * Z_95 / rollouts;
+		return Z_95 * Math.sqrt(p * (1 - p) / rollouts + z2 / (4 * rollouts)) / (1 + z2);
+	}
+
+	/**
+	 * @return the name of the attacker
+	 */
+	public String getAttackerName()
+	{
+		return attackerName;
+	}
+
+	/**
+	 * @return the name of the defender
+	 */
+	public String getDefenderName()
+	{
+		return defenderName;
+	}
+
+	/**
+	 * @return the number of games played out
+	 */
+	public int getRollouts()
+	{
+		return rollouts;
+	}
+
+	/**
+	 * @return the number of games won by the attacker
+	 */
+	public int getAttackerWins()
+	{
+		return attackerWins;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s %.1f%% (%.1f%% - %.1f%%), %s %.1f%%, over %d games", attackerName,
+				100 * getProbability(), 100 * getLowerBound(), 100 * getUpperBound(),
+				defenderName, 100 * (1 - getProbability()), rollouts);
+	}
+}
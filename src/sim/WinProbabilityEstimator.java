@@ -0,0 +1,249 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import main.GameState;
+import main.OddsEstimator;
+import player.AbstractPlayer;
+import player.Board;
+import player.CPUPlayer;
+import player.LayoutSampler;
+import types.Coordinate;
+import types.Directions;
+import types.ShotResults;
+
+/**
+ * Estimates the chance of each player to win a game in progress. Every estimate plays out many
+ * continuations of the game between two {@link CPUPlayer}s, in parallel: for each of them, the ships
+ * of both sides are replaced by a random layout consistent with what the opponent has seen so far,
+ * so the outcome doesn't depend on information the players don't have.
+ * <p>
+ * The layouts consistent with a shot grid are worked out once per estimate and shared by all the
+ * threads, while each thread reuses the same pair of players and scratch grids for all its games.
+ * Estimates can also run in the background, one after the other, for games that mustn't wait for them.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class WinProbabilityEstimator
+implements OddsEstimator
+{
+	private ExecutorService pool;
+	private ExecutorService background;
+	private int threads;
+	private SplittableRandom seeds;
+	private ThreadLocal<Rollout> rollouts = ThreadLocal.withInitial(Rollout::new);
+
+	/**
+	 * Constructs an estimator that runs its games on the specified number of threads.
+	 * @param threads the number of threads.
+	 * @param seed the seed all the random choices of the games derive from.
+	 */
+	public WinProbabilityEstimator(int threads, long seed)
+	{
+		this.threads = threads;
+		this.seeds = new SplittableRandom(seed);
+		pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "rollout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		background = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "win-odds");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * The estimate starts once the earlier ones are over.
+	 */
+	@Override
+	public CompletableFuture<String> estimateLater(GameState state, long budgetMillis)
+	{
+		return CompletableFuture.supplyAsync(() -> estimate(state, budgetMillis).toString(), background);
+	}
+
+	/**
+	 * Estimates the chance of the attacker to win, playing as many games as fit in the time budget.
+	 * @param state the game, with the attacker about to shoot. It is not modified.
+	 * @param budgetMillis how long to play games for, in milliseconds.
+	 * @return the estimate.
+	 * @throws IllegalStateException if the game is already over.
+	 */
+	public WinEstimate estimate(GameState state, long budgetMillis)
+	{
+		return estimate(state, budgetMillis, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Estimates the chance of the attacker to win, playing games until the time budget runs out or
+	 * the maximum number of games has been played.
+	 * @param state the game, with the attacker about to shoot. It is not modified.
+	 * @param budgetMillis how long to play games for, in milliseconds.
+	 * @param maxRollouts the maximum number of games to play.
+	 * @return the estimate.
+	 * @throws IllegalStateException if the game is already over.
+	 */
+	public WinEstimate estimate(GameState state, long budgetMillis, int maxRollouts)
+	{
+		AbstractPlayer attacker = state.getAttacker();
+		AbstractPlayer defender = state.getDefender();
+		if (attacker.isDefeated() || defender.isDefeated())
+			throw new IllegalStateException("The game is already over.");
+
+		Board attackerBoard = attacker.getBoard();
+		Board defenderBoard = defender.getBoard();
+		Side attackerSide = new Side(new LayoutSampler(defenderBoard, attackerBoard.getShipLengths()), attackerBoard);
+		Side defenderSide = new Side(new LayoutSampler(attackerBoard, defenderBoard.getShipLengths()), defenderBoard);
+
+		long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+		AtomicInteger started = new AtomicInteger();
+		List<Future<int[]>> tasks = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++)
+		{
+			SplittableRandom taskSeeds = seeds.split();
+			tasks.add(pool.submit(() -> rollouts.get().play(state.getSalvo(), attackerSide, defenderSide,
+					taskSeeds, started, maxRollouts, deadline)));
+		}
+
+		int games = 0;
+		int wins = 0;
+		try
+		{
+			for (Future<int[]> task : tasks)
+			{
+				int[] outcome = task.get();
+				games += outcome[0];
+				wins += outcome[1];
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("A simulated game failed.", e.getCause());
+		}
+		return new WinEstimate(attacker.getPlayerName(), defender.getPlayerName(), games, wins);
+	}
+
+	/**
+	 * Stops the threads of this estimator.
+	 */
+	@Override
+	public void close()
+	{
+		background.shutdownNow();
+		pool.shutdownNow();
+	}
+
+	/**
+	 * What is known of one side of the game: the layouts its fleet can have and the shots it fired.
+	 */
+	private static class Side
+	{
+		private LayoutSampler layouts;
+		private Coordinate[] shots;
+		private ShotResults[] results;
+
+		private Side(LayoutSampler layouts, Board board)
+		{
+			this.layouts = layouts;
+
+			List<Coordinate> shotList = new ArrayList<>();
+			List<ShotResults> resultList = new ArrayList<>();
+			int size = board.getGridSize();
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+				{
+					Coordinate c = new Coordinate(x, y);
+					if (board.getResultAt(c) != null)
+					{
+						shotList.add(c);
+						resultList.add(board.getResultAt(c));
+					}
+				}
+			shots = shotList.toArray(new Coordinate[0]);
+			results = resultList.toArray(new ShotResults[0]);
+		}
+	}
+
+	/**
+	 * The players and scratch grids of one thread, reused by all its games.
+	 */
+	private static class Rollout
+	{
+		private CPUPlayer attacker;
+		private CPUPlayer defender;
+		private int[][] taken;
+		private List<int[]> layout = new ArrayList<>();
+		private Random random = new Random();
+		private Coordinate pos = new Coordinate();
+
+		/**
+		 * Plays games until there's no time left or enough games have been started.
+		 * @return the number of games played and the number of them won by the attacker.
+		 */
+		private int[] play(int salvo, Side attackerSide, Side defenderSide, SplittableRandom seeds,
+				AtomicInteger started, int maxRollouts, long deadline)
+		{
+			int size = attackerSide.layouts.getGridSize();
+			if (attacker == null || attacker.getBoard().getGridSize() != size)
+			{
+				attacker = new CPUPlayer("attacker", size, 0);
+				defender = new CPUPlayer("defender", size, 0);
+				taken = new int[size][size];
+			}
+
+			int games = 0;
+			int wins = 0;
+			while (System.nanoTime() < deadline && started.getAndIncrement() < maxRollouts)
+			{
+				attacker.reset(seeds.nextLong());
+				defender.reset(seeds.nextLong());
+				random.setSeed(seeds.nextLong());
+				if (!setUp(attacker, attackerSide, defenderSide) || !setUp(defender, defenderSide, attackerSide))
+					continue;		// No consistent layout found, which is only possible for an inconsistent game
+
+				HeadlessGame game = new HeadlessGame(attacker, defender);
+				game.setSalvo(salvo);
+				if (game.play() == attacker)
+					wins++;
+				games++;
+			}
+			return new int[] {games, wins};
+		}
+
+		/**
+		 * Places a random layout of the player's fleet, then replays the shots fired so far by both sides.
+		 */
+		private boolean setUp(CPUPlayer player, Side own, Side opponent)
+		{
+			if (!own.layouts.sample(random, taken, layout))
+				return false;
+
+			Board board = player.getBoard();
+			for (int[] ship : layout)
+			{
+				pos.set(ship[0], ship[1]);
+				board.placeShip(pos, ship[2] == 1 ? Directions.RIGHT : Directions.DOWN, ship[3]);
+			}
+			for (Coordinate shot : opponent.shots)
+				board.fireShotAt(shot);
+			board.setResultsAt(own.shots, own.results);
+			player.resumeTargeting();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package sim;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of one or more work units: how many games each strategy won and how long the
+ * games lasted. Results of units belonging to the same group can be merged.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class WorkResult
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private String group;
+	private int games;
+	private int winsA;
+	private int winsB;
+	private long totalTurns;
+	private long totalWinnerShots;
+	private int minTurns = Integer.MAX_VALUE;
+	private int maxTurns;
+
+	/**
+	 * Constructs an empty result for the specified group.
+	 * @param group the group of the work units this result accounts for.
+	 */
+	public WorkResult(String group)
+	{
+		this.group = group;
+	}
+
+	/**
+	 * Records a completed game.
+	 * @param winnerIsA {@code true} if the first strategy won.
+	 * @param turns the number of turns the game lasted.
+	 * @param winnerShots the number of shots fired by the winner.
+	 */
+	public void addGame(boolean winnerIsA, int turns, int winnerShots)
+	{
+		games++;
+		if (winnerIsA)
+			winsA++;
+		else
+			winsB++;
+		totalTurns += turns;
+		totalWinnerShots += winnerShots;
+		minTurns = Math.min(minTurns, turns);
+		maxTurns = Math.max(maxTurns, turns);
+	}
+
+	/**
+	 * Adds the games of another result to this one.
+	 * @param other the result to merge.
+	 */
+	public void merge(WorkResult other)
+	{
+		games += other.games;
+		winsA += other.winsA;
+		winsB += other.winsB;
+		totalTurns += other.totalTurns;
+		totalWinnerShots += other.totalWinnerShots;
+		minTurns = Math.min(minTurns, other.minTurns);
+		maxTurns = Math.max(maxTurns, other.maxTurns);
+	}
+
+	/**
+	 * @return the group
+	 */
+	public String getGroup()
+	{
+		return group;
+	}
+
+	/**
+	 * @return the number of games played
+	 */
+	public int getGames()
+	{
+		return games;
+	}
+
+	/**
+	 * @return the number of games won by the first strategy
+	 */
+	public int getWinsA()
+	{
+		return winsA;
+	}
+
+	/**
+	 * @return the number of games won by the second strategy
+	 */
+	public int getWinsB()
+	{
+		return winsB;
+	}
+
+	/**
+	 * @return the mean number of turns per game
+	 */
+	public double getMeanTurns()
+	{
+		return games == 0 ? 0 : (double) totalTurns / games;
+	}
+
+	/**
+	 * @return the mean number of shots the winner needed to win
+	 */
+	public double getMeanShotsToWin()
+	{
+		return games == 0 ? 0 : (double) totalWinnerShots / games;
+	}
+
+	/**
+	 * @return the shortest game, in turns
+	 */
+	public int getMinTurns()
+	{
+		return games == 0 ? 0 : minTurns;
+	}
+
+	/**
+	 * @return the longest game, in turns
+	 */
+	public int getMaxTurns()
+	{
+		return maxTurns;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %d games, %d-%d, %.2f shots to win, %d-%d turns",
+				group, games, winsA, winsB, getMeanShotsToWin(), getMinTurns(), maxTurns);
+	}
+}
@@ -0,0 +1,111 @@
+package sim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A slice of a tournament: a number of seeded games between two strategies, on a given grid size
+ * and with a given fleet. Work units are sent to worker processes, which play them independently.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class WorkUnit
+implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private int id;
+	private int gridSize;
+	private int[] shipLengths;
+	private String strategyA;
+	private String strategyB;
+	private long seed;
+	private int games;
+
+	/**
+	 * Constructs a work unit.
+	 * @param id the identifier of the unit, unique within its tournament.
+	 * @param gridSize the size of the board.
+	 * @param shipLengths the lengths of the ships of each fleet.
+	 * @param strategyA the strategy of the first player.
+	 * @param strategyB the strategy of the second player.
+	 * @param seed the seed the games of this unit are derived from.
+	 * @param games the number of games to play.
+	 */
+	public WorkUnit(int id, int gridSize, int[] shipLengths, String strategyA, String strategyB, long seed, int games)
+	{
+		this.id = id;
+		this.gridSize = gridSize;
+		this.shipLengths = shipLengths.clone();
+		this.strategyA = strategyA;
+		this.strategyB = strategyB;
+		this.seed = seed;
+		this.games = games;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @return the grid size
+	 */
+	public int getGridSize()
+	{
+		return gridSize;
+	}
+
+	/**
+	 * @return a copy of the ship lengths
+	 */
+	public int[] getShipLengths()
+	{
+		return shipLengths.clone();
+	}
+
+	/**
+	 * @return the strategy of the first player
+	 */
+	public String getStrategyA()
+	{
+		return strategyA;
+	}
+
+	/**
+	 * @return the strategy of the second player
+	 */
+	public String getStrategyB()
+	{
+		return strategyB;
+	}
+
+	/**
+	 * @return the seed
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @return the number of games
+	 */
+	public int getGames()
+	{
+		return games;
+	}
+
+	/**
+	 * Returns a description of the tournament cell this unit belongs to. Units that only differ by
+	 * their seed share the same group, and their results are merged together.
+	 * @return the group of this unit.
+	 */
+	public String getGroup()
+	{
+		return gridSize + "x" + gridSize + " " + Arrays.toString(shipLengths) + " " + strategyA + " vs " + strategyB;
+	}
+}
@@ -0,0 +1,102 @@
+package sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.SplittableRandom;
+
+import player.AbstractPlayer;
+
+/**
+ * A worker process of a distributed tournament. It connects to a {@link Coordinator}, then plays
+ * the work units it receives headlessly and sends back their results, until the coordinator
+ * tells it to stop.
+ * @author Alessandro Cavicchioli
+ * @version 1.0
+ */
+public class Worker
+{
+	private Worker()
+	{
+	}
+
+	/**
+	 * Entry point of a worker process.
+	 * @param args the host and port of the coordinator, optionally followed by the number of units
+	 * after which the worker crashes on purpose (used to exercise the coordinator's retries).
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		String host = args[0];
+		int port = Integer.parseInt(args[1]);
+		int crashAfter = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+
+		try (Socket socket = new Socket(host, port))
+		{
+			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			out.flush();
+			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+
+			int played = 0;
+			while (true)
+			{
+				WorkUnit unit = (WorkUnit) in.readObject();
+				if (unit == null)		// The coordinator has no more work
+					break;
+				if (played == crashAfter)
+					Runtime.getRuntime().halt(1);
+
+				Object reply;
+				try
+				{
+					reply = play(unit);
+				}
+				catch (RuntimeException e)
+				{
+					reply = e;		// Reported to the coordinator, which won't retry it
+				}
+				out.writeObject(reply);
+				out.reset();
+				out.flush();
+				played++;
+			}
+		}
+		catch (EOFException e)
+		{
+			// The coordinator went away: nothing left to do
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IOException("Unexpected message from the coordinator.", e);
+		}
+	}
+
+	/**
+	 * Plays all the games of a work unit. The first strategy attacks first in even games and
+	 * second in odd ones. Given the same unit, the results are always the same.
+	 * @param unit the unit to play.
+	 * @return the results of the games.
+	 */
+	public static WorkResult play(WorkUnit unit)
+	{
+		WorkResult result = new WorkResult(unit.getGroup());
+		SplittableRandom seeds = new SplittableRandom(unit.getSeed());
+		int[] lengths = unit.getShipLengths();
+
+		for (int g = 0; g < unit.getGames(); g++)
+		{
+			AbstractPlayer a = Strategies.create(unit.getStrategyA(), "A", unit.getGridSize(), seeds.nextLong());
+			AbstractPlayer b = Strategies.create(unit.getStrategyB(), "B", unit.getGridSize(), seeds.nextLong());
+			a.placeShips(lengths);
+			b.placeShips(lengths);
+
+			boolean aFirst = g % 2 == 0;
+			HeadlessGame game = aFirst ? new HeadlessGame(a, b) : new HeadlessGame(b, a);
+			AbstractPlayer winner = game.play();
+			result.addGame(winner == a, game.getTurn(), game.getWinnerShots());
+		}
+		return result;
+	}
+}
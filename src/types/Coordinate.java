@@ -1,12 +1,17 @@
 package types;
 
+import java.io.Serializable;
+
 /**
  * A class meant to store a grid coordinate
  * @author Alessandro Cavicchioli
  * @version 1.0
  */
 public class Coordinate
+implements Serializable
 {
+	private static final long serialVersionUID = 1L;
+	
 	private int x;
 	private int y;
 	
@@ -15,9 +15,12 @@ implements Serializable
 	
 	private int length;
 	private int sunkTiles;
+	private int x = -1;
+	private int y = -1;
+	private boolean horizontal;
 	
 	/**
-	 * Constructs a Ship with the specified length.
+	 * Constructs a Ship with the specified length, whose position is unknown.
 	 * @param length the length of the ship.
 	 */
 	public Ship(int length)
@@ -26,6 +29,49 @@ implements Serializable
 		sunkTiles = 0;
 	}
 	
+	/**
+	 * Constructs a Ship with the specified length and position.
+	 * @param length the length of the ship.
+	 * @param x the column of the top left cell of the ship.
+	 * @param y the row of the top left cell of the ship.
+	 * @param horizontal {@code true} if the ship extends to the right, {@code false} if it extends down.
+	 */
+	public Ship(int length, int x, int y, boolean horizontal)
+	{
+		this(length);
+		this.x = x;
+		this.y = y;
+		this.horizontal = horizontal;
+	}
+	
+	/**
+	 * Constructs a copy of the specified ship, with the same length, position and damage.
+	 * @param other the ship to copy.
+	 */
+	public Ship(Ship other)
+	{
+		this.length = other.length;
+		this.sunkTiles = other.sunkTiles;
+		this.x = other.x;
+		this.y = other.y;
+		this.horizontal = other.horizontal;
+	}
+	
+	/**
+	 * Constructs a copy of the specified ship, with the same length and damage, at the specified position.
+	 * @param other the ship to copy.
+	 * @param x the column of the top left cell of the ship.
+	 * @param y the row of the top left cell of the ship.
+	 * @param horizontal {@code true} if the ship extends to the right, {@code false} if it extends down.
+	 */
+	public Ship(Ship other, int x, int y, boolean horizontal)
+	{
+		this(other);
+		this.x = x;
+		this.y = y;
+		this.horizontal = horizontal;
+	}
+	
 	/**
 	 * Takes a shot at this ship, returning {@code true} if it was sunk.
 	 * @return {@code true} if the ship was sunk, {@code false} otherwise.
@@ -35,4 +81,60 @@ implements Serializable
 		sunkTiles++;
 		return sunkTiles == length;
 	}
+	
+	/**
+	 * @return the length of this ship
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+	
+	/**
+	 * Returns whether every tile of this ship has been hit.
+	 * @return {@code true} if the ship was sunk, {@code false} otherwise.
+	 */
+	public boolean isSunk()
+	{
+		return sunkTiles >= length;
+	}
+	
+	/**
+	 * @return the column of the top left cell of this ship, or -1 if its position is unknown
+	 */
+	public int getX()
+	{
+		return x;
+	}
+	
+	/**
+	 * @return the row of the top left cell of this ship, or -1 if its position is unknown
+	 */
+	public int getY()
+	{
+		return y;
+	}
+	
+	/**
+	 * @return {@code true} if this ship extends to the right, {@code false} if it extends down
+	 */
+	public boolean isHorizontal()
+	{
+		return horizontal;
+	}
+	
+	/**
+	 * Returns the cells this ship covers, from the top left one.
+	 * @return the cells.
+	 * @throws IllegalStateException if the position of this ship is unknown.
+	 */
+	public Coordinate[] getCells()
+	{
+		if (x < 0)
+			throw new IllegalStateException("The position of the ship is unknown.");
+		Coordinate[] cells = new Coordinate[length];
+		for (int i = 0; i < length; i++)
+			cells[i] = horizontal ? new Coordinate(x + i, y) : new Coordinate(x, y + i);
+		return cells;
+	}
 }